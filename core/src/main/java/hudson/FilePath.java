@@ -84,6 +84,7 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.CopyOption;
@@ -96,6 +97,7 @@ import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.PosixFilePermission;
@@ -106,9 +108,12 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -121,6 +126,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import jenkins.MasterToSlaveFileCallable;
@@ -130,6 +136,7 @@ import jenkins.security.MasterToSlaveCallable;
 import jenkins.util.ContextResettingExecutorService;
 import jenkins.util.SystemProperties;
 import jenkins.util.VirtualFile;
+import jenkins.util.io.ParallelDigester;
 import org.apache.commons.fileupload2.core.FileItem;
 import org.apache.commons.io.input.CountingInputStream;
 import org.apache.tools.ant.BuildException;
@@ -484,7 +491,18 @@ public final class FilePath implements SerializableOnlyOverRemoting {
      *          This is only really useful to check for a situation where nothing
      */
     public int zip(OutputStream out, DirScanner scanner, String verificationRoot, String prefix, OpenOption... openOptions) throws IOException, InterruptedException {
-        ArchiverFactory archiverFactory = prefix == null ? ArchiverFactory.ZIP : ArchiverFactory.createZipWithPrefix(prefix, openOptions);
+        return zip(out, scanner, verificationRoot, prefix, Deflater.DEFAULT_COMPRESSION, openOptions);
+    }
+
+    /**
+     * Same as {@link #zip(OutputStream, DirScanner, String, String, OpenOption...)} with a given compression level.
+     * @param level a {@link Deflater} compression level, used for files not {@linkplain #isAlreadyCompressed already compressed}
+     */
+    @Restricted(NoExternalUse.class)
+    public int zip(OutputStream out, DirScanner scanner, String verificationRoot, String prefix, int level, OpenOption... openOptions) throws IOException, InterruptedException {
+        ArchiverFactory archiverFactory = prefix == null && level == Deflater.DEFAULT_COMPRESSION
+                ? ArchiverFactory.ZIP
+                : ArchiverFactory.createZipWithPrefix(prefix, level, openOptions);
         return archive(archiverFactory, out, scanner, verificationRoot, openOptions);
     }
 
@@ -537,7 +555,8 @@ public final class FilePath implements SerializableOnlyOverRemoting {
 
         @Override
             public Integer invoke(File f, VirtualChannel channel) throws IOException {
-                try (Archiver a = factory.create(out)) {
+                // a remote stream sends each write separately, so collect small writes
+                try (Archiver a = factory.create(new BufferedOutputStream(out, 64 * 1024))) {
                     scanner.scan(f, ignoringTmpDirs(ignoringSymlinks(a, verificationRoot, openOptions), verificationRoot, openOptions));
                     return a.countEntries();
                 }
@@ -895,6 +914,21 @@ public final class FilePath implements SerializableOnlyOverRemoting {
             public OutputStream compress(OutputStream out) throws IOException {
                 return new GZIPOutputStream(new BufferedOutputStream(out));
             }
+        },
+        /**
+         * Same format as {@link #GZIP}, but at the fastest compression level.
+         * @since TODO
+         */
+        GZIP_FAST {
+            @Override
+            public InputStream extract(InputStream in) throws IOException {
+                return new GZIPInputStream(new BufferedInputStream(in));
+            }
+
+            @Override
+            public OutputStream compress(OutputStream out) throws IOException {
+                return new FastGZIPOutputStream(new BufferedOutputStream(out));
+            }
         };
 
         public abstract InputStream extract(InputStream in) throws IOException;
@@ -902,6 +936,13 @@ public final class FilePath implements SerializableOnlyOverRemoting {
         public abstract OutputStream compress(OutputStream in) throws IOException;
     }
 
+    private static final class FastGZIPOutputStream extends GZIPOutputStream {
+        FastGZIPOutputStream(OutputStream out) throws IOException {
+            super(out);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+
     /**
      * Reads the given InputStream as a tar file and extracts it into this directory.
      *
@@ -2249,6 +2290,30 @@ public final class FilePath implements SerializableOnlyOverRemoting {
         return inputStream;
     }
 
+    /**
+     * Like {@link #newInputStreamDenyingSymlinkAsNeeded} but opens a channel,
+     * so that ranges of the file can be read or {@linkplain FileChannel#transferTo transferred} directly.
+     */
+    @Restricted(NoExternalUse.class)
+    public static FileChannel newChannelDenyingSymlinkAsNeeded(File file, String verificationRoot, OpenOption... openOptions) throws IOException {
+        denyTmpDir(file, verificationRoot, openOptions);
+        denySymlink(file, verificationRoot, openOptions);
+        Set<OpenOption> options = new HashSet<>();
+        options.add(StandardOpenOption.READ);
+        OpenOption[] stripped = stripLocalOptions(openOptions);
+        if (stripped != null) {
+            Collections.addAll(options, stripped);
+        }
+        FileChannel channel = FileChannel.open(fileToPath(file), options);
+        try {
+            denySymlink(file, verificationRoot, openOptions);
+        } catch (IOException ioe) {
+            channel.close();
+            throw ioe;
+        }
+        return channel;
+    }
+
     public static InputStream openInputStream(File file, OpenOption[] openOptions) throws IOException {
         return Files.newInputStream(fileToPath(file), stripLocalOptions(openOptions));
     }
@@ -2569,7 +2634,7 @@ public final class FilePath implements SerializableOnlyOverRemoting {
 
         @Override
         public String invoke(File f, VirtualChannel channel) throws IOException {
-            return Util.getDigestOf(f);
+            return ParallelDigester.digest(f);
         }
     }
 
@@ -2819,6 +2884,18 @@ public final class FilePath implements SerializableOnlyOverRemoting {
         return copyRecursiveTo(scanner, target, description, TarCompression.GZIP);
     }
 
+    /**
+     * Number of streams over which {@link #copyRecursiveTo(DirScanner, FilePath, String, TarCompression)}
+     * transfers files between the controller and an agent, each compressed separately.
+     * With the default of 1, files are sent in a single tar stream as they are found.
+     * Otherwise they are listed first and split between the streams by size;
+     * files in already compressed formats are then sent uncompressed,
+     * and {@link TarCompression#GZIP} is replaced by {@link TarCompression#GZIP_FAST}.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* non-final for Groovy */ int PARALLEL_TRANSFER_STREAMS = SystemProperties.getInteger(FilePath.class.getName() + ".PARALLEL_TRANSFER_STREAMS", 1);
+
     /**
      * Copies files according to a specified scanner to a target node.
      * @param scanner a way of enumerating some files (must be serializable for possible delivery to remote side)
@@ -2833,6 +2910,9 @@ public final class FilePath implements SerializableOnlyOverRemoting {
             // local to local copy.
             return act(new CopyRecursiveLocal(target, scanner));
         } else
+        if (PARALLEL_TRANSFER_STREAMS > 1 && (this.channel == null || target.channel == null)) {
+            return copyRecursiveToInParallel(scanner, target, description, compression, PARALLEL_TRANSFER_STREAMS);
+        } else
         if (this.channel == null) {
             // local -> remote copy
             final Pipe pipe = Pipe.createLocalToRemote();
@@ -2874,6 +2954,204 @@ public final class FilePath implements SerializableOnlyOverRemoting {
         }
     }
 
+    /**
+     * Transfers files in several tar streams at once.
+     * @see #PARALLEL_TRANSFER_STREAMS
+     */
+    private int copyRecursiveToInParallel(DirScanner scanner, FilePath target, String description, TarCompression compression, int streams) throws IOException, InterruptedException {
+        List<TransferShard> shards = act(new PlanTransfer(scanner, streams, compression));
+        List<Future<Void>> readers = new ArrayList<>();
+        List<Future<Integer>> writers = new ArrayList<>();
+        boolean success = false;
+        try {
+            for (TransferShard shard : shards) {
+                if (this.channel == null) {
+                    // local -> remote copy
+                    Pipe pipe = Pipe.createLocalToRemote();
+                    readers.add(target.actAsync(new ReadFromTar(target, pipe, description, shard.compression, StandardCharsets.UTF_8)));
+                    writers.add(actAsync(new WriteToTar(shard, pipe, shard.compression, StandardCharsets.UTF_8)));
+                } else {
+                    // remote -> local copy
+                    Pipe pipe = Pipe.createRemoteToLocal();
+                    writers.add(actAsync(new CopyRecursiveRemoteToLocal(pipe, shard, shard.compression, StandardCharsets.UTF_8)));
+                    readers.add(target.actAsync(new ReadFromTar(target, pipe, description, shard.compression, StandardCharsets.UTF_8)));
+                }
+            }
+            // JENKINS-9540 in case a reading side failed, report that error first
+            for (Future<Void> reader : readers) {
+                reader.get();
+            }
+            int count = 0;
+            for (Future<Integer> writer : writers) {
+                count += writer.get();
+            }
+            success = true;
+            return count;
+        } catch (ExecutionException e) {
+            throw ioWithCause(e);
+        } finally {
+            if (!success) {
+                readers.forEach(f -> f.cancel(true));
+                writers.forEach(f -> f.cancel(true));
+            }
+        }
+    }
+
+    /**
+     * Extensions of files which are not worth compressing again.
+     */
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+            "7z", "aar", "apk", "br", "bz2", "ear", "gif", "gz", "hpi", "jar", "jpeg", "jpg", "jpi", "lz4", "mp3", "mp4",
+            "nupkg", "png", "rar", "tbz2", "tgz", "txz", "war", "webp", "whl", "xz", "zip", "zst");
+
+    /**
+     * Whether a file name has the extension of a format which is compressed already.
+     */
+    @Restricted(NoExternalUse.class)
+    public static boolean isAlreadyCompressed(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot != -1 && COMPRESSED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Lists the files to transfer and splits them into shards of about the same size.
+     */
+    private static class PlanTransfer extends MasterToSlaveFileCallable<List<TransferShard>> {
+        private static final long serialVersionUID = 1L;
+        private final DirScanner scanner;
+        private final int streams;
+        private final TarCompression compression;
+
+        PlanTransfer(DirScanner scanner, int streams, @NonNull TarCompression compression) {
+            this.scanner = scanner;
+            this.streams = streams;
+            this.compression = compression;
+        }
+
+        @Override
+        public List<TransferShard> invoke(File base, VirtualChannel channel) throws IOException {
+            List<TransferEntry> compressible = new ArrayList<>();
+            List<TransferEntry> stored = new ArrayList<>();
+            scanner.scan(base, new FileVisitor() {
+                @Override
+                public void visit(File f, String relativePath) {
+                    TransferEntry entry = new TransferEntry(f.getPath(), relativePath, null, f.isFile() ? f.length() : 0);
+                    if (compression != TarCompression.NONE && f.isFile() && isAlreadyCompressed(relativePath)) {
+                        stored.add(entry);
+                    } else {
+                        compressible.add(entry);
+                    }
+                }
+
+                @Override
+                public boolean understandsSymlink() {
+                    return true;
+                }
+
+                @Override
+                public void visitSymlink(File link, String target, String relativePath) {
+                    compressible.add(new TransferEntry(link.getPath(), relativePath, target, 0));
+                }
+            });
+            // streams are divided between both kinds of files by size, with at least one for each kind present
+            long storedSize = size(stored);
+            long totalSize = storedSize + size(compressible);
+            int storedStreams;
+            if (stored.isEmpty()) {
+                storedStreams = 0;
+            } else if (compressible.isEmpty()) {
+                storedStreams = streams;
+            } else {
+                long share = totalSize == 0 ? 0 : Math.round((double) streams * storedSize / totalSize);
+                storedStreams = (int) Math.max(1, Math.min(streams - 1, share));
+            }
+            List<TransferShard> shards = new ArrayList<>();
+            split(stored, storedStreams, TarCompression.NONE, shards);
+            split(compressible, streams - storedStreams, compression == TarCompression.GZIP ? TarCompression.GZIP_FAST : compression, shards);
+            return shards;
+        }
+
+        private static long size(List<TransferEntry> entries) {
+            long size = 0;
+            for (TransferEntry entry : entries) {
+                size += entry.size;
+            }
+            return size;
+        }
+
+        /**
+         * Assigns each file, largest first, to the shard with the least data so far.
+         */
+        private static void split(List<TransferEntry> entries, int count, TarCompression compression, List<TransferShard> shards) {
+            if (entries.isEmpty()) {
+                return;
+            }
+            entries.sort(Comparator.comparingLong((TransferEntry e) -> e.size).reversed());
+            TransferShard[] split = new TransferShard[Math.min(count, entries.size())];
+            long[] sizes = new long[split.length];
+            for (int i = 0; i < split.length; i++) {
+                split[i] = new TransferShard(compression);
+            }
+            for (TransferEntry entry : entries) {
+                int smallest = 0;
+                for (int i = 1; i < split.length; i++) {
+                    if (sizes[i] < sizes[smallest]) {
+                        smallest = i;
+                    }
+                }
+                split[smallest].entries.add(entry);
+                sizes[smallest] += entry.size;
+            }
+            shards.addAll(Arrays.asList(split));
+        }
+    }
+
+    private static final class TransferEntry implements Serializable {
+        private static final long serialVersionUID = 1L;
+        /**
+         * Absolute path on the sending side.
+         */
+        final String path;
+        final String relativePath;
+        /**
+         * Target if a symbolic link, else null.
+         */
+        final String symlinkTarget;
+        final long size;
+
+        TransferEntry(String path, String relativePath, String symlinkTarget, long size) {
+            this.path = path;
+            this.relativePath = relativePath;
+            this.symlinkTarget = symlinkTarget;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Files sent in one of the streams of {@link #copyRecursiveToInParallel}, as listed by {@link PlanTransfer}.
+     */
+    private static final class TransferShard extends DirScanner {
+        private static final long serialVersionUID = 1L;
+        final List<TransferEntry> entries = new ArrayList<>();
+        final TarCompression compression;
+
+        TransferShard(TarCompression compression) {
+            this.compression = compression;
+        }
+
+        @Override
+        public void scan(File dir, FileVisitor visitor) throws IOException {
+            for (TransferEntry entry : entries) {
+                File f = new File(entry.path);
+                if (entry.symlinkTarget != null && visitor.understandsSymlink()) {
+                    visitor.visitSymlink(f, entry.symlinkTarget, entry.relativePath);
+                } else {
+                    visitor.visit(f, entry.relativePath);
+                }
+            }
+        }
+    }
+
     private IOException ioWithCause(ExecutionException e) {
         Throwable cause = e.getCause();
         if (cause == null) cause = e;
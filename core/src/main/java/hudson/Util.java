@@ -684,8 +684,18 @@ public class Util {
      */
     @NonNull
     public static String getDigestOf(@NonNull File file) throws IOException {
-        // Note: getDigestOf() closes the input stream.
-        return getDigestOf(Files.newInputStream(fileToPath(file)));
+        try (InputStream in = Files.newInputStream(fileToPath(file))) {
+            MessageDigest md5 = getMd5();
+            // larger than the buffer of IOUtils.copy, as this is mostly used on big files
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                md5.update(buf, 0, n);
+            }
+            return toHexString(md5.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("MD5 not installed", e);    // impossible
+        }
     }
 
     /**
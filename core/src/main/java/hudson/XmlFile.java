@@ -35,6 +35,7 @@ import hudson.model.Descriptor;
 import hudson.util.AtomicFileWriter;
 import hudson.util.XStream2;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -42,11 +43,13 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.Serializable;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.Map;
@@ -56,7 +59,11 @@ import java.util.logging.Logger;
 import javax.xml.XMLConstants;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
+import jenkins.model.ConfigSnapshot;
+import jenkins.util.io.ConfigStorage;
 import org.apache.commons.io.IOUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
@@ -125,6 +132,8 @@ public final class XmlFile {
     private final boolean force;
     private static final Map<Object, Void> beingWritten = Collections.synchronizedMap(new IdentityHashMap<>());
     private static final ThreadLocal<File> writing = new ThreadLocal<>();
+    private static final ThreadLocal<byte[]> readBuffer = new ThreadLocal<>();
+    private static final int MAX_READ_BUFFER = 64 * 1024;
 
     public XmlFile(File file) {
         this(DEFAULT_XSTREAM, file);
@@ -161,7 +170,7 @@ public final class XmlFile {
         if (LOGGER.isLoggable(Level.FINE)) {
             LOGGER.fine("Reading " + file);
         }
-        try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+        try (InputStream in = openForParsing()) {
             return xs.fromXML(in);
         } catch (RuntimeException | Error e) {
             throw new IOException("Unable to read " + file, e);
@@ -188,7 +197,7 @@ public final class XmlFile {
     }
 
     private Object unmarshal(Object o, boolean nullOut) throws IOException {
-        try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+        try (InputStream in = openForParsing()) {
             // TODO: expose XStream the driver from XStream
             if (nullOut) {
                 return ((XStream2) xs).unmarshal(DEFAULT_DRIVER.createReader(in), o, null, true);
@@ -205,9 +214,166 @@ public final class XmlFile {
             LOGGER.log(Level.FINEST, new Throwable(), () -> "Writing " + file);
         }
         mkdirs();
+        ConfigStorage.Location location = ConfigStorage.locate(file);
+        if (location != null) {
+            location.write(toXml(o).getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        AtomicFileWriter w = newWriter();
+        try {
+            write(o, w);
+            w.commit();
+        } finally {
+            w.abort();
+        }
+    }
+
+    /**
+     * Serializes an object exactly as {@link #write(Object)} would, without touching the file.
+     * Lets callers find out whether the file needs to be written at all.
+     *
+     * @see #writeXml(String)
+     */
+    @Restricted(NoExternalUse.class)
+    public String toXml(Object o) throws IOException {
+        StringWriter w = new StringWriter();
+        write(o, w);
+        return w.toString();
+    }
+
+    /**
+     * Writes the result of {@link #toXml(Object)} to the file.
+     */
+    @Restricted(NoExternalUse.class)
+    public void writeXml(String xml) throws IOException {
+        if (LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.log(Level.FINEST, new Throwable(), () -> "Writing " + file);
+        }
+        mkdirs();
+        ConfigStorage.Location location = ConfigStorage.locate(file);
+        if (location != null) {
+            location.write(xml.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        AtomicFileWriter w = newWriter();
+        try {
+            w.write(xml);
+            w.commit();
+        } finally {
+            w.abort();
+        }
+    }
+
+    /**
+     * Reads the file as is, wherever it is kept.
+     *
+     * @see ConfigStorage
+     */
+    @Restricted(NoExternalUse.class)
+    public byte[] readBytes() throws IOException {
+        ConfigStorage.Location location = ConfigStorage.locate(file);
+        if (location != null) {
+            return location.read();
+        }
+        return Files.readAllBytes(Util.fileToPath(file));
+    }
+
+    /**
+     * Replaces the file with the given raw contents, wherever it is kept.
+     *
+     * @see ConfigStorage
+     */
+    @Restricted(NoExternalUse.class)
+    public void writeBytes(byte[] data) throws IOException {
+        mkdirs();
+        ConfigStorage.Location location = ConfigStorage.locate(file);
+        if (location != null) {
+            location.write(data);
+            return;
+        }
+        // ISO-8859-1 maps every byte to a char and back unchanged
         AtomicFileWriter w = force
+                ? new AtomicFileWriter(file.toPath(), StandardCharsets.ISO_8859_1)
+                : new AtomicFileWriter(file.toPath(), StandardCharsets.ISO_8859_1, false, false);
+        try {
+            w.write(new String(data, StandardCharsets.ISO_8859_1));
+            w.commit();
+        } finally {
+            w.abort();
+        }
+    }
+
+    /**
+     * Reads the whole file into a buffer kept for the current thread and returns a stream over it,
+     * which gives the buffer back when closed; files read while parsing this one get their own.
+     * Unusually large files are streamed instead.
+     */
+    private InputStream openForParsing() throws IOException {
+        if (ConfigStorage.locate(file) != null) {
+            return open();
+        }
+        byte[] snapshot = ConfigSnapshot.take(file);
+        if (snapshot != null) {
+            return new ByteArrayInputStream(snapshot);
+        }
+        long size;
+        try {
+            size = Files.size(file.toPath());
+        } catch (InvalidPathException e) {
+            throw new IOException(e);
+        }
+        if (size >= MAX_READ_BUFFER) {
+            return new BufferedInputStream(open());
+        }
+        byte[] buf = readBuffer.get();
+        readBuffer.remove();
+        if (buf == null || buf.length <= size) {
+            buf = new byte[Math.max(8192, (int) size + 1)];
+        }
+        int len = 0;
+        try (InputStream in = open()) {
+            int n;
+            while ((n = in.read(buf, len, buf.length - len)) >= 0) {
+                len += n;
+                if (len == buf.length) {
+                    // the file grew since we looked
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+            }
+        }
+        byte[] pooled = buf;
+        return new ByteArrayInputStream(buf, 0, len) {
+            private boolean closed;
+
+            @Override
+            public void close() {
+                if (!closed && pooled.length <= MAX_READ_BUFFER) {
+                    readBuffer.set(pooled);
+                }
+                closed = true;
+            }
+        };
+    }
+
+    private InputStream open() throws IOException {
+        ConfigStorage.Location location = ConfigStorage.locate(file);
+        if (location != null) {
+            return location.open();
+        }
+        try {
+            return Files.newInputStream(file.toPath());
+        } catch (InvalidPathException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private AtomicFileWriter newWriter() throws IOException {
+        return force
                 ? new AtomicFileWriter(file)
                 : new AtomicFileWriter(file.toPath(), StandardCharsets.UTF_8, false, false);
+    }
+
+    private void write(Object o, Writer w) throws IOException {
         try {
             w.write("<?xml version='1.1' encoding='UTF-8'?>\n");
             beingWritten.put(o, null);
@@ -218,11 +384,8 @@ public final class XmlFile {
                 beingWritten.remove(o);
                 writing.set(null);
             }
-            w.commit();
         } catch (RuntimeException e) {
             throw new IOException(e);
-        } finally {
-            w.abort();
         }
     }
 
@@ -248,10 +411,23 @@ public final class XmlFile {
     }
 
     public boolean exists() {
+        ConfigStorage.Location location;
+        try {
+            location = ConfigStorage.locate(file);
+        } catch (IOException x) {
+            throw new UncheckedIOException(x);
+        }
+        if (location != null) {
+            return location.exists();
+        }
         return file.exists();
     }
 
     public void delete() throws IOException {
+        ConfigStorage.Location location = ConfigStorage.locate(file);
+        if (location != null) {
+            location.delete();
+        }
         Files.deleteIfExists(Util.fileToPath(file));
     }
 
@@ -273,7 +449,7 @@ public final class XmlFile {
      */
     public Reader readRaw() throws IOException {
         try {
-            InputStream fileInputStream = Files.newInputStream(file.toPath());
+            InputStream fileInputStream = open();
             try {
                 return new InputStreamReader(fileInputStream, sniffEncoding());
             } catch (IOException ex) {
@@ -323,7 +499,7 @@ public final class XmlFile {
             }
         }
 
-        try (InputStream in = Files.newInputStream(file.toPath())) {
+        try (InputStream in = open()) {
             InputSource input = new InputSource(file.toURI().toASCIIString());
             input.setByteStream(in);
             SAXParserFactory spf = SAXParserFactory.newInstance();
@@ -382,7 +558,7 @@ public final class XmlFile {
 
     private static final Logger LOGGER = Logger.getLogger(XmlFile.class.getName());
 
-    private static final HierarchicalStreamDriver DEFAULT_DRIVER = XStream2.getDefaultDriver();
+    private static final HierarchicalStreamDriver DEFAULT_DRIVER = XStream2.getSharedDriver();
 
     private static final XStream DEFAULT_XSTREAM = new XStream2(DEFAULT_DRIVER);
 }
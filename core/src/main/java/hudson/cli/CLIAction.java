@@ -126,21 +126,7 @@ public class CLIAction implements UnprotectedRootAction, StaplerProxy {
             return HttpResponses.notFound();
         }
         if (ALLOW_WEBSOCKET == null) {
-            final String actualOrigin = req.getHeader("Origin");
-
-            String o = Jenkins.get().getRootUrlFromRequest();
-            String removeSuffix1 = "/";
-            if (o.endsWith(removeSuffix1)) {
-                o = o.substring(0, o.length() - removeSuffix1.length());
-            }
-            String removeSuffix2 = req.getContextPath();
-            if (o.endsWith(removeSuffix2)) {
-                o = o.substring(0, o.length() - removeSuffix2.length());
-            }
-            final String expectedOrigin = o;
-
-            if (actualOrigin == null || !actualOrigin.equals(expectedOrigin)) {
-                LOGGER.log(Level.FINE, () -> "Rejecting origin: " + actualOrigin + "; expected was from request: " + expectedOrigin);
+            if (!WebSockets.isSameOrigin(req)) {
                 return HttpResponses.forbidden();
             }
         } else if (!ALLOW_WEBSOCKET) {
@@ -0,0 +1,44 @@
+package hudson.cli;
+
+import hudson.AbortException;
+import hudson.Extension;
+import jenkins.model.Jenkins;
+import jenkins.util.io.ConfigStorage;
+import org.kohsuke.args4j.Argument;
+
+/**
+ * Copies configuration files between the {@link ConfigStorage} in use and their usual place in {@code JENKINS_HOME}.
+ */
+@Extension
+public class ConfigStorageCommand extends CLICommand {
+
+    @Argument(metaVar = "ACTION", usage = "'export' to write stored configuration files to JENKINS_HOME, "
+            + "'import' to store the configuration files found in JENKINS_HOME, for example after editing them by hand; follow with reload-configuration",
+            required = true)
+    public String action;
+
+    @Override
+    public String getShortDescription() {
+        return Messages.ConfigStorageCommand_ShortDescription();
+    }
+
+    @Override
+    protected int run() throws Exception {
+        Jenkins j = Jenkins.get();
+        j.checkPermission(Jenkins.ADMINISTER);
+        ConfigStorage storage = ConfigStorage.get();
+        if (storage == null) {
+            throw new AbortException("Configuration files are kept directly on the filesystem");
+        }
+        switch (action) {
+            case "export":
+                stdout.println("Exported " + storage.exportTo(j.getRootDir()) + " files");
+                return 0;
+            case "import":
+                stdout.println("Imported " + storage.importFrom(j.getRootDir()) + " files");
+                return 0;
+            default:
+                throw new IllegalArgumentException("Unknown action: " + action);
+        }
+    }
+}
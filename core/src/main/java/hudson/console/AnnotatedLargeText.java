@@ -28,8 +28,10 @@ package hudson.console;
 
 import static java.lang.Math.abs;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.CheckReturnValue;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.model.Run;
 import hudson.remoting.ObjectInputStreamEx;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -48,9 +50,14 @@ import java.util.zip.GZIPOutputStream;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
+import javax.servlet.http.HttpServletResponse;
 import jenkins.model.Jenkins;
 import jenkins.security.CryptoConfidentialKey;
 import org.jenkinsci.remoting.util.AnonymousClassWarnings;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
 import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
@@ -80,21 +87,81 @@ public class AnnotatedLargeText<T> extends LargeText {
      */
     private T context;
 
+    /**
+     * The log file, if this is not backed by memory.
+     */
+    private final File file;
+
     public AnnotatedLargeText(File file, Charset charset, boolean completed, T context) {
         super(file, charset, completed, true);
+        this.file = file;
         this.context = context;
     }
 
     public AnnotatedLargeText(ByteBuffer memory, Charset charset, boolean completed, T context) {
         super(memory, charset, completed);
+        this.file = null;
         this.context = context;
     }
 
     public void doProgressiveHtml(StaplerRequest req, StaplerResponse rsp) throws IOException {
         req.setAttribute("html", true);
+        ConsoleHtmlCache cache = getHtmlCache();
+        if (cache != null) {
+            String s = req.getParameter("start");
+            try {
+                long start = s != null ? Long.parseLong(s) : 0;
+                if (length() < start) {
+                    start = 0; // as in LargeText
+                }
+                try (ConsoleHtmlCache.Hit hit = cache.lookup(file, start, charset)) {
+                    if (hit != null) {
+                        setContentType(rsp);
+                        rsp.setStatus(HttpServletResponse.SC_OK);
+                        rsp.addHeader("X-Text-Size", String.valueOf(hit.end()));
+                        rsp.setContentLengthLong(hit.size());
+                        hit.transferTo(rsp.getOutputStream());
+                        return;
+                    }
+                }
+            } catch (NumberFormatException x) {
+                // let LargeText report it
+            }
+        }
         doProgressText(req, rsp);
     }
 
+    /**
+     * Follows the log of a running build over WebSocket rather than by polling {@link #doProgressiveHtml}.
+     * Takes the same {@code start} parameter, and {@code html=true} to receive annotated output.
+     * @see ConsoleTail
+     * @since TODO
+     */
+    public HttpResponse doWebSocket(StaplerRequest req) {
+        if (!isWebSocketSupported()) {
+            return HttpResponses.notFound();
+        }
+        String s = req.getParameter("start");
+        long start;
+        try {
+            start = s != null ? Long.parseLong(s) : 0;
+        } catch (NumberFormatException x) {
+            return HttpResponses.error(HttpServletResponse.SC_BAD_REQUEST, "Invalid start: " + s);
+        }
+        if (start < 0) {
+            return HttpResponses.error(HttpServletResponse.SC_BAD_REQUEST, "Invalid start: " + s);
+        }
+        return ConsoleTail.subscribe(req, file, charset, (Run<?, ?>) context, start, Boolean.parseBoolean(req.getParameter("html")));
+    }
+
+    /**
+     * Whether {@link #doWebSocket} may be used for this log.
+     */
+    @Restricted(NoExternalUse.class)
+    public boolean isWebSocketSupported() {
+        return file != null && context instanceof Run && ConsoleTail.isSupported();
+    }
+
     /**
      * Aliasing what I think was a wrong name in {@link LargeText}
      */
@@ -173,8 +240,31 @@ public class AnnotatedLargeText<T> extends LargeText {
         return super.writeLogTo(start, out);
     }
 
+    /**
+     * Writes the annotated log from the given offset, using {@link ConsoleHtmlCache} for completed builds when it is enabled.
+     */
     @CheckReturnValue
     public long writeHtmlTo(long start, Writer w) throws IOException {
+        ConsoleHtmlCache cache = getHtmlCache();
+        if (cache != null) {
+            try (ConsoleHtmlCache.Hit hit = cache.lookup(file, start, charset)) {
+                if (hit != null) {
+                    hit.writeTo(w);
+                    return hit.end();
+                }
+            }
+            try (ConsoleHtmlCache.Recorder recorder = cache.record(file, start, charset)) {
+                if (recorder != null) {
+                    long r = renderHtmlTo(start, recorder.tee(w));
+                    recorder.commit(r);
+                    return r;
+                }
+            }
+        }
+        return renderHtmlTo(start, w);
+    }
+
+    private long renderHtmlTo(long start, Writer w) throws IOException {
         ConsoleAnnotationOutputStream<T> caw = new ConsoleAnnotationOutputStream<>(
                 w, createAnnotator(Stapler.getCurrentRequest()), context, charset);
         long r = super.writeLogTo(start, caw);
@@ -191,6 +281,16 @@ public class AnnotatedLargeText<T> extends LargeText {
         return r;
     }
 
+    /**
+     * Gets the cache applicable to this log, if any: only the logs of completed builds are cached.
+     */
+    private @CheckForNull ConsoleHtmlCache getHtmlCache() {
+        if (file == null || !isComplete() || !(context instanceof Run)) {
+            return null;
+        }
+        return ConsoleHtmlCache.get();
+    }
+
     /**
      * Used for sending the state of ConsoleAnnotator to the client, because we are deserializing this object later.
      */
@@ -0,0 +1,471 @@
+package hudson.console;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.ExtensionListListener;
+import hudson.PluginWrapper;
+import hudson.Util;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest;
+
+/**
+ * On-disk cache of the HTML rendering of completed build logs.
+ *
+ * <p>
+ * Rendering a console page runs every line through the {@link ConsoleAnnotator}s and {@link ConsoleNote}s,
+ * which is wasted work when many people look at the same finished build.
+ * Each entry holds what {@link AnnotatedLargeText#writeHtmlTo} produced for one log file from one start offset,
+ * so the same build may have a few entries (the tail shown by default, the full log, etc.)
+ * Entries are evicted least recently used first once their total size exceeds {@link #MAX_SIZE}.
+ *
+ * <p>
+ * Entries are keyed by the set of installed {@link ConsoleAnnotatorFactory} and {@link ConsoleAnnotationDescriptor}
+ * implementations (and the versions of the plugins defining them), and the whole cache is dropped when either list changes.
+ *
+ * <p>
+ * Requests carrying the {@code X-ConsoleAnnotator} state of an earlier response are rendered without the cache,
+ * since the output then depends on that state rather than only on the log.
+ * Otherwise nothing about the request except its context path is part of the key,
+ * so this may only be enabled when every active annotator renders the same for every user and request.
+ * For that reason it is disabled unless {@code hudson.console.ConsoleHtmlCache.maxSize} is set to a positive number of bytes.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+@Extension
+public final class ConsoleHtmlCache extends ExtensionListListener {
+
+    private static final Logger LOGGER = Logger.getLogger(ConsoleHtmlCache.class.getName());
+
+    /**
+     * Maximum total size of the cache in bytes. Zero or negative disables it.
+     */
+    static /* not final */ long MAX_SIZE = SystemProperties.getLong(ConsoleHtmlCache.class.getName() + ".maxSize", 0L);
+
+    /**
+     * Every entry file starts with the offset returned by {@link AnnotatedLargeText#writeHtmlTo} when it was recorded.
+     */
+    private static final int HEADER_SIZE = Long.BYTES;
+
+    private static final String SUFFIX = ".html";
+
+    private final File dir;
+
+    /**
+     * Entry name to file size, in access order.
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalSize;
+
+    private boolean loaded;
+
+    private boolean listening;
+
+    /**
+     * Identifies the current set of annotators; null if it needs to be recomputed.
+     */
+    private String signature;
+
+    /**
+     * Entries currently being recorded, so that concurrent viewers of the same build do not all write a copy.
+     */
+    private final Set<String> recording = ConcurrentHashMap.newKeySet();
+
+    public ConsoleHtmlCache() {
+        this(new File(Jenkins.get().getRootDir(), "caches/console-html"));
+    }
+
+    ConsoleHtmlCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Gets the cache if it is enabled and applicable to the current request.
+     */
+    static @CheckForNull ConsoleHtmlCache get() {
+        if (MAX_SIZE <= 0 || Jenkins.getInstanceOrNull() == null) {
+            return null;
+        }
+        StaplerRequest req = Stapler.getCurrentRequest();
+        if (req != null && req.getHeader("X-ConsoleAnnotator") != null) {
+            return null;
+        }
+        ConsoleHtmlCache cache = ExtensionList.lookupSingleton(ConsoleHtmlCache.class);
+        cache.listen();
+        return cache;
+    }
+
+    private synchronized void listen() {
+        if (!listening) {
+            ConsoleAnnotatorFactory.all().addListener(this);
+            ConsoleAnnotationDescriptor.all().addListener(this);
+            listening = true;
+        }
+    }
+
+    /**
+     * Drops all entries since the rendering they hold may now be different.
+     */
+    @Override
+    public synchronized void onChange() {
+        signature = null;
+        clear();
+    }
+
+    synchronized void clear() {
+        for (String name : entries.keySet()) {
+            delete(name);
+        }
+        entries.clear();
+        totalSize = 0;
+    }
+
+    /**
+     * Looks up a cached rendering.
+     * @param log the log file being rendered
+     * @param start the offset rendering starts from
+     * @param charset the charset of the log
+     * @return an open entry which the caller must close, or null on a miss
+     */
+    @CheckForNull Hit lookup(@NonNull File log, long start, @NonNull Charset charset) throws IOException {
+        String name = name(log, start, charset);
+        synchronized (this) {
+            load();
+            if (entries.get(name) == null) {
+                return null;
+            }
+        }
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file(name).toPath(), StandardOpenOption.READ);
+        } catch (NoSuchFileException x) {
+            synchronized (this) {
+                forget(name);
+            }
+            return null;
+        }
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new IOException("Truncated cache entry " + name);
+                }
+            }
+            header.flip();
+            return new Hit(channel, header.getLong());
+        } catch (IOException x) {
+            channel.close();
+            LOGGER.log(Level.FINE, "dropping unreadable entry " + name, x);
+            synchronized (this) {
+                forget(name);
+                delete(name);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Starts recording a rendering.
+     * @return a recorder which the caller must close, or null if the entry is already being recorded
+     */
+    @CheckForNull Recorder record(@NonNull File log, long start, @NonNull Charset charset) throws IOException {
+        String name = name(log, start, charset);
+        if (!recording.add(name)) {
+            return null;
+        }
+        try {
+            Files.createDirectories(dir.toPath());
+            Path tmp = Files.createTempFile(dir.toPath(), name, ".tmp");
+            return new Recorder(name, tmp);
+        } catch (IOException | RuntimeException x) {
+            recording.remove(name);
+            throw x;
+        }
+    }
+
+    private synchronized void commit(String name, Path tmp) throws IOException {
+        long size = Files.size(tmp);
+        if (size > MAX_SIZE / 2) {
+            LOGGER.fine(() -> "not caching " + name + " of " + size + " bytes");
+            Files.deleteIfExists(tmp);
+            return;
+        }
+        load();
+        Files.move(tmp, file(name).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forget(name);
+        entries.put(name, size);
+        totalSize += size;
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (totalSize > MAX_SIZE && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            if (eldest.getKey().equals(name)) {
+                continue;
+            }
+            it.remove();
+            totalSize -= eldest.getValue();
+            delete(eldest.getKey());
+        }
+    }
+
+    /**
+     * Picks up entries left by a previous session, oldest first, and removes abandoned temporary files.
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File f : files) {
+            String fileName = f.getName();
+            if (fileName.endsWith(SUFFIX)) {
+                long size = f.length();
+                entries.put(fileName.substring(0, fileName.length() - SUFFIX.length()), size);
+                totalSize += size;
+            } else if (!f.delete()) {
+                LOGGER.fine(() -> "could not delete " + f);
+            }
+        }
+    }
+
+    private void forget(String name) {
+        Long size = entries.remove(name);
+        if (size != null) {
+            totalSize -= size;
+        }
+    }
+
+    private void delete(String name) {
+        try {
+            Files.deleteIfExists(file(name).toPath());
+        } catch (IOException x) {
+            // e.g. open by a reader on Windows; will be overwritten or evicted later
+            LOGGER.log(Level.FINE, "could not delete " + name, x);
+        }
+    }
+
+    private File file(String name) {
+        return new File(dir, name + SUFFIX);
+    }
+
+    private String name(File log, long start, Charset charset) throws IOException {
+        StaplerRequest req = Stapler.getCurrentRequest();
+        String key = log.getAbsolutePath() + '\0' + log.length() + '\0' + log.lastModified() + '\0' + start + '\0'
+                + charset.name() + '\0' + (req != null ? req.getContextPath() : "") + '\0' + signature();
+        return Util.getHexOfSHA256DigestOf(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private synchronized String signature() {
+        if (signature == null) {
+            Set<String> types = new TreeSet<>();
+            for (ConsoleAnnotatorFactory<?> f : ConsoleAnnotatorFactory.all()) {
+                types.add(describe(f.getClass()));
+            }
+            for (ConsoleAnnotationDescriptor d : ConsoleAnnotationDescriptor.all()) {
+                types.add(describe(d.clazz));
+            }
+            signature = Jenkins.VERSION + types;
+        }
+        return signature;
+    }
+
+    private static String describe(Class<?> type) {
+        Jenkins j = Jenkins.getInstanceOrNull();
+        PluginWrapper plugin = j != null ? j.getPluginManager().whichPlugin(type) : null;
+        return plugin != null ? type.getName() + '@' + plugin.getVersion() : type.getName();
+    }
+
+    /**
+     * An open cache entry.
+     */
+    static final class Hit implements Closeable {
+        private final FileChannel channel;
+        private final long end;
+
+        Hit(FileChannel channel, long end) {
+            this.channel = channel;
+            this.end = end;
+        }
+
+        /**
+         * The offset {@link AnnotatedLargeText#writeHtmlTo} returned when this entry was recorded.
+         */
+        long end() {
+            return end;
+        }
+
+        /**
+         * Size of the UTF-8 encoded HTML in bytes.
+         */
+        long size() throws IOException {
+            return channel.size() - HEADER_SIZE;
+        }
+
+        /**
+         * Sends the HTML as UTF-8, letting the JDK avoid copies through user space where the target allows it.
+         */
+        void transferTo(OutputStream out) throws IOException {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = HEADER_SIZE;
+            long size = channel.size();
+            while (position < size) {
+                position += channel.transferTo(position, size - position, target);
+            }
+        }
+
+        void writeTo(Writer w) throws IOException {
+            channel.position(HEADER_SIZE);
+            Reader r = new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8);
+            char[] buf = new char[8192];
+            int len;
+            while ((len = r.read(buf)) >= 0) {
+                w.write(buf, 0, len);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Copies HTML being rendered into a new entry.
+     */
+    final class Recorder implements Closeable {
+        private final String name;
+        private final Path tmp;
+        private final FileChannel channel;
+        private final Writer out;
+        private long written;
+        private boolean failed;
+        private boolean committed;
+
+        Recorder(String name, Path tmp) throws IOException {
+            this.name = name;
+            this.tmp = tmp;
+            this.channel = FileChannel.open(tmp, StandardOpenOption.WRITE);
+            channel.position(HEADER_SIZE);
+            this.out = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Wraps a writer so that everything written to it is also recorded.
+         * Problems writing to the cache are not reported to the caller; the entry is just abandoned.
+         */
+        Writer tee(Writer w) {
+            return new FilterWriter(w) {
+                @Override
+                public void write(int c) throws IOException {
+                    super.write(c);
+                    record(String.valueOf((char) c));
+                }
+
+                @Override
+                public void write(char[] cbuf, int off, int len) throws IOException {
+                    super.write(cbuf, off, len);
+                    record(new String(cbuf, off, len));
+                }
+
+                @Override
+                public void write(String str, int off, int len) throws IOException {
+                    super.write(str, off, len);
+                    record(str.substring(off, off + len));
+                }
+            };
+        }
+
+        private void record(String s) {
+            if (failed) {
+                return;
+            }
+            written += s.length();
+            if (written > MAX_SIZE / 2) {
+                failed = true;
+                return;
+            }
+            try {
+                out.write(s);
+            } catch (IOException x) {
+                LOGGER.log(Level.FINE, "abandoning " + name, x);
+                failed = true;
+            }
+        }
+
+        /**
+         * Publishes the entry.
+         * @param end the offset returned by {@link AnnotatedLargeText#writeHtmlTo}
+         */
+        void commit(long end) {
+            if (failed) {
+                return;
+            }
+            try {
+                out.flush();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putLong(0, end);
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.close();
+                ConsoleHtmlCache.this.commit(name, tmp);
+                committed = true;
+            } catch (IOException x) {
+                LOGGER.log(Level.FINE, "could not cache " + name, x);
+            }
+        }
+
+        @Override
+        public void close() {
+            recording.remove(name);
+            try {
+                channel.close();
+                if (!committed) {
+                    Files.deleteIfExists(tmp);
+                }
+            } catch (IOException x) {
+                LOGGER.log(Level.FINE, "could not clean up " + tmp, x);
+            }
+        }
+    }
+}
@@ -0,0 +1,490 @@
+package hudson.console;
+
+import hudson.model.Run;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import jenkins.websocket.WebSocketSession;
+import jenkins.websocket.WebSockets;
+import net.sf.json.JSONObject;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.StaplerRequest;
+
+/**
+ * Pushes the output of running builds to WebSocket subscribers, as an alternative to polling
+ * {@link AnnotatedLargeText#doProgressiveHtml}.
+ *
+ * <p>
+ * All subscribers to one log share a single {@link ConsoleTail}, which periodically reads whatever complete lines
+ * were appended to the log file and queues the same bytes for every subscriber.
+ * Each subscriber then drains its own queue on a {@link Timer} thread, running the bytes through its own
+ * {@link ConsoleAnnotator}s (or stripping notes for plain text), and sends a text frame with a JSON object
+ * holding the {@code text} and the {@code end} offset.
+ * A subscriber does not send another frame until the client has taken the previous one, and is disconnected
+ * once more than {@link #MAX_QUEUED} bytes are waiting for it, so one slow client cannot hold up the others.
+ * Once the build is over, a last frame with {@code completed} set to true is sent and the connection is closed.
+ * If the connection drops earlier, clients may resume by polling from the last {@code end} offset.
+ */
+@Restricted(NoExternalUse.class)
+final class ConsoleTail {
+
+    private static final Logger LOGGER = Logger.getLogger(ConsoleTail.class.getName());
+
+    /**
+     * Whether to offer WebSocket subscriptions at all.
+     */
+    static /* not final */ boolean ENABLED = SystemProperties.getBoolean(ConsoleTail.class.getName() + ".enabled", true);
+
+    /**
+     * How often the log of a running build is checked for new output.
+     */
+    static /* not final */ long POLL_INTERVAL = SystemProperties.getLong(ConsoleTail.class.getName() + ".pollInterval", 500L);
+
+    /**
+     * Maximum number of bytes of output waiting to be sent to one subscriber before it is disconnected.
+     */
+    static /* not final */ int MAX_QUEUED = SystemProperties.getInteger(ConsoleTail.class.getName() + ".maxQueued", 4 * 1024 * 1024);
+
+    /**
+     * Maximum number of bytes read from the log in one go.
+     */
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * Active tails by log file.
+     */
+    private static final Map<File, ConsoleTail> tails = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final Run<?, ?> run;
+    private final List<Subscriber> subscribers = new ArrayList<>();
+
+    /**
+     * Offset up to which the log has been handed to subscribers; always just past a newline except initially.
+     */
+    private long position;
+
+    private ScheduledFuture<?> task;
+
+    private boolean stopped;
+
+    private ConsoleTail(File file, Run<?, ?> run, long position) {
+        this.file = file;
+        this.run = run;
+        this.position = position;
+    }
+
+    static boolean isSupported() {
+        return ENABLED && WebSockets.isSupported();
+    }
+
+    /**
+     * Serves a subscription to the given log.
+     * @param start offset to start sending from
+     * @param html whether to send annotated HTML rather than plain text
+     */
+    static HttpResponse subscribe(StaplerRequest req, File file, Charset charset, Run<?, ?> run, long start, boolean html) {
+        if (!isSupported()) {
+            return HttpResponses.notFound();
+        }
+        if (!WebSockets.isSameOrigin(req)) {
+            return HttpResponses.forbidden();
+        }
+        return WebSockets.upgrade(new Subscriber(file, charset, run, start, html));
+    }
+
+    private static void add(Subscriber subscriber) {
+        while (true) {
+            ConsoleTail tail = tails.computeIfAbsent(subscriber.file, f -> new ConsoleTail(f, subscriber.run, subscriber.start));
+            synchronized (tail) {
+                if (tail.stopped) {
+                    continue; // lost a race with the last subscriber leaving
+                }
+                tail.join(subscriber);
+                if (tail.task == null) {
+                    tail.task = Timer.get().scheduleWithFixedDelay(tail::poll, 0, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+        }
+    }
+
+    private static void remove(Subscriber subscriber) {
+        ConsoleTail tail = tails.get(subscriber.file);
+        if (tail != null) {
+            tail.leave(subscriber);
+        }
+    }
+
+    /**
+     * Starts handing a new subscriber further output; it reads whatever it has missed from the log itself.
+     */
+    private synchronized void join(Subscriber subscriber) {
+        subscriber.follow(position);
+        subscribers.add(subscriber);
+    }
+
+    private synchronized void leave(Subscriber subscriber) {
+        if (subscribers.remove(subscriber) && subscribers.isEmpty()) {
+            stop();
+        }
+    }
+
+    private synchronized void stop() {
+        stopped = true;
+        if (task != null) {
+            task.cancel(false);
+        }
+        tails.remove(file, this);
+    }
+
+    private synchronized void poll() {
+        try {
+            // check first, so that everything written before completion gets read below
+            boolean completed = !run.isLogUpdated();
+            readAppended(completed);
+            if (completed) {
+                // each subscriber closes its connection once it has sent this
+                Chunk last = new Chunk(new byte[0], position, true);
+                for (Subscriber subscriber : subscribers) {
+                    subscriber.offer(last);
+                }
+                subscribers.clear();
+            }
+        } catch (IOException | RuntimeException x) {
+            LOGGER.log(Level.WARNING, "Failed to follow " + file, x);
+            for (Subscriber subscriber : subscribers) {
+                subscriber.drop();
+            }
+            subscribers.clear();
+        }
+        if (subscribers.isEmpty()) {
+            stop();
+        }
+    }
+
+    /**
+     * Queues what was appended to the log since the last poll for all subscribers.
+     * @param completed if true, read to the end of the file even if the last line is incomplete
+     */
+    private void readAppended(boolean completed) throws IOException {
+        long length = file.length();
+        if (length <= position) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(position);
+            byte[] buf = new byte[(int) Math.min(CHUNK_SIZE, length - position)];
+            while (position < length) {
+                int len = raf.read(buf, 0, (int) Math.min(buf.length, length - position));
+                if (len <= 0) {
+                    break;
+                }
+                if (!completed || position + len < length) {
+                    // only complete lines, so that annotators see whole lines
+                    int eol = len - 1;
+                    while (eol >= 0 && buf[eol] != '\n') {
+                        eol--;
+                    }
+                    if (eol < 0) {
+                        if (len < CHUNK_SIZE) {
+                            return; // line still being written
+                        }
+                        eol = len - 1; // overly long line, just split it
+                    }
+                    len = eol + 1;
+                    raf.seek(position + len);
+                }
+                position += len;
+                Chunk chunk = new Chunk(Arrays.copyOf(buf, len), position, false);
+                for (Subscriber subscriber : subscribers) {
+                    subscriber.offer(chunk);
+                }
+            }
+        }
+    }
+
+    /**
+     * Output of the log up to a given offset, shared by all subscribers.
+     */
+    private static final class Chunk {
+        final byte[] data;
+        final long end;
+        final boolean completed;
+
+        Chunk(byte[] data, long end, boolean completed) {
+            this.data = data;
+            this.end = end;
+            this.completed = completed;
+        }
+    }
+
+    /**
+     * One WebSocket connection following a log.
+     */
+    private static final class Subscriber extends WebSocketSession {
+        private final File file;
+        private final Run<?, ?> run;
+        private final long start;
+        private final Charset charset;
+        private final StringWriter html;
+        private final ByteArrayOutputStream text;
+        private final OutputStream out;
+
+        /**
+         * Output handed over by the tail but not yet sent.
+         */
+        private final Deque<Chunk> queue = new ArrayDeque<>();
+
+        /**
+         * Number of bytes in {@link #queue}.
+         */
+        private long queued;
+
+        /**
+         * Whether a {@link #drain} is running or scheduled.
+         */
+        private boolean draining;
+
+        /**
+         * Whether this connection is to be closed or already is, so that nothing more should be sent.
+         */
+        private boolean dropped;
+
+        /**
+         * Offset up to which the log has been read for this subscriber before the tail started handing it output.
+         */
+        private long caughtUp;
+
+        /**
+         * Offset from which the tail hands this subscriber output.
+         */
+        private long followed;
+
+        /**
+         * Number of bytes to drop before sending, if this subscriber joined an existing tail further along.
+         */
+        private long skip;
+
+        /**
+         * The last frame sent, which the client must take before the next one is sent.
+         */
+        private Future<Void> sending;
+
+        Subscriber(File file, Charset charset, Run<?, ?> run, long start, boolean html) {
+            this.file = file;
+            this.charset = charset;
+            this.run = run;
+            this.start = start;
+            if (html) {
+                this.html = new StringWriter();
+                this.text = null;
+                this.out = new ConsoleAnnotationOutputStream<Run<?, ?>>(this.html, ConsoleAnnotator.<Run<?, ?>>initial(run), run, charset);
+            } else {
+                this.html = null;
+                this.text = new ByteArrayOutputStream();
+                this.out = new PlainTextConsoleOutputStream(this.text);
+            }
+        }
+
+        @Override
+        protected void opened() {
+            add(this);
+        }
+
+        @Override
+        protected void closed(int statusCode, String reason) {
+            synchronized (this) {
+                dropped = true;
+                queue.clear();
+            }
+            remove(this);
+        }
+
+        @Override
+        protected void error(Throwable cause) {
+            LOGGER.log(Level.FINE, "Error following " + file, cause);
+            synchronized (this) {
+                dropped = true;
+                queue.clear();
+            }
+            remove(this);
+        }
+
+        /**
+         * Called when joining a tail which has read the log up to the given offset.
+         */
+        synchronized void follow(long position) {
+            if (start < position) {
+                caughtUp = start;
+                followed = position;
+                schedule();
+            } else {
+                skip = start - position;
+            }
+        }
+
+        /**
+         * Queues output for sending, or gives up on a client which has fallen too far behind.
+         */
+        synchronized void offer(Chunk chunk) {
+            if (dropped) {
+                return;
+            }
+            queued += chunk.data.length;
+            if (queued > MAX_QUEUED) {
+                LOGGER.fine(() -> "Disconnecting " + this + " with " + queued + " bytes queued");
+                drop();
+                return;
+            }
+            queue.add(chunk);
+            schedule();
+        }
+
+        /**
+         * Closes the connection without sending anything more.
+         */
+        synchronized void drop() {
+            dropped = true;
+            queue.clear();
+            queued = 0;
+            schedule();
+        }
+
+        private void schedule() {
+            assert Thread.holdsLock(this);
+            if (!draining) {
+                draining = true;
+                Timer.get().submit(this::drain);
+            }
+        }
+
+        /**
+         * Sends queued output, one frame at a time, until there is nothing left or the client is still busy.
+         */
+        private void drain() {
+            try {
+                while (true) {
+                    Chunk chunk;
+                    synchronized (this) {
+                        if (dropped) {
+                            draining = false;
+                            break;
+                        }
+                        if (sending != null && !sending.isDone()) {
+                            // check again later rather than piling up frames the client is not taking
+                            Timer.get().schedule(this::drain, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                            return;
+                        }
+                        if (caughtUp < followed) {
+                            chunk = null;
+                        } else {
+                            chunk = queue.poll();
+                            if (chunk == null) {
+                                draining = false;
+                                return;
+                            }
+                            queued -= chunk.data.length;
+                        }
+                    }
+                    if (chunk == null) {
+                        catchUp();
+                    } else if (chunk.completed) {
+                        ((LineTransformationOutputStream) out).forceEol();
+                        send(chunk.end, true);
+                        synchronized (this) {
+                            dropped = true;
+                        }
+                    } else {
+                        write(chunk.data, chunk.end);
+                    }
+                }
+            } catch (IOException | RuntimeException x) {
+                LOGGER.log(Level.FINE, "Could not send to subscriber of " + file, x);
+                synchronized (this) {
+                    dropped = true;
+                    draining = false;
+                }
+            }
+            try {
+                close();
+            } catch (IOException x) {
+                LOGGER.log(Level.FINE, null, x);
+            }
+        }
+
+        /**
+         * Sends the next part of the log written before this subscriber joined the tail.
+         */
+        private void catchUp() throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                raf.seek(caughtUp);
+                byte[] buf = new byte[(int) Math.min(CHUNK_SIZE, followed - caughtUp)];
+                int len = raf.read(buf);
+                if (len < 0) {
+                    throw new IOException(file + " is shorter than " + followed + " bytes");
+                }
+                caughtUp += len;
+                write(Arrays.copyOf(buf, len), caughtUp);
+            }
+        }
+
+        private void write(byte[] data, long end) throws IOException {
+            int off = 0;
+            if (skip > 0) {
+                off = (int) Math.min(skip, data.length);
+                skip -= off;
+            }
+            out.write(data, off, data.length - off);
+            send(end, false);
+        }
+
+        private void send(long end, boolean completed) throws IOException {
+            out.flush();
+            String chunk;
+            if (html != null) {
+                chunk = html.toString();
+                html.getBuffer().setLength(0);
+            } else {
+                chunk = text.toString(charset);
+                text.reset();
+            }
+            if (chunk.isEmpty() && !completed) {
+                return;
+            }
+            JSONObject message = new JSONObject();
+            message.put("text", chunk);
+            message.put("end", end);
+            if (completed) {
+                message.put("completed", true);
+            }
+            sending = sendText(message.toString());
+        }
+
+        @Override
+        public String toString() {
+            return "Subscriber to " + run + " from " + start;
+        }
+    }
+}
@@ -24,11 +24,14 @@
 
 package hudson.diagnosis;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.thoughtworks.xstream.converters.UnmarshallingContext;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
 import hudson.ExtensionList;
+import hudson.Functions;
 import hudson.Main;
 import hudson.XmlFile;
 import hudson.model.AdministrativeMonitor;
@@ -49,6 +52,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
@@ -59,12 +63,15 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.management.Badge;
 import jenkins.model.Jenkins;
+import jenkins.util.BulkResave;
+import jenkins.util.SystemProperties;
 import org.jenkinsci.Symbol;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.HttpRedirect;
 import org.kohsuke.stapler.HttpResponse;
 import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.interceptor.RequirePOST;
@@ -79,6 +86,18 @@ import org.kohsuke.stapler.interceptor.RequirePOST;
 public class OldDataMonitor extends AdministrativeMonitor {
     private static final Logger LOGGER = Logger.getLogger(OldDataMonitor.class.getName());
 
+    /**
+     * Number of entries listed per page of {@code manage.jelly}.
+     */
+    private static final int PAGE_SIZE = SystemProperties.getInteger(OldDataMonitor.class.getName() + ".pageSize", 100);
+
+    /**
+     * Error messages and job names, which tend to be repeated for many builds.
+     */
+    private static final Interner<String> STRINGS = Interners.newWeakInterner();
+
+    private static final Interner<VersionNumber> VERSIONS = Interners.newWeakInterner();
+
     private ConcurrentMap<SaveableReference, VersionRange> data = new ConcurrentHashMap<>();
 
     /**
@@ -118,6 +137,66 @@ public class OldDataMonitor extends AdministrativeMonitor {
         return r;
     }
 
+    /**
+     * Gets one page of entries, loading only the objects on that page.
+     * @param unreadable whether to list entries with only unreadable data, rather than those with data in an old format
+     * @param start index of the first entry to list
+     */
+    @Restricted(NoExternalUse.class)
+    public Map<Saveable, VersionRange> getPage(boolean unreadable, int start) {
+        int skip = start;
+        Map<Saveable, VersionRange> r = new LinkedHashMap<>();
+        for (Map.Entry<SaveableReference, VersionRange> entry : data.entrySet()) {
+            if (r.size() == PAGE_SIZE) {
+                break;
+            }
+            if (entry.getValue().isUnreadable() != unreadable) {
+                continue;
+            }
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            Saveable s = entry.getKey().get();
+            if (s != null) {
+                r.put(s, entry.getValue());
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Counts the entries listed by {@link #getPage}.
+     */
+    @Restricted(NoExternalUse.class)
+    public int count(boolean unreadable) {
+        int count = 0;
+        for (VersionRange vr : data.values()) {
+            if (vr.isUnreadable() == unreadable) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Restricted(NoExternalUse.class)
+    public int getPageSize() {
+        return PAGE_SIZE;
+    }
+
+    /**
+     * Gets the index of the first entry to list from a request parameter.
+     */
+    @Restricted(NoExternalUse.class)
+    public int getStart(String param) {
+        String start = Stapler.getCurrentRequest().getParameter(param);
+        try {
+            return start == null ? 0 : Math.max(0, Integer.parseInt(start));
+        } catch (NumberFormatException x) {
+            return 0;
+        }
+    }
+
     private static void remove(Saveable obj, boolean isDelete) {
         Jenkins j = Jenkins.get();
         OldDataMonitor odm = get(j);
@@ -248,8 +327,11 @@ public class OldDataMonitor extends AdministrativeMonitor {
         public final String extra;
 
         public VersionRange(VersionRange previous, String version, String extra) {
+            if (extra != null) {
+                extra = STRINGS.intern(extra);
+            }
             if (previous == null) {
-                min = max = version != null ? new VersionNumber(version) : null;
+                min = max = version != null ? VERSIONS.intern(new VersionNumber(version)) : null;
                 this.single = true;
                 this.extra = extra;
             } else if (version == null) {
@@ -258,7 +340,7 @@ public class OldDataMonitor extends AdministrativeMonitor {
                 single = previous.single;
                 this.extra = extra;
             } else {
-                VersionNumber ver = new VersionNumber(version);
+                VersionNumber ver = VERSIONS.intern(new VersionNumber(version));
                 if (previous.min == null || ver.isOlderThan(previous.min)) {
                     this.min = ver;
                 } else {
@@ -279,6 +361,13 @@ public class OldDataMonitor extends AdministrativeMonitor {
             return min == null ? "" : min + (single ? "" : " - " + max.toString());
         }
 
+        /**
+         * Whether this is only about unreadable data, with nothing in an old format.
+         */
+        boolean isUnreadable() {
+            return min == null && extra != null;
+        }
+
         /**
          * Does this version range contain a version more than the given number of releases ago?
          * @param threshold Number of releases
@@ -320,7 +409,7 @@ public class OldDataMonitor extends AdministrativeMonitor {
     }
 
     /**
-     * Save all or some of the files to persist data in the new forms.
+     * Save all or some of the files to persist data in the new forms, in the background.
      * Remove those items from the data map.
      */
     @RequirePOST
@@ -337,7 +426,7 @@ public class OldDataMonitor extends AdministrativeMonitor {
     }
 
     /**
-     * Save all files containing only unreadable data (no data upgrades), which discards this data.
+     * Save all files containing only unreadable data (no data upgrades), which discards this data, in the background.
      * Remove those items from the data map.
      */
     @RequirePOST
@@ -349,32 +438,49 @@ public class OldDataMonitor extends AdministrativeMonitor {
 
     private void saveAndRemoveEntries(Predicate<Map.Entry<SaveableReference, VersionRange>> matchingPredicate) {
         /*
-         * Note that there a race condition here: we acquire the lock and get localCopy which includes some
-         * project (say); then we go through our loop and save that project; then someone POSTs a new
-         * config.xml for the project with some old data, causing remove to be called and the project to be
-         * added to data (in the new version); then we hit the end of this method and the project is removed
-         * from data again, even though it again has old data.
+         * Note that there a race condition here: we collect some project (say) to be saved;
+         * then someone POSTs a new config.xml for the project with some old data, causing remove to be called
+         * and the project to be added to data (in the new version); then we remove the project from data again,
+         * even though it again has old data.
          *
          * In practice this condition is extremely unlikely, and not a major problem even if it
          * does occur: just means the user will be prompted to discard less than they should have been (and
          * would see the warning again after next restart).
          */
         List<SaveableReference> removed = new ArrayList<>();
+        List<Saveable> saveables = new ArrayList<>();
+        List<String> runs = new ArrayList<>();
         for (Map.Entry<SaveableReference, VersionRange> entry : data.entrySet()) {
             if (matchingPredicate.test(entry)) {
-                Saveable s = entry.getKey().get();
-                if (s != null) {
-                    try {
-                        s.save();
-                    } catch (Exception x) {
-                        LOGGER.log(Level.WARNING, "failed to save " + s, x);
+                SaveableReference ref = entry.getKey();
+                if (ref instanceof RunSaveableReference) {
+                    // no need to load the build now
+                    runs.add(((RunSaveableReference) ref).getExternalizableId());
+                } else {
+                    Saveable s = ref.get();
+                    if (s != null) {
+                        saveables.add(s);
                     }
                 }
-                removed.add(entry.getKey());
+                removed.add(ref);
             }
         }
 
         data.keySet().removeAll(removed);
+        BulkResave.submit(saveables);
+        BulkResave.submitRuns(runs);
+    }
+
+    /**
+     * Describes the progress of the saves started from this page, if any are left.
+     */
+    @Restricted(NoExternalUse.class)
+    public @CheckForNull String getResaveProgress() {
+        if (!BulkResave.isRunning()) {
+            return null;
+        }
+        return Messages.OldDataMonitor_ResaveProgress(BulkResave.getDone(), BulkResave.getTotal(), BulkResave.getFailed(),
+                String.format("%.1f", BulkResave.getOpsPerSecond()), Functions.humanReadableByteSize((long) BulkResave.getBytesPerSecond()));
     }
 
     public HttpResponse doIndex(StaplerResponse rsp) throws IOException {
@@ -420,15 +526,21 @@ public class OldDataMonitor extends AdministrativeMonitor {
     // could easily make an ItemSaveableReference, but Jenkins holds all these strongly, so why bother
 
     private static final class RunSaveableReference implements SaveableReference {
-        private final String id;
+        private final String job;
+        private final int number;
 
         RunSaveableReference(Run<?, ?> r) {
-            id = r.getExternalizableId();
+            job = STRINGS.intern(r.getParent().getFullName());
+            number = r.getNumber();
+        }
+
+        String getExternalizableId() {
+            return job + '#' + number;
         }
 
         @Override public Saveable get() {
             try {
-                return Run.fromExternalizableId(id);
+                return Run.fromExternalizableId(getExternalizableId());
             } catch (IllegalArgumentException x) {
                 // Typically meaning the job or build was since deleted.
                 LOGGER.log(Level.FINE, null, x);
@@ -437,11 +549,11 @@ public class OldDataMonitor extends AdministrativeMonitor {
         }
 
         @Override public int hashCode() {
-            return id.hashCode();
+            return 31 * job.hashCode() + number;
         }
 
         @Override public boolean equals(Object obj) {
-            return obj instanceof RunSaveableReference && id.equals(((RunSaveableReference) obj).id);
+            return obj instanceof RunSaveableReference && number == ((RunSaveableReference) obj).number && job.equals(((RunSaveableReference) obj).job);
         }
     }
 
@@ -45,7 +45,6 @@ import hudson.util.AlternativeUiTextProvider;
 import hudson.util.AlternativeUiTextProvider.Message;
 import hudson.util.AtomicFileWriter;
 import hudson.util.FormValidation;
-import hudson.util.IOUtils;
 import hudson.util.Secret;
 import java.io.File;
 import java.io.IOException;
@@ -71,6 +70,7 @@ import jenkins.model.Loadable;
 import jenkins.model.queue.ItemDeletion;
 import jenkins.security.NotReallyRoleSensitiveCallable;
 import jenkins.util.SystemProperties;
+import jenkins.util.io.ConfigStorage;
 import jenkins.util.xml.XMLUtils;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.taskdefs.Copy;
@@ -433,6 +433,7 @@ public abstract class AbstractItem extends Actionable implements Loadable, Item,
                             e.printStackTrace();
                         }
                     }
+                    ConfigStorage.moved(oldRoot, newRoot);
 
                     success = true;
                 } finally {
@@ -751,6 +752,7 @@ public abstract class AbstractItem extends Actionable implements Loadable, Item,
     protected void performDelete() throws IOException, InterruptedException {
         getConfigFile().delete();
         Util.deleteRecursive(getRootDir());
+        ConfigStorage.deleted(getRootDir());
     }
 
     /**
@@ -787,10 +789,10 @@ public abstract class AbstractItem extends Actionable implements Loadable, Item,
         checkPermission(EXTENDED_READ);
         XmlFile configFile = getConfigFile();
         if (hasPermission(CONFIGURE)) {
-            IOUtils.copy(configFile.getFile(), os);
+            os.write(configFile.readBytes());
         } else {
             String encoding = configFile.sniffEncoding();
-            String xml = Files.readString(Util.fileToPath(configFile.getFile()), Charset.forName(encoding));
+            String xml = new String(configFile.readBytes(), Charset.forName(encoding));
             Matcher matcher = SECRET_PATTERN.matcher(xml);
             StringBuilder cleanXml = new StringBuilder();
             while (matcher.find()) {
@@ -848,7 +850,11 @@ public abstract class AbstractItem extends Actionable implements Loadable, Item,
             Jenkins.get().rebuildDependencyGraphAsync();
 
             // if everything went well, commit this new version
-            out.commit();
+            if (ConfigStorage.locate(configXmlFile.getFile()) == null) {
+                out.commit();
+            } else {
+                configXmlFile.writeBytes(Files.readAllBytes(out.getTemporaryPath()));
+            }
             SaveableListener.fireOnChange(this, getConfigFile());
             ItemListener.fireOnUpdated(this);
 
@@ -24,6 +24,7 @@
 
 package hudson.model;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.FilePath;
 import hudson.Util;
@@ -39,7 +40,6 @@ import java.nio.file.LinkOption;
 import java.nio.file.OpenOption;
 import java.text.Collator;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Comparator;
@@ -61,8 +61,10 @@ import jenkins.model.Jenkins;
 import jenkins.security.MasterToSlaveCallable;
 import jenkins.security.ResourceDomainConfiguration;
 import jenkins.security.ResourceDomainRootAction;
+import jenkins.util.ArtifactDownload;
 import jenkins.util.SystemProperties;
 import jenkins.util.VirtualFile;
+import jenkins.util.ZipDownload;
 import org.apache.commons.io.IOUtils;
 import org.apache.tools.zip.ZipEntry;
 import org.apache.tools.zip.ZipOutputStream;
@@ -271,7 +273,6 @@ public final class DirectoryBrowserSupport implements HttpResponse {
         }
         if (baseFile.isDirectory()) {
             if (zip) {
-                rsp.setContentType("application/zip");
                 String includes, prefix;
                 if (rest == null || rest.isBlank()) {
                     includes = "**";
@@ -281,7 +282,7 @@ public final class DirectoryBrowserSupport implements HttpResponse {
                     includes = rest;
                     prefix = "";
                 }
-                baseFile.zip(rsp.getOutputStream(), includes, null, true, prefix, getOpenOptions());
+                ZipDownload.serve(baseFile, includes, prefix, immutableVersion(base), req, rsp, getOpenOptions());
                 return;
             }
             if (plain) {
@@ -409,6 +410,11 @@ public final class DirectoryBrowserSupport implements HttpResponse {
                         }
                     }
                 }
+                String version = immutableVersion(base);
+                if (version != null) {
+                    ArtifactDownload.serve(baseFile, version, ((Run<?, ?>) owner).getExternalizableId() + '/' + base, baseFile.getName(), req, rsp, getOpenOptions());
+                    return;
+                }
                 InputStream in;
                 try {
                     in = baseFile.open(getOpenOptions());
@@ -516,6 +522,18 @@ public final class DirectoryBrowserSupport implements HttpResponse {
         return r;
     }
 
+    /**
+     * Identifies the files served from a given directory if they cannot change anymore,
+     * which is assumed of those belonging to a completed build, such as its artifacts.
+     * @return null if the files might change
+     */
+    private @CheckForNull String immutableVersion(String path) {
+        if (owner instanceof Run<?, ?> run && !run.isLogUpdated()) {
+            return run.getExternalizableId() + ':' + run.getStartTimeInMillis() + ':' + title + ':' + path;
+        }
+        return null;
+    }
+
     private static String createBackRef(int times) {
         if (times == 0)    return "./";
         return "../".repeat(times);
@@ -715,7 +733,7 @@ public final class DirectoryBrowserSupport implements HttpResponse {
 
 
 
-    private static final class FileComparator implements Comparator<VirtualFile> {
+    private static final class FileComparator implements Comparator<VirtualFile.Attributes> {
         private Collator collator;
 
         FileComparator(Locale locale) {
@@ -723,7 +741,7 @@ public final class DirectoryBrowserSupport implements HttpResponse {
         }
 
         @Override
-        public int compare(VirtualFile lhs, VirtualFile rhs) {
+        public int compare(VirtualFile.Attributes lhs, VirtualFile.Attributes rhs) {
             // directories first, files next
             int r = dirRank(lhs) - dirRank(rhs);
             if (r != 0) return r;
@@ -731,13 +749,9 @@ public final class DirectoryBrowserSupport implements HttpResponse {
             return this.collator.compare(lhs.getName(), rhs.getName());
         }
 
-        private int dirRank(VirtualFile f) {
-            try {
+        private int dirRank(VirtualFile.Attributes f) {
             if (f.isDirectory())     return 0;
             else                    return 1;
-            } catch (IOException ex) {
-                return 0;
-            }
         }
     }
 
@@ -779,32 +793,34 @@ public final class DirectoryBrowserSupport implements HttpResponse {
     private static List<List<Path>> buildChildPaths(VirtualFile cur, Locale locale) throws IOException {
             List<List<Path>> r = new ArrayList<>();
 
-            VirtualFile[] files = cur.list(getOpenOptions());
-                Arrays.sort(files, new FileComparator(locale));
+            List<VirtualFile.Attributes> files = new ArrayList<>(cur.listWithAttributes(getOpenOptions()));
+                files.sort(new FileComparator(locale));
 
-                for (VirtualFile f : files) {
-                    Path p = new Path(Util.rawEncode(f.getName()), f.getName(), f.isDirectory(), f.length(), f.canRead(), f.lastModified());
-                    if (!f.isDirectory()) {
+                for (VirtualFile.Attributes a : files) {
+                    Path p = new Path(Util.rawEncode(a.getName()), a.getName(), a.isDirectory(), a.length(), a.canRead(), a.lastModified());
+                    if (!a.isDirectory()) {
                         r.add(List.of(p));
                     } else {
                         // find all empty intermediate directory
                         List<Path> l = new ArrayList<>();
                         l.add(p);
-                        String relPath = Util.rawEncode(f.getName());
+                        String relPath = Util.rawEncode(a.getName());
+                        VirtualFile f = cur.child(a.getName());
                         while (true) {
                             // files that don't start with '.' qualify for 'meaningful files', nor SCM related files
-                            List<VirtualFile> sub = new ArrayList<>();
-                            for (VirtualFile vf : f.list(getOpenOptions())) {
-                                String name = vf.getName();
+                            List<VirtualFile.Attributes> sub = new ArrayList<>();
+                            for (VirtualFile.Attributes child : f.listWithAttributes(getOpenOptions())) {
+                                String name = child.getName();
                                 if (!name.startsWith(".") && !name.equals("CVS") && !name.equals(".svn")) {
-                                    sub.add(vf);
+                                    sub.add(child);
                                 }
                             }
                             if (sub.size() != 1 || !sub.get(0).isDirectory())
                                 break;
-                            f = sub.get(0);
-                            relPath += '/' + Util.rawEncode(f.getName());
-                            l.add(new Path(relPath, f.getName(), true, f.length(), f.canRead(), f.lastModified()));
+                            VirtualFile.Attributes only = sub.get(0);
+                            f = f.child(only.getName());
+                            relPath += '/' + Util.rawEncode(only.getName());
+                            l.add(new Path(relPath, only.getName(), true, only.length(), only.canRead(), only.lastModified()));
                         }
                         r.add(l);
                     }
@@ -51,14 +51,17 @@ import java.io.File;
 import java.io.IOException;
 import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -340,20 +343,119 @@ public class Fingerprint implements ModelObject, Saveable {
      */
     @ExportedBean(defaultVisibility = 3)
     public static final class RangeSet {
-        // sorted
-        private final List<Range> ranges;
+        private static final int[] EMPTY = new int[0];
+
+        /**
+         * Start (inclusive) and end (exclusive) of each range, packed in pairs.
+         * Never modified once assigned, so it can be read as a snapshot without locking.
+         * Sorted, without overlapping or adjacent ranges, unless {@link #normalized} is false,
+         * as when parsed from a string listing ranges in some other order.
+         */
+        private volatile int[] ranges;
+
+        private boolean normalized;
 
         public RangeSet() {
-            this(new ArrayList<>());
+            this(EMPTY);
+        }
+
+        private RangeSet(int[] ranges) {
+            this.ranges = ranges;
+            this.normalized = isNormalized(ranges);
         }
 
         private RangeSet(List<Range> data) {
-            this.ranges = data;
+            this(pack(data));
         }
 
         private RangeSet(Range initial) {
-            this();
-            ranges.add(initial);
+            this(new int[] {initial.start, initial.end});
+        }
+
+        private static int[] pack(List<Range> data) {
+            int[] r = new int[data.size() * 2];
+            for (int i = 0; i < data.size(); i++) {
+                Range range = data.get(i);
+                r[2 * i] = range.start;
+                r[2 * i + 1] = range.end;
+            }
+            return r;
+        }
+
+        private static boolean isNormalized(int[] r) {
+            for (int i = 2; i < r.length; i += 2) {
+                if (r[i] <= r[i - 1]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Sorts the ranges and combines those which overlap or are adjacent.
+         */
+        private static int[] normalize(int[] r) {
+            if (isNormalized(r)) {
+                return r;
+            }
+            long[] sorted = new long[r.length / 2];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = ((long) r[2 * i] << 32) | (r[2 * i + 1] & 0xFFFFFFFFL);
+            }
+            Arrays.sort(sorted);
+            int[] out = new int[r.length];
+            int k = 0;
+            for (long v : sorted) {
+                k = append(out, k, (int) (v >> 32), (int) v);
+            }
+            return Arrays.copyOf(out, k);
+        }
+
+        /**
+         * Appends a range which starts no earlier than the last one in {@code out}, combining them if possible.
+         * @return the new length of {@code out}
+         */
+        private static int append(int[] out, int k, int start, int end) {
+            if (k > 0 && out[k - 1] >= start) {
+                out[k - 1] = Math.max(out[k - 1], end);
+                return k;
+            }
+            out[k] = start;
+            out[k + 1] = end;
+            return k + 2;
+        }
+
+        /**
+         * Gets the current ranges, normalized for the binary searches and merges below.
+         */
+        private synchronized int[] sorted() {
+            if (!normalized) {
+                ranges = normalize(ranges);
+                normalized = true;
+            }
+            return ranges;
+        }
+
+        private int[] snapshot() {
+            return ranges;
+        }
+
+        /**
+         * Finds the first range ending at or after the given number.
+         * @return its index in pairs, or the number of ranges if there is none
+         */
+        private static int search(int[] r, int n) {
+            int lo = 0;
+            int hi = r.length / 2;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (r[2 * mid + 1] < n) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
         }
 
         /**
@@ -396,8 +498,13 @@ public class Fingerprint implements ModelObject, Saveable {
          * Gets all the ranges.
          */
         @Exported
-        public synchronized List<Range> getRanges() {
-            return new ArrayList<>(ranges);
+        public List<Range> getRanges() {
+            int[] r = snapshot();
+            List<Range> list = new ArrayList<>(r.length / 2);
+            for (int i = 0; i < r.length; i += 2) {
+                list.add(new Range(r[i], r[i + 1]));
+            }
+            return list;
         }
 
         /**
@@ -405,27 +512,44 @@ public class Fingerprint implements ModelObject, Saveable {
          * If the set already includes this number, this will be a no-op.
          */
         public synchronized void add(int n) {
-            for (int i = 0; i < ranges.size(); i++) {
-                Range r = ranges.get(i);
-                if (r.includes(n))   return; // already included
-                if (r.end == n) {
-                    ranges.set(i, r.expandRight());
-                    checkCollapse(i);
-                    return;
-                }
-                if (r.start == n + 1) {
-                    ranges.set(i, r.expandLeft());
-                    checkCollapse(i - 1);
-                    return;
-                }
-                if (r.isBiggerThan(n)) {
-                    // needs to insert a single-value Range
-                    ranges.add(i, new Range(n, n + 1));
-                    return;
+            int[] r = sorted();
+            int i = search(r, n);
+            if (i == r.length / 2) {
+                // after all ranges, which is the usual case of a new build
+                int[] out = Arrays.copyOf(r, r.length + 2);
+                out[r.length] = n;
+                out[r.length + 1] = n + 1;
+                ranges = out;
+                return;
+            }
+            int start = r[2 * i];
+            int end = r[2 * i + 1];
+            if (start <= n && n < end) {
+                return; // already included
+            }
+            int[] out;
+            if (end == n) {
+                if (i + 1 < r.length / 2 && r[2 * i + 2] == n + 1) {
+                    // fills the gap between two ranges
+                    out = new int[r.length - 2];
+                    System.arraycopy(r, 0, out, 0, 2 * i + 1);
+                    System.arraycopy(r, 2 * i + 3, out, 2 * i + 1, r.length - 2 * i - 3);
+                } else {
+                    out = r.clone();
+                    out[2 * i + 1] = n + 1;
                 }
+            } else if (start == n + 1) {
+                out = r.clone();
+                out[2 * i] = n;
+            } else {
+                // needs to insert a single-value range
+                out = new int[r.length + 2];
+                System.arraycopy(r, 0, out, 0, 2 * i);
+                out[2 * i] = n;
+                out[2 * i + 1] = n + 1;
+                System.arraycopy(r, 2 * i, out, 2 * i + 2, r.length - 2 * i);
             }
-
-            ranges.add(new Range(n, n + 1));
+            ranges = out;
         }
 
         public synchronized void addAll(int... n) {
@@ -433,60 +557,39 @@ public class Fingerprint implements ModelObject, Saveable {
                 add(i);
         }
 
-
-        private void checkCollapse(int i) {
-            if (i < 0 || i == ranges.size() - 1)     return;
-            Range lhs = ranges.get(i);
-            Range rhs = ranges.get(i + 1);
-            if (lhs.isAdjacentTo(rhs)) {
-                // collapsed
-                Range r = new Range(lhs.start, rhs.end);
-                ranges.set(i, r);
-                ranges.remove(i + 1);
+        public synchronized boolean includes(int n) {
+            if (!normalized) {
+                for (int i = 0; i < ranges.length; i += 2) {
+                    if (ranges[i] <= n && n < ranges[i + 1])
+                        return true;
+                }
+                return false;
             }
-        }
-
-        public synchronized boolean includes(int i) {
-            for (Range r : ranges) {
-                if (r.includes(i))
-                    return true;
+            int[] r = ranges;
+            int i = search(r, n);
+            if (i < r.length / 2 && r[2 * i + 1] == n) {
+                i++;
             }
-            return false;
+            return i < r.length / 2 && r[2 * i] <= n;
         }
 
         public synchronized void add(RangeSet that) {
-            int lhs = 0, rhs = 0;
-            while (lhs < this.ranges.size() && rhs < that.ranges.size()) {
-                Range lr = this.ranges.get(lhs);
-                Range rr = that.ranges.get(rhs);
-
-                // no overlap
-                if (lr.end < rr.start) {
-                    lhs++;
-                    continue;
-                }
-                if (rr.end < lr.start) {
-                    ranges.add(lhs, rr);
-                    lhs++;
-                    rhs++;
-                    continue;
-                }
-
-                // overlap. merge two
-                Range m = lr.combine(rr);
-                rhs++;
-
-                // since ranges[lhs] is expanded, it might overlap with others in this.ranges
-                while (lhs + 1 < this.ranges.size() && !m.isIndependent(this.ranges.get(lhs + 1))) {
-                    m = m.combine(this.ranges.get(lhs + 1));
-                    this.ranges.remove(lhs + 1);
+            int[] a = sorted();
+            int[] b = that == this ? a : normalize(that.snapshot());
+            int[] out = new int[a.length + b.length];
+            int k = 0;
+            int i = 0;
+            int j = 0;
+            while (i < a.length || j < b.length) {
+                if (j == b.length || i < a.length && a[i] <= b[j]) {
+                    k = append(out, k, a[i], a[i + 1]);
+                    i += 2;
+                } else {
+                    k = append(out, k, b[j], b[j + 1]);
+                    j += 2;
                 }
-
-                this.ranges.set(lhs, m);
             }
-
-            // if anything is left in that.ranges, add them all
-            this.ranges.addAll(that.ranges.subList(rhs, that.ranges.size()));
+            ranges = k == out.length ? out : Arrays.copyOf(out, k);
         }
 
         /**
@@ -495,43 +598,35 @@ public class Fingerprint implements ModelObject, Saveable {
          * @return true if this range set was modified as a result.
          */
         public synchronized boolean retainAll(RangeSet that) {
-            List<Range> intersection = new ArrayList<>();
-
-            int lhs = 0, rhs = 0;
-            while (lhs < this.ranges.size() && rhs < that.ranges.size()) {
-                Range lr = this.ranges.get(lhs);
-                Range rr = that.ranges.get(rhs);
-
-                if (lr.end <= rr.start) { // lr has no overlap with that.ranges
-                    lhs++;
+            int[] original = ranges;
+            int[] a = sorted();
+            int[] b = that == this ? a : normalize(that.snapshot());
+            int[] out = new int[a.length + b.length];
+            int k = 0;
+            int i = 0;
+            int j = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i + 1] <= b[j]) { // a range has no overlap with that
+                    i += 2;
                     continue;
                 }
-                if (rr.end <= lr.start) { // rr has no overlap with this.ranges
-                    rhs++;
+                if (b[j + 1] <= a[i]) { // that range has no overlap with this
+                    j += 2;
                     continue;
                 }
 
                 // overlap. figure out the intersection
-                Range v = lr.intersect(rr);
-                intersection.add(v);
+                out[k++] = Math.max(a[i], b[j]);
+                out[k++] = Math.min(a[i + 1], b[j + 1]);
 
                 // move on to the next pair
-                if (lr.end < rr.end) {
-                    lhs++;
+                if (a[i + 1] < b[j + 1]) {
+                    i += 2;
                 } else {
-                    rhs++;
+                    j += 2;
                 }
             }
-
-            boolean same = this.ranges.equals(intersection);
-
-            if (!same) {
-                this.ranges.clear();
-                this.ranges.addAll(intersection);
-                return true;
-            } else {
-                return false;
-            }
+            return update(original, Arrays.copyOf(out, k));
         }
 
         /**
@@ -540,76 +635,51 @@ public class Fingerprint implements ModelObject, Saveable {
          * @return true if this range set was modified as a result.
          */
         public synchronized boolean removeAll(RangeSet that) {
-            boolean modified = false;
-            List<Range> sub = new ArrayList<>();
-
-            int lhs = 0, rhs = 0;
-            while (lhs < this.ranges.size() && rhs < that.ranges.size()) {
-                Range lr = this.ranges.get(lhs);
-                Range rr = that.ranges.get(rhs);
-
-                if (lr.end <= rr.start) { // lr has no overlap with that.ranges. lr stays
-                    sub.add(lr);
-                    lhs++;
-                    continue;
-                }
-                if (rr.end <= lr.start) { // rr has no overlap with this.ranges
-                    rhs++;
-                    continue;
+            int[] original = ranges;
+            int[] a = sorted();
+            int[] b = that == this ? a : normalize(that.snapshot());
+            // each range of that can split one range of this in two
+            int[] out = new int[a.length + b.length];
+            int k = 0;
+            int j = 0;
+            for (int i = 0; i < a.length; i += 2) {
+                int start = a[i];
+                int end = a[i + 1];
+                while (j < b.length && b[j + 1] <= start) {
+                    j += 2;
                 }
-
-                // some overlap between lr and rr
-                assert !lr.isDisjoint(rr);
-                modified = true;
-
-                if (rr.contains(lr)) {
-                    // lr completely removed by rr
-                    lhs++;
-                    continue;
-                }
-
-                // we want to look at A and B below, if they are non-null.
-                // |------------| lr
-                //     |-----|    rr
-                //   A         B
-                //
-                // note that lr and rr could be something like or the other way around
-                // |------------| lr
-                //         |------------| rr
-                //     A             (no B)
-
-                if (lr.start < rr.start) { // if A is non-empty, that will stay
-                    Range a = new Range(lr.start, rr.start);
-                    sub.add(a);
+                // ranges of that overlapping with [start,end); the last one may also overlap with the next range
+                while (j < b.length && b[j] < end) {
+                    if (start < b[j]) {
+                        out[k++] = start;
+                        out[k++] = b[j];
+                    }
+                    start = Math.max(start, b[j + 1]);
+                    if (b[j + 1] > end) {
+                        break;
+                    }
+                    j += 2;
                 }
-
-                if (rr.end < lr.end) { // if B is non-empty
-                    // we still need to check that with that.ranges, so keep it in the place of lr.
-                    // how much of them will eventually stay is up to the remainder of that.ranges
-                    this.ranges.set(lhs, new Range(rr.end, lr.end));
-                    rhs++;
-                } else {
-                    // if B is empty, we are done considering lr
-                    lhs++;
+                if (start < end) {
+                    out[k++] = start;
+                    out[k++] = end;
                 }
             }
+            return update(original, Arrays.copyOf(out, k));
+        }
 
-            if (!modified)  return false;   // no changes
-
-            // whatever that remains in lhs will survive
-            sub.addAll(this.ranges.subList(lhs, this.ranges.size()));
-
-            this.ranges.clear();
-            this.ranges.addAll(sub);
-            return true;
+        private boolean update(int[] original, int[] result) {
+            ranges = result;
+            return !Arrays.equals(original, result);
         }
 
         @Override
-        public synchronized String toString() {
+        public String toString() {
+            int[] r = snapshot();
             StringBuilder buf = new StringBuilder();
-            for (Range r : ranges) {
+            for (int i = 0; i < r.length; i += 2) {
                 if (!buf.isEmpty())  buf.append(',');
-                buf.append(r);
+                buf.append('[').append(r[i]).append(',').append(r[i + 1]).append(')');
             }
             return buf.toString();
         }
@@ -619,17 +689,17 @@ public class Fingerprint implements ModelObject, Saveable {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
 
-            return ranges.equals(((RangeSet) o).ranges);
+            return Arrays.equals(snapshot(), ((RangeSet) o).snapshot());
 
         }
 
         @Override
         public int hashCode() {
-            return ranges.hashCode();
+            return Arrays.hashCode(snapshot());
         }
 
         public synchronized boolean isEmpty() {
-            return ranges.isEmpty();
+            return ranges.length == 0;
         }
 
         /**
@@ -638,7 +708,7 @@ public class Fingerprint implements ModelObject, Saveable {
          * If this range is empty, this method throws an exception.
          */
         public synchronized int min() {
-            return ranges.get(0).start;
+            return ranges[0];
         }
 
         /**
@@ -647,7 +717,7 @@ public class Fingerprint implements ModelObject, Saveable {
          * If this range is empty, this method throws an exception.
          */
         public synchronized int max() {
-            return ranges.get(ranges.size() - 1).end;
+            return ranges[ranges.length - 1];
         }
 
         /**
@@ -658,15 +728,20 @@ public class Fingerprint implements ModelObject, Saveable {
          * Note that {} is smaller than any n.
          */
         public synchronized boolean isSmallerThan(int n) {
-            if (ranges.isEmpty())    return true;
+            if (ranges.length == 0)    return true;
 
-            return ranges.get(ranges.size() - 1).isSmallerThan(n);
+            return ranges[ranges.length - 1] <= n;
         }
 
         /**
          * Parses a {@link RangeSet} from a string like "1-3,5,7-9"
          */
         public static RangeSet fromString(String list, boolean skipError) {
+            RangeSet simple = parseSimple(list);
+            if (simple != null) {
+                return simple;
+            }
+
             RangeSet rs = new RangeSet();
 
             // Reject malformed ranges like "1---10", "1,,,,3" etc.
@@ -689,6 +764,8 @@ public class Fingerprint implements ModelObject, Saveable {
                 return rs;
             }
 
+            int[] buf = new int[items.length * 2];
+            int k = 0;
             for (String s : items) {
                 s = s.trim();
                 // s is either single number or range "x-y".
@@ -731,7 +808,8 @@ public class Fingerprint implements ModelObject, Saveable {
                                 // ignore inverse range like "10-5"
                                 continue;
                             }
-                            rs.ranges.add(new Range(left, right + 1));
+                            buf[k++] = left;
+                            buf[k++] = right + 1;
                         } else {
                             if (!skipError) {
                                 throw new IllegalArgumentException(
@@ -742,7 +820,8 @@ public class Fingerprint implements ModelObject, Saveable {
                         }
                     } else {
                         int n = Integer.parseInt(s);
-                        rs.ranges.add(new Range(n, n + 1));
+                        buf[k++] = n;
+                        buf[k++] = n + 1;
                     }
                 } catch (NumberFormatException e) {
                     if (!skipError)
@@ -751,7 +830,46 @@ public class Fingerprint implements ModelObject, Saveable {
                     // ignore malformed text
                 }
             }
-            return rs;
+            return new RangeSet(Arrays.copyOf(buf, k));
+        }
+
+        /**
+         * Parses the usual form written by {@link ConverterImpl#serialize}, like "1-3,5",
+         * without the checks and allocations needed for anything else.
+         * @return null if the string is not of that form
+         */
+        private static @CheckForNull RangeSet parseSimple(String list) {
+            int len = list.length();
+            int[] buf = new int[8];
+            int k = 0;
+            int i = 0;
+            while (i < len) {
+                long left = 0;
+                int from = i;
+                for (char c; i < len && (c = list.charAt(i)) >= '0' && c <= '9' && left < Integer.MAX_VALUE; i++) {
+                    left = left * 10 + (c - '0');
+                }
+                long right = left;
+                if (i < len && list.charAt(i) == '-' && i > from) {
+                    from = ++i;
+                    right = 0;
+                    for (char c; i < len && (c = list.charAt(i)) >= '0' && c <= '9' && right < Integer.MAX_VALUE; i++) {
+                        right = right * 10 + (c - '0');
+                    }
+                }
+                if (i == from || right < left || right >= Integer.MAX_VALUE) {
+                    return null;
+                }
+                if (k == buf.length) {
+                    buf = Arrays.copyOf(buf, k * 2);
+                }
+                buf[k++] = (int) left;
+                buf[k++] = (int) right + 1;
+                if (i < len && (list.charAt(i) != ',' || ++i == len)) {
+                    return null; // something else, or a trailing comma
+                }
+            }
+            return k == 0 ? null : new RangeSet(Arrays.copyOf(buf, k));
         }
 
         /**
@@ -785,13 +903,14 @@ public class Fingerprint implements ModelObject, Saveable {
              * For e.g., if used in builds 1,2,3,5, it will be serialized to 1-3,5
              */
             public static String serialize(RangeSet src) {
-                StringBuilder buf = new StringBuilder(src.ranges.size() * 10);
-                for (Range r : src.ranges) {
+                int[] ranges = src.snapshot();
+                StringBuilder buf = new StringBuilder(ranges.length * 5);
+                for (int i = 0; i < ranges.length; i += 2) {
                     if (!buf.isEmpty())  buf.append(',');
-                    if (r.isSingle())
-                        buf.append(r.start);
+                    if (ranges[i + 1] - 1 == ranges[i])
+                        buf.append(ranges[i]);
                     else
-                        buf.append(r.start).append('-').append(r.end - 1);
+                        buf.append(ranges[i]).append('-').append(ranges[i + 1] - 1);
                 }
                 return buf.toString();
             }
@@ -827,15 +946,19 @@ public class Fingerprint implements ModelObject, Saveable {
                 Job p = Jenkins.get().getItemByFullName(newName, Job.class);
                 if (p != null) {
                     RunList<? extends Run> builds = p.getBuilds();
-                    for (Run build : builds) {
-                        Collection<Fingerprint> fingerprints = build.getBuildFingerprints();
-                        for (Fingerprint f : fingerprints) {
-                            try {
-                                f.rename(oldName, newName);
-                            } catch (IOException e) {
-                                logger.log(Level.WARNING, "Failed to update fingerprint record " + f.getFileName() + " when " + oldName + " was renamed to " + newName, e);
+                    try (Batch batch = batch()) {
+                        for (Run build : builds) {
+                            Collection<Fingerprint> fingerprints = build.getBuildFingerprints();
+                            for (Fingerprint f : fingerprints) {
+                                try {
+                                    f.rename(oldName, newName);
+                                } catch (IOException e) {
+                                    logger.log(Level.WARNING, "Failed to update fingerprint record " + f.getFileName() + " when " + oldName + " was renamed to " + newName, e);
+                                }
                             }
                         }
+                    } catch (IOException e) {
+                        logger.log(Level.WARNING, "Failed to save fingerprint records when " + oldName + " was renamed to " + newName, e);
                     }
                 }
             }
@@ -1031,6 +1154,11 @@ public class Fingerprint implements ModelObject, Saveable {
     protected Object readResolve() {
         if (usages == null) {
             usages = new Hashtable<>();
+        } else {
+            // the same job names appear in many fingerprints
+            Hashtable<String, RangeSet> interned = new Hashtable<>(usages.size() * 4 / 3 + 1);
+            usages.forEach((name, r) -> interned.put(Util.intern(name), r));
+            usages = interned;
         }
         return this;
     }
@@ -1040,7 +1168,7 @@ public class Fingerprint implements ModelObject, Saveable {
             RangeSet r = usages.get(jobFullName);
             if (r == null) {
                 r = new RangeSet();
-                usages.put(jobFullName, r);
+                usages.put(Util.intern(jobFullName), r);
             }
             r.add(n);
         }
@@ -1251,6 +1379,11 @@ public class Fingerprint implements ModelObject, Saveable {
         if (BulkChange.contains(this)) {
             return;
         }
+        Set<Fingerprint> pending = batched.get();
+        if (pending != null) {
+            pending.add(this);
+            return;
+        }
 
         long start = 0;
         if (logger.isLoggable(Level.FINE))
@@ -1275,6 +1408,63 @@ public class Fingerprint implements ModelObject, Saveable {
             logger.fine("Saving fingerprint " + getHashString() + " took " + (System.currentTimeMillis() - start) + "ms");
     }
 
+    /**
+     * Fingerprints saved by the current thread within a {@link Batch}, to be saved when it is closed.
+     */
+    private static final ThreadLocal<Set<Fingerprint>> batched = new ThreadLocal<>();
+
+    /**
+     * Defers the saving of fingerprints created or modified by the current thread until the returned batch is closed,
+     * when they are all saved at once using {@link FingerprintStorage#saveAll}.
+     * <pre>{@code
+     * try (Fingerprint.Batch batch = Fingerprint.batch()) {
+     *     ...
+     * }
+     * }</pre>
+     * Batches may be nested, in which case everything is saved when the outermost one is closed.
+     * @since TODO
+     */
+    public static @NonNull Batch batch() {
+        if (batched.get() != null) {
+            return new Batch(false);
+        }
+        batched.set(Collections.newSetFromMap(new IdentityHashMap<>()));
+        return new Batch(true);
+    }
+
+    /**
+     * @see #batch
+     * @since TODO
+     */
+    public static final class Batch implements AutoCloseable {
+        private final boolean outermost;
+
+        private Batch(boolean outermost) {
+            this.outermost = outermost;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!outermost) {
+                return;
+            }
+            Set<Fingerprint> pending = batched.get();
+            batched.remove();
+            if (pending == null || pending.isEmpty()) {
+                return;
+            }
+            FingerprintStorage configuredFingerprintStorage = FingerprintStorage.get();
+            FingerprintStorage fileFingerprintStorage = ExtensionList.lookupSingleton(FileFingerprintStorage.class);
+            configuredFingerprintStorage.saveAll(pending);
+            // as in save()
+            if (!(configuredFingerprintStorage instanceof FileFingerprintStorage) && fileFingerprintStorage.isReady()) {
+                for (Fingerprint fp : pending) {
+                    fileFingerprintStorage.delete(fp.getHashString());
+                }
+            }
+        }
+    }
+
     /**
      * Save the Fingerprint in the given file locally
      * @throws IOException Save error
@@ -1313,7 +1503,7 @@ public class Fingerprint implements ModelObject, Saveable {
         if (usages != null) {
             RangeSet r = usages.get(oldName);
             if (r != null) {
-                usages.put(newName, r);
+                usages.put(Util.intern(newName), r);
                 usages.remove(oldName);
                 touched = true;
             }
@@ -26,10 +26,13 @@ package hudson.model;
 
 import hudson.Extension;
 import hudson.ExtensionList;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import jenkins.fingerprints.FileFingerprintStorage;
+import jenkins.fingerprints.FingerprintCleanupQueue;
 import jenkins.fingerprints.FingerprintStorage;
 import jenkins.fingerprints.GlobalFingerprintConfiguration;
+import jenkins.util.SystemProperties;
 import org.jenkinsci.Symbol;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
@@ -42,6 +45,10 @@ import org.kohsuke.accmod.restrictions.NoExternalUse;
  * A {@link Fingerprint} is removed when none of the builds that
  * it point to is available in the records.
  *
+ * <p>
+ * Fingerprints used by deleted builds are normally cleaned up soon after by {@link FingerprintCleanupQueue},
+ * so this full scan only runs every {@link #FULL_SCAN_INTERVAL_DAYS} days to catch anything else.
+ *
  * @author Kohsuke Kawaguchi
  */
 @Extension @Symbol("fingerprintCleanup")
@@ -50,13 +57,19 @@ public class FingerprintCleanupThread extends AsyncPeriodicWork {
 
     private static final Logger LOGGER = Logger.getLogger(FingerprintCleanupThread.class.getName());
 
+    /**
+     * Days between scans of all fingerprints when those used by deleted builds
+     * are already cleaned up by {@link FingerprintCleanupQueue}.
+     */
+    public static /* non-final for Groovy */ int FULL_SCAN_INTERVAL_DAYS = SystemProperties.getInteger(FingerprintCleanupThread.class.getName() + ".fullScanIntervalDays", 7);
+
     public FingerprintCleanupThread() {
         super("Fingerprint cleanup");
     }
 
     @Override
     public long getRecurrencePeriod() {
-        return DAY;
+        return FingerprintCleanupQueue.ENABLED ? TimeUnit.DAYS.toMillis(FULL_SCAN_INTERVAL_DAYS) : DAY;
     }
 
     public static void invoke() {
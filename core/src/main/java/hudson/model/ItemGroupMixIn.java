@@ -32,6 +32,7 @@ import hudson.security.AccessControlled;
 import hudson.util.CopyOnWriteMap;
 import hudson.util.Function1;
 import hudson.util.Secret;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -49,6 +50,7 @@ import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import jenkins.model.Jenkins;
 import jenkins.security.NotReallyRoleSensitiveCallable;
+import jenkins.util.io.ConfigStorage;
 import jenkins.util.xml.XMLUtils;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
@@ -244,8 +246,13 @@ public abstract class ItemGroupMixIn {
         T result = (T) createProject(src.getDescriptor(), name, false);
 
         // copy config
-        Files.copy(Util.fileToPath(srcConfigFile.getFile()), Util.fileToPath(Items.getConfigFile(result).getFile()),
-                StandardCopyOption.COPY_ATTRIBUTES, StandardCopyOption.REPLACE_EXISTING);
+        XmlFile configFile = Items.getConfigFile(result);
+        if (ConfigStorage.get() == null) {
+            Files.copy(Util.fileToPath(srcConfigFile.getFile()), Util.fileToPath(configFile.getFile()),
+                    StandardCopyOption.COPY_ATTRIBUTES, StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            configFile.writeBytes(srcConfigFile.readBytes());
+        }
 
         // reload from the new config
         final File rootDir = result.getRootDir();
@@ -271,12 +278,19 @@ public abstract class ItemGroupMixIn {
         Jenkins.checkGoodName(name);
 
         // place it as config.xml
-        File configXml = Items.getConfigFile(getRootDirFor(name)).getFile();
+        XmlFile configFile = Items.getConfigFile(getRootDirFor(name));
+        File configXml = configFile.getFile();
         final File dir = configXml.getParentFile();
         boolean success = false;
         try {
             Util.createDirectories(dir.toPath());
-            XMLUtils.safeTransform(new StreamSource(xml), new StreamResult(configXml));
+            if (ConfigStorage.get() == null) {
+                XMLUtils.safeTransform(new StreamSource(xml), new StreamResult(configXml));
+            } else {
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                XMLUtils.safeTransform(new StreamSource(xml), new StreamResult(buf));
+                configFile.writeBytes(buf.toByteArray());
+            }
 
             // load it
             TopLevelItem result = Items.whileUpdatingByXml(new NotReallyRoleSensitiveCallable<TopLevelItem, IOException>() {
@@ -305,6 +319,7 @@ public abstract class ItemGroupMixIn {
             if (!success) {
                 // if anything fails, delete the config file to avoid further confusion
                 Util.deleteRecursive(dir);
+                ConfigStorage.deleted(dir);
             }
         }
     }
@@ -53,6 +53,7 @@ import java.util.function.Predicate;
 import jenkins.model.DirectlyModifiableTopLevelItemGroup;
 import jenkins.model.Jenkins;
 import jenkins.util.MemoryReductionUtil;
+import jenkins.util.io.ConfigStorage;
 import org.apache.commons.io.FileUtils;
 import org.springframework.security.core.Authentication;
 
@@ -577,6 +578,7 @@ public class Items {
         File destDir = destination.getRootDirFor(item);
         FileUtils.forceMkdir(destDir.getParentFile());
         FileUtils.moveDirectory(item.getRootDir(), destDir);
+        ConfigStorage.moved(item.getRootDir(), destDir);
         oldParent.remove(item);
         I newItem = destination.add(item, name);
         item.movedTo(destination, newItem, destDir);
@@ -86,8 +86,10 @@ import java.util.SortedMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.servlet.ServletException;
+import jenkins.fingerprints.FingerprintCleanupQueue;
 import jenkins.model.BuildDiscarder;
 import jenkins.model.BuildDiscarderProperty;
+import jenkins.model.ContentAddressedArtifactManager;
 import jenkins.model.DirectlyModifiableTopLevelItemGroup;
 import jenkins.model.Jenkins;
 import jenkins.model.JenkinsLocationConfiguration;
@@ -95,10 +97,12 @@ import jenkins.model.ModelObjectWithChildren;
 import jenkins.model.PeepholePermalink;
 import jenkins.model.ProjectNamingStrategy;
 import jenkins.model.RunIdMigrator;
+import jenkins.model.lazy.AbstractLazyLoadRunMap;
 import jenkins.model.lazy.LazyBuildMixIn;
 import jenkins.scm.RunWithSCM;
 import jenkins.security.HexStringConfidentialKey;
 import jenkins.triggers.SCMTriggerItem;
+import jenkins.util.WriteBehindSaver;
 import jenkins.widgets.HasWidgets;
 import net.sf.json.JSONException;
 import net.sf.json.JSONObject;
@@ -286,9 +290,48 @@ public abstract class Job<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
         if (nextBuildNumber == 0) { // JENKINS-3361
             nextBuildNumber = 1;
         }
+        if (this instanceof LazyBuildMixIn.LazyLoadingJob && WriteBehindSaver.defer(new NextBuildNumberSaveable(this))) {
+            // a stale value is corrected by LazyBuildMixIn.onLoad
+            return;
+        }
         getNextBuildNumberFile().write(String.valueOf(nextBuildNumber) + '\n');
     }
 
+    /**
+     * Deferred write of {@link #nextBuildNumber}.
+     */
+    private static final class NextBuildNumberSaveable implements Saveable {
+        private final Job<?, ?> job;
+
+        NextBuildNumberSaveable(Job<?, ?> job) {
+            this.job = job;
+        }
+
+        @Override
+        public void save() throws IOException {
+            synchronized (job) {
+                if (job.getRootDir().isDirectory()) { // not deleted meanwhile
+                    job.getNextBuildNumberFile().write(String.valueOf(job.nextBuildNumber) + '\n');
+                }
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof NextBuildNumberSaveable && ((NextBuildNumberSaveable) o).job == job;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(job);
+        }
+
+        @Override
+        public String toString() {
+            return job.getNextBuildNumberFile().toString();
+        }
+    }
+
     @Exported
     public boolean isInQueue() {
         return false;
@@ -689,8 +732,24 @@ public abstract class Job<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
     }
 
     @Override public void delete() throws IOException, InterruptedException {
+        // gathered while the builds are still there, but only acted on once they are gone
+        Collection<String> fingerprints = FingerprintCleanupQueue.onDeleting(getLoadedBuilds(), getBuildDir());
+        List<Set<String>> artifacts = ContentAddressedArtifactManager.onDeleting(this);
         super.delete();
         Util.deleteRecursive(getBuildDir());
+        FingerprintCleanupQueue.onDeleted(fingerprints);
+        ContentAddressedArtifactManager.onDeleted(artifacts);
+    }
+
+    /**
+     * Gets the builds which have been loaded, without loading the others.
+     */
+    private Collection<? extends RunT> getLoadedBuilds() {
+        SortedMap<Integer, ? extends RunT> runs = _getRuns();
+        if (runs instanceof AbstractLazyLoadRunMap) {
+            return ((AbstractLazyLoadRunMap<? extends RunT>) runs).getLoadedBuilds().values();
+        }
+        return runs.values();
     }
 
     @Restricted(NoExternalUse.class)
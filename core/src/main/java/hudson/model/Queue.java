@@ -121,6 +121,7 @@ import jenkins.util.AtmostOneTaskExecutor;
 import jenkins.util.Listeners;
 import jenkins.util.SystemProperties;
 import jenkins.util.Timer;
+import jenkins.util.WriteBehindSaver;
 import net.jcip.annotations.GuardedBy;
 import org.jenkinsci.remoting.RoleChecker;
 import org.kohsuke.accmod.Restricted;
@@ -464,6 +465,9 @@ public class Queue extends ResourceController implements Saveable {
         if (Jenkins.getInstanceOrNull() == null) {
             return;
         }
+        if (WriteBehindSaver.defer(this)) {
+            return;
+        }
 
         XmlFile queueFile = new XmlFile(XSTREAM, getXMLQueueFile());
         lock.lock();
@@ -67,6 +67,7 @@ import hudson.tasks.Fingerprinter.FingerprintAction;
 import hudson.util.FormApply;
 import hudson.util.LogTaskListener;
 import hudson.util.ProcessTree;
+import hudson.util.StreamTaskListener;
 import hudson.util.XStream2;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
@@ -88,7 +89,6 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
@@ -108,6 +108,7 @@ import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletResponse;
+import jenkins.console.ConsoleTextDownload;
 import jenkins.model.ArtifactManager;
 import jenkins.model.ArtifactManagerConfiguration;
 import jenkins.model.ArtifactManagerFactory;
@@ -1202,16 +1203,16 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
     private static int addArtifacts(@NonNull VirtualFile dir,
             @NonNull String path, @NonNull String pathHref,
             @NonNull SerializableArtifactList r, @CheckForNull SerializableArtifact parent, int upTo) throws IOException {
-        VirtualFile[] kids = dir.list();
-        Arrays.sort(kids);
+        List<VirtualFile.Attributes> kids = new ArrayList<>(dir.listWithAttributes());
+        kids.sort(Comparator.comparing(VirtualFile.Attributes::getName, String.CASE_INSENSITIVE_ORDER));
 
         int n = 0;
-        for (VirtualFile sub : kids) {
+        for (VirtualFile.Attributes sub : kids) {
             String child = sub.getName();
             String childPath = path + child;
             String childHref = pathHref + Util.rawEncode(child);
             String length = sub.isFile() ? String.valueOf(sub.length()) : "";
-            boolean collapsed = kids.length == 1 && parent != null;
+            boolean collapsed = kids.size() == 1 && parent != null;
             SerializableArtifact a;
             if (collapsed) {
                 // Collapse single items into parent node where possible:
@@ -1227,7 +1228,7 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
                 r.tree.put(a, parent != null ? parent.treeNodeId : null);
             }
             if (sub.isDirectory()) {
-                n += addArtifacts(sub, childPath + '/', childHref + '/', r, a, upTo - n);
+                n += addArtifacts(dir.child(child), childPath + '/', childHref + '/', r, a, upTo - n);
                 if (n >= upTo) break;
             } else {
                 // Don't store collapsed path in ArrayList (for correct data in external API)
@@ -1972,7 +1973,7 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
         // gets reflected to the file immediately, which can then be
         // served to the browser immediately
         try {
-            return Files.newOutputStream(getLogFile().toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            return StreamTaskListener.coalescing(Files.newOutputStream(getLogFile().toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND));
         } catch (InvalidPathException e) {
             throw new IOException(e);
         }
@@ -2282,8 +2283,13 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
 
     /**
      * Sends out the raw console output.
+     * Once the build is completed, conditional and range requests are supported.
      */
     public void doConsoleText(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        if (!isLogUpdated()) {
+            ConsoleTextDownload.serve(this, req, rsp);
+            return;
+        }
         rsp.setContentType("text/plain;charset=UTF-8");
         try (InputStream input = getLogInputStream();
              OutputStream os = rsp.getOutputStream();
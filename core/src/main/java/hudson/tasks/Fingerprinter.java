@@ -68,6 +68,7 @@ import jenkins.model.Jenkins;
 import jenkins.model.RunAction2;
 import jenkins.tasks.SimpleBuildStep;
 import jenkins.util.SystemProperties;
+import jenkins.util.io.ParallelDigester;
 import net.sf.json.JSONObject;
 import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.types.FileSet;
@@ -300,21 +301,30 @@ public class Fingerprinter extends Recorder implements Serializable, DependencyD
             src.setCaseSensitive(caseSensitive);
 
             DirectoryScanner ds = src.getDirectoryScanner();
-            for (String f : ds.getIncludedFiles()) {
-                File file = new File(baseDir, f);
+            String[] names = ds.getIncludedFiles();
+            File[] files = new File[names.length];
+            for (int i = 0; i < names.length; i++) {
+                files[i] = new File(baseDir, names[i]);
+            }
+            String[] digests;
+            try {
+                // read the files in parallel, as this is mostly limited by I/O
+                digests = ParallelDigester.digest(files);
+            } catch (ParallelDigester.Failure e) {
+                throw new IOException(Messages.Fingerprinter_DigestFailed(e.getFile()), e.getCause());
+            } catch (InterruptedException e) {
+                throw new IOException(Messages.Fingerprinter_Aborted(), e);
+            }
+
+            for (int i = 0; i < names.length; i++) {
+                File file = files[i];
 
                 // consider the file to be produced by this build only if the timestamp
                 // is newer than when the build has started.
                 // 2000ms is an error margin since since VFAT only retains timestamp at 2sec precision
                 boolean produced = buildTimestamp <= file.lastModified() + 2000;
 
-                try {
-                    results.add(new Record(produced, f, file.getName(), new FilePath(file).digest()));
-                } catch (IOException e) {
-                    throw new IOException(Messages.Fingerprinter_DigestFailed(file), e);
-                } catch (InterruptedException e) {
-                    throw new IOException(Messages.Fingerprinter_Aborted(), e);
-                }
+                results.add(new Record(produced, names[i], file.getName(), digests[i]));
             }
 
             return results;
@@ -323,10 +333,14 @@ public class Fingerprinter extends Recorder implements Serializable, DependencyD
     }
 
     private void record(Run<?, ?> build, FilePath ws, TaskListener listener, Map<String, String> record, final String targets) throws IOException, InterruptedException {
-        for (Record r : ws.act(new FindRecords(targets, excludes, defaultExcludes, caseSensitive, build.getTimeInMillis()))) {
-            Fingerprint fp = r.addRecord(build);
-            fp.addFor(build);
-            record.put(r.relativePath, fp.getHashString());
+        List<Record> records = ws.act(new FindRecords(targets, excludes, defaultExcludes, caseSensitive, build.getTimeInMillis()));
+        // save all fingerprints at once rather than each one as it gets created or updated
+        try (Fingerprint.Batch batch = Fingerprint.batch()) {
+            for (Record r : records) {
+                Fingerprint fp = r.addRecord(build);
+                fp.addFor(build);
+                record.put(r.relativePath, fp.getHashString());
+            }
         }
     }
 
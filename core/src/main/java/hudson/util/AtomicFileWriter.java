@@ -41,6 +41,12 @@ import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.util.SystemProperties;
@@ -67,6 +73,15 @@ public class AtomicFileWriter extends Writer {
     private static /* final */ boolean REQUIRES_DIR_FSYNC = SystemProperties.getBoolean(
             AtomicFileWriter.class.getName() + ".REQUIRES_DIR_FSYNC", !Functions.isWindows());
 
+    /**
+     * If positive, how many milliseconds a commit waits for others before the parent directories of all of them
+     * get forced together, once per distinct directory.
+     * Durability is unchanged: {@link #commit} still only returns once its directory has been forced.
+     * Useful on storage where each {@code fsync} is expensive and many files get written concurrently.
+     */
+    static /* final */ long GROUP_COMMIT_WINDOW = SystemProperties.getLong(
+            AtomicFileWriter.class.getName() + ".GROUP_COMMIT_WINDOW", 0L);
+
     static {
         if (DISABLE_FORCED_FLUSH) {
             LOGGER.log(Level.WARNING, "DISABLE_FORCED_FLUSH flag used, this could result in dataloss if failures happen in your storage subsystem.");
@@ -247,8 +262,93 @@ public class AtomicFileWriter extends Writer {
          *     reached disk. For that an explicit fsync() on a file descriptor for the directory is also needed.
          */
         if (!DISABLE_FORCED_FLUSH && REQUIRES_DIR_FSYNC) {
-            try (FileChannel parentChannel = FileChannel.open(destPath.getParent())) {
-                parentChannel.force(true);
+            if (GROUP_COMMIT_WINDOW > 0) {
+                GroupCommit.force(destPath.getParent());
+            } else {
+                forceDirectory(destPath.getParent());
+            }
+        }
+    }
+
+    private static void forceDirectory(Path dir) throws IOException {
+        try (FileChannel parentChannel = FileChannel.open(dir)) {
+            parentChannel.force(true);
+        }
+    }
+
+    /**
+     * Forces the directories of concurrent commits together.
+     * The first commit to arrive waits for {@link #GROUP_COMMIT_WINDOW}, then forces every directory
+     * renamed into in the meantime on behalf of all of them.
+     * Data files are still forced by each writer when it is closed, as there is no way to sync several files at once.
+     */
+    static final class GroupCommit {
+
+        /**
+         * The batch being collected, if any.
+         */
+        private static Batch current;
+
+        private static final class Batch {
+            final Set<Path> directories = new LinkedHashSet<>();
+            final Map<Path, IOException> failures = new HashMap<>();
+            final CompletableFuture<Void> done = new CompletableFuture<>();
+        }
+
+        private GroupCommit() {}
+
+        static void force(Path dir) throws IOException {
+            Batch batch;
+            boolean leader;
+            synchronized (GroupCommit.class) {
+                leader = current == null;
+                if (leader) {
+                    current = new Batch();
+                }
+                batch = current;
+                batch.directories.add(dir);
+            }
+            if (leader) {
+                try {
+                    Thread.sleep(GROUP_COMMIT_WINDOW);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                synchronized (GroupCommit.class) {
+                    current = null;
+                }
+                try {
+                    for (Path d : batch.directories) {
+                        try {
+                            forceDirectory(d);
+                        } catch (IOException e) {
+                            batch.failures.put(d, e);
+                        }
+                    }
+                    LOGGER.log(Level.FINER, "forced {0} directories together", batch.directories.size());
+                } finally {
+                    batch.done.complete(null);
+                }
+            } else {
+                boolean interrupted = false;
+                while (true) {
+                    try {
+                        batch.done.get();
+                        break;
+                    } catch (InterruptedException e) {
+                        // the rename already happened; we must not return before it is durable
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            IOException failure = batch.failures.get(dir);
+            if (failure != null) {
+                throw new IOException("Failed to force " + dir, failure);
             }
         }
     }
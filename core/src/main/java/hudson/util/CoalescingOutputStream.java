@@ -0,0 +1,167 @@
+package hudson.util;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * {@link OutputStream} that coalesces many small writes into few large ones.
+ *
+ * <p>
+ * Data is written to the underlying stream when the buffer fills up, or at most {@code maxDelay} milliseconds after
+ * it was buffered, by a shared background thread.
+ * A write arriving after the stream has been idle for that long goes straight through,
+ * so that sporadic output is not delayed at all.
+ *
+ * <p>
+ * {@link #flush()} only schedules the buffer to be written within {@code maxDelay};
+ * use {@link #close()} (or {@link #flushNow()}) to be sure everything has reached the underlying stream.
+ * Errors from background writes are reported by the next call.
+ *
+ * @see StreamTaskListener
+ */
+@Restricted(NoExternalUse.class)
+public class CoalescingOutputStream extends OutputStream {
+
+    private static final Logger LOGGER = Logger.getLogger(CoalescingOutputStream.class.getName());
+
+    private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), CoalescingOutputStream.class.getName() + ".flusher"));
+
+    private final OutputStream out;
+    private final byte[] buf;
+    private final long maxDelay;
+    private int count;
+
+    /**
+     * When data was last written to the underlying stream, per {@link System#nanoTime}.
+     */
+    private long lastWrite;
+
+    private ScheduledFuture<?> pending;
+
+    private IOException failure;
+
+    private boolean closed;
+
+    /**
+     * @param out the underlying stream
+     * @param size the buffer size in bytes
+     * @param maxDelay how long data may stay in the buffer, in milliseconds
+     */
+    public CoalescingOutputStream(@NonNull OutputStream out, int size, long maxDelay) {
+        this.out = out;
+        this.buf = new byte[size];
+        this.maxDelay = maxDelay;
+        this.lastWrite = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(maxDelay);
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(@NonNull byte[] b, int off, int len) throws IOException {
+        check();
+        if (count == 0 && System.nanoTime() - lastWrite >= TimeUnit.MILLISECONDS.toNanos(maxDelay)) {
+            // idle: keep tailing timely
+            writeThrough(b, off, len);
+            return;
+        }
+        if (len > buf.length - count) {
+            drain();
+            if (len >= buf.length) {
+                writeThrough(b, off, len);
+                return;
+            }
+        }
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+        if (pending == null) {
+            pending = flusher.schedule(this::flushPending, maxDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Makes sure buffered data gets written within the maximum delay, which is the case anyway.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        check();
+    }
+
+    /**
+     * Writes and flushes buffered data to the underlying stream right away.
+     */
+    public synchronized void flushNow() throws IOException {
+        check();
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+        try {
+            if (failure == null) {
+                drain();
+            }
+        } finally {
+            out.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private synchronized void flushPending() {
+        pending = null;
+        if (closed || failure != null) {
+            return;
+        }
+        try {
+            drain();
+            out.flush();
+        } catch (IOException x) {
+            LOGGER.log(Level.FINE, "deferring failure to the next caller", x);
+            failure = x;
+        }
+    }
+
+    private void check() throws IOException {
+        if (closed) {
+            throw new IOException("closed");
+        }
+        if (failure != null) {
+            throw new IOException(failure);
+        }
+    }
+
+    private void drain() throws IOException {
+        if (count > 0) {
+            writeThrough(buf, 0, count);
+            count = 0;
+        }
+    }
+
+    private void writeThrough(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        lastWrite = System.nanoTime();
+    }
+}
@@ -38,6 +38,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import jenkins.util.xstream.CriticalXStreamException;
 
 /**
@@ -90,6 +92,26 @@ public class CopyOnWriteList<E> implements Iterable<E> {
         return r;
     }
 
+    /**
+     * Removes all items matching a condition, copying the list only once.
+     *
+     * @return
+     *      true if any item was removed.
+     */
+    synchronized boolean removeIf(Predicate<? super E> filter) {
+        List<E> n = new ArrayList<>(core.size());
+        for (E e : core) {
+            if (!filter.test(e)) {
+                n.add(e);
+            }
+        }
+        if (n.size() == core.size()) {
+            return false;
+        }
+        core = n;
+        return true;
+    }
+
     /**
      * Returns an iterator.
      */
@@ -116,6 +138,25 @@ public class CopyOnWriteList<E> implements Iterable<E> {
         };
     }
 
+    /**
+     * Performs an action for each item of the current snapshot, without allocating an iterator.
+     */
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        List<? extends E> snapshot = core;
+        for (int i = 0, n = snapshot.size(); i < n; i++) {
+            action.accept(snapshot.get(i));
+        }
+    }
+
+    /**
+     * Gets the current contents, which are never modified in place:
+     * any change replaces them with a new list, so the identity of the result tells whether the list has changed.
+     */
+    List<? extends E> snapshot() {
+        return core;
+    }
+
     /**
      * Completely replaces this list by the contents of the given list.
      */
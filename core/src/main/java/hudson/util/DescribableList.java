@@ -100,11 +100,7 @@ public class DescribableList<T extends Describable<T>, D extends Descriptor<T>>
      * Removes all instances of the same type, then add the new one.
      */
     public void replace(T item) throws IOException {
-        for (T t : data) {
-            if (t.getClass() == item.getClass()) {
-                data.remove(t);
-            }
-        }
+        data.removeIf(t -> t.getClass() == item.getClass());
         data.add(item);
         onModified();
     }
@@ -129,10 +125,12 @@ public class DescribableList<T extends Describable<T>, D extends Descriptor<T>>
     }
 
     public T get(D descriptor) {
-        for (T t : data)
-            if (t.getDescriptor() == descriptor)
-                return t;
-        return null;
+        return find(descriptor);
+    }
+
+    @Override
+    boolean matches(Object key, T item) {
+        return key instanceof Descriptor ? item.getDescriptor() == key : super.matches(key, item);
     }
 
     public boolean contains(D d) {
@@ -32,6 +32,8 @@ import com.thoughtworks.xstream.converters.collections.AbstractCollectionConvert
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 import com.thoughtworks.xstream.mapper.Mapper;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.model.Describable;
 import hudson.model.Saveable;
 import java.io.IOException;
@@ -42,8 +44,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -60,6 +65,23 @@ public class PersistedList<T> extends AbstractList<T> {
     protected final CopyOnWriteList<T> data = new CopyOnWriteList<>();
     protected Saveable owner = Saveable.NOOP;
 
+    /**
+     * Results of lookups in the current contents of {@link #data}, so that repeated lookups do not scan the list.
+     */
+    private transient volatile Lookups<T> lookups;
+
+    private static final class Lookups<T> {
+        final List<? extends T> snapshot;
+        /** Lookup key to first matching item, or {@link #NONE}. */
+        final Map<Object, Object> found = new ConcurrentHashMap<>();
+
+        Lookups(List<? extends T> snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+
+    private static final Object NONE = new Object();
+
     protected PersistedList() {
     }
 
@@ -102,10 +124,41 @@ public class PersistedList<T> extends AbstractList<T> {
     }
 
     public <U extends T> U get(Class<U> type) {
-        for (T t : data)
-            if (type.isInstance(t))
-                return type.cast(t);
-        return null;
+        return type.cast(find(type));
+    }
+
+    /**
+     * Finds the first item matching a key, remembering the result until the list is next modified.
+     * @param key a lookup key as understood by {@link #matches}
+     */
+    @SuppressWarnings("unchecked")
+    final @CheckForNull T find(@NonNull Object key) {
+        List<? extends T> snapshot = data.snapshot();
+        Lookups<T> l = lookups;
+        if (l == null || l.snapshot != snapshot) {
+            lookups = l = new Lookups<>(snapshot);
+        }
+        Object r = l.found.get(key);
+        if (r == null) {
+            r = NONE;
+            for (int i = 0, n = snapshot.size(); i < n; i++) {
+                T t = snapshot.get(i);
+                if (matches(key, t)) {
+                    r = t;
+                    break;
+                }
+            }
+            l.found.put(key, r);
+        }
+        return r == NONE ? null : (T) r;
+    }
+
+    /**
+     * Whether an item matches a lookup key.
+     * Here keys are types; subclasses may define other kinds of keys.
+     */
+    boolean matches(@NonNull Object key, T item) {
+        return key instanceof Class && ((Class<?>) key).isInstance(item);
     }
 
     /**
@@ -160,15 +213,9 @@ public class PersistedList<T> extends AbstractList<T> {
     }
 
     public void removeAll(Class<? extends T> type) throws IOException {
-        boolean modified = false;
-        for (T t : data) {
-            if (t.getClass() == type) {
-                data.remove(t);
-                modified = true;
-            }
-        }
-        if (modified)
+        if (data.removeIf(t -> t.getClass() == type)) {
             onModified();
+        }
     }
 
 
@@ -182,6 +229,11 @@ public class PersistedList<T> extends AbstractList<T> {
         return data.iterator();
     }
 
+    @Override
+    public void forEach(Consumer<? super T> action) {
+        data.forEach(action);
+    }
+
     /**
      * Called when a list is mutated.
      */
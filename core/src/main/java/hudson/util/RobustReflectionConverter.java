@@ -54,8 +54,11 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
@@ -96,6 +99,12 @@ public class RobustReflectionConverter implements Converter {
     private final ReadWriteLock criticalFieldsLock = new ReentrantReadWriteLock();
     @GuardedBy("criticalFieldsLock")
     private final Map<String, Set<String>> criticalFields = new HashMap<>();
+    /**
+     * What is looked up about each class while unmarshalling, computed once per class.
+     * Replaced when critical fields are added, which happens during startup.
+     * Mapper results are not included, as the mapper may be reconfigured at any time.
+     */
+    private transient volatile ClassValue<ClassPlan> plans = newPlans();
 
     public RobustReflectionConverter(Mapper mapper, ReflectionProvider reflectionProvider) {
         this(mapper, reflectionProvider, new XStream2().new PluginClassOwnership());
@@ -119,6 +128,7 @@ public class RobustReflectionConverter implements Converter {
                 criticalFields.put(field, new HashSet<>());
             }
             criticalFields.get(field).add(clazz.getName());
+            plans = newPlans();
         }
         finally {
             // Unlock
@@ -126,24 +136,62 @@ public class RobustReflectionConverter implements Converter {
         }
     }
 
-    private boolean hasCriticalField(Class<?> clazz, String field) {
-        // Lock the write lock
+    private ClassValue<ClassPlan> newPlans() {
+        return new ClassValue<>() {
+            @Override
+            protected ClassPlan computeValue(Class<?> type) {
+                return new ClassPlan(type, criticalFieldsOf(type), reflectionProvider);
+            }
+        };
+    }
+
+    private Set<String> criticalFieldsOf(Class<?> type) {
         criticalFieldsLock.readLock().lock();
         try {
-            Set<String> classesWithField = criticalFields.get(field);
-            if (classesWithField == null) {
-                return false;
-            }
-            if (!classesWithField.contains(clazz.getName())) {
-                return false;
+            Set<String> result = new HashSet<>();
+            for (Map.Entry<String, Set<String>> entry : criticalFields.entrySet()) {
+                for (Class<?> concrete = type; concrete != null; concrete = concrete.getSuperclass()) {
+                    // Not quite right since a subclass could shadow a field, but probably suffices:
+                    if (entry.getValue().contains(concrete.getName())) {
+                        result.add(entry.getKey());
+                        break;
+                    }
+                }
             }
-            return true;
-        }
-        finally {
+            return result;
+        } finally {
             criticalFieldsLock.readLock().unlock();
         }
     }
 
+    /**
+     * Reflective facts about a class needed for each of its elements during unmarshalling.
+     */
+    private static final class ClassPlan {
+        private final Class<?> type;
+        private final Set<String> criticalFields;
+        private final ReflectionProvider reflectionProvider;
+        /**
+         * Result of {@link ReflectionProvider#getFieldOrNull} by name; avoids contention in the shared field dictionary.
+         * During unmarshalling, we unmarshal into transient fields like XStream 1.1.3.
+         */
+        private final Map<String, Optional<Field>> fields = new ConcurrentHashMap<>();
+
+        ClassPlan(Class<?> type, Set<String> criticalFields, ReflectionProvider reflectionProvider) {
+            this.type = type;
+            this.criticalFields = criticalFields;
+            this.reflectionProvider = reflectionProvider;
+        }
+
+        boolean isCritical(String fieldName) {
+            return criticalFields.contains(fieldName);
+        }
+
+        Field getFieldOrNull(String name) {
+            return fields.computeIfAbsent(name, n -> Optional.ofNullable(reflectionProvider.getFieldOrNull(type, n))).orElse(null);
+        }
+    }
+
     @Override
     public boolean canConvert(Class type) {
         return true;
@@ -198,84 +246,99 @@ public class RobustReflectionConverter implements Converter {
         }
     }
 
+    @SuppressWarnings("deprecation") // deliberately calling deprecated methods?
     protected void doMarshal(final Object source, final HierarchicalStreamWriter writer, final MarshallingContext context) {
         final Set seenFields = new HashSet();
         final Set seenAsAttributes = new HashSet();
 
+        // Read the fields once, for both passes below
+        final List<FieldValue> fields = new ArrayList<>();
+        reflectionProvider.visitSerializableFields(source, (fieldName, type, definedIn, value) -> fields.add(new FieldValue(fieldName, type, definedIn, value)));
+
         // Attributes might be preferred to child elements ...
-         reflectionProvider.visitSerializableFields(source, new ReflectionProvider.Visitor() {
-            @SuppressWarnings("deprecation") // deliberately calling deprecated methods?
-            @Override
-            public void visit(String fieldName, Class type, Class definedIn, Object value) {
-                SingleValueConverter converter = mapper.getConverterFromItemType(fieldName, type, definedIn);
-                if (converter == null) converter = mapper.getConverterFromItemType(fieldName, type);
-                if (converter == null) converter = mapper.getConverterFromItemType(type);
-                if (converter != null) {
-                    if (value != null) {
-                        final String str = converter.toString(value);
-                        if (str != null) {
-                            writer.addAttribute(mapper.aliasForAttribute(fieldName), str);
-                        }
+        for (FieldValue f : fields) {
+            SingleValueConverter converter = mapper.getConverterFromItemType(f.name, f.type, f.definedIn);
+            if (converter == null) converter = mapper.getConverterFromItemType(f.name, f.type);
+            if (converter == null) converter = mapper.getConverterFromItemType(f.type);
+            if (converter != null) {
+                if (f.value != null) {
+                    final String str = converter.toString(f.value);
+                    if (str != null) {
+                        writer.addAttribute(mapper.aliasForAttribute(f.name), str);
                     }
-                    seenAsAttributes.add(fieldName);
                 }
+                seenAsAttributes.add(f.name);
             }
-        });
+        }
 
         // Child elements not covered already processed as attributes ...
-        reflectionProvider.visitSerializableFields(source, new ReflectionProvider.Visitor() {
-            @Override
-            public void visit(String fieldName, Class fieldType, Class definedIn, Object newObj) {
-                if (!seenAsAttributes.contains(fieldName) && newObj != null) {
-                    Mapper.ImplicitCollectionMapping mapping = mapper.getImplicitCollectionDefForFieldName(source.getClass(), fieldName);
-                    if (mapping != null) {
-                        if (mapping.getItemFieldName() != null) {
-                            Collection list = (Collection) newObj;
-                            for (Object obj : list) {
-                                writeField(fieldName, mapping.getItemFieldName(), mapping.getItemType(), definedIn, obj);
-                            }
-                        } else {
-                            context.convertAnother(newObj);
+        for (FieldValue f : fields) {
+            if (!seenAsAttributes.contains(f.name) && f.value != null) {
+                Mapper.ImplicitCollectionMapping mapping = mapper.getImplicitCollectionDefForFieldName(source.getClass(), f.name);
+                if (mapping != null) {
+                    if (mapping.getItemFieldName() != null) {
+                        Collection list = (Collection) f.value;
+                        for (Object obj : list) {
+                            writeField(source, writer, context, seenFields, f.name, mapping.getItemFieldName(), mapping.getItemType(), f.definedIn, obj);
                         }
                     } else {
-                        writeField(fieldName, fieldName, fieldType, definedIn, newObj);
-                        seenFields.add(fieldName);
+                        context.convertAnother(f.value);
                     }
+                } else {
+                    writeField(source, writer, context, seenFields, f.name, f.name, f.type, f.definedIn, f.value);
+                    seenFields.add(f.name);
                 }
             }
+        }
+    }
 
-            @SuppressWarnings("deprecation") // TODO HierarchicalStreamWriter#startNode(String, Class) in 1.5.0
-            private void writeField(String fieldName, String aliasName, Class fieldType, Class definedIn, Object newObj) {
-                try {
-                    if (!mapper.shouldSerializeMember(definedIn, aliasName)) {
-                        return;
-                    }
-                    ExtendedHierarchicalStreamWriterHelper.startNode(writer, mapper.serializedMember(definedIn, aliasName), fieldType);
-
-                    Class actualType = newObj.getClass();
+    /**
+     * A field of the object being marshalled, as visited by {@link ReflectionProvider#visitSerializableFields}.
+     */
+    private static final class FieldValue {
+        final String name;
+        final Class type;
+        final Class definedIn;
+        final Object value;
+
+        FieldValue(String name, Class type, Class definedIn, Object value) {
+            this.name = name;
+            this.type = type;
+            this.definedIn = definedIn;
+            this.value = value;
+        }
+    }
 
-                    Class defaultType = mapper.defaultImplementationOf(fieldType);
-                    if (!actualType.equals(defaultType)) {
-                        String serializedClassName = mapper.serializedClass(actualType);
-                        if (!serializedClassName.equals(mapper.serializedClass(defaultType))) {
-                            writer.addAttribute(mapper.aliasForSystemAttribute("class"), serializedClassName);
-                        }
-                    }
+    @SuppressWarnings("deprecation") // TODO HierarchicalStreamWriter#startNode(String, Class) in 1.5.0
+    private void writeField(Object source, HierarchicalStreamWriter writer, MarshallingContext context, Set seenFields,
+                            String fieldName, String aliasName, Class fieldType, Class definedIn, Object newObj) {
+        try {
+            if (!mapper.shouldSerializeMember(definedIn, aliasName)) {
+                return;
+            }
+            ExtendedHierarchicalStreamWriterHelper.startNode(writer, mapper.serializedMember(definedIn, aliasName), fieldType);
 
-                    if (seenFields.contains(aliasName)) {
-                        writer.addAttribute(mapper.aliasForAttribute("defined-in"), mapper.serializedClass(definedIn));
-                    }
+            Class actualType = newObj.getClass();
 
-                    Field field = reflectionProvider.getField(definedIn, fieldName);
-                    marshallField(context, newObj, field);
-                    writer.endNode();
-                } catch (RuntimeException e) {
-                    // intercept an exception so that the stack trace shows how we end up marshalling the object in question
-                    throw new RuntimeException("Failed to serialize " + definedIn.getName() + "#" + fieldName + " for " + source.getClass(), e);
+            Class defaultType = mapper.defaultImplementationOf(fieldType);
+            if (!actualType.equals(defaultType)) {
+                String serializedClassName = mapper.serializedClass(actualType);
+                if (!serializedClassName.equals(mapper.serializedClass(defaultType))) {
+                    writer.addAttribute(mapper.aliasForSystemAttribute("class"), serializedClassName);
                 }
             }
 
-        });
+            if (seenFields.contains(aliasName)) {
+                writer.addAttribute(mapper.aliasForAttribute("defined-in"), mapper.serializedClass(definedIn));
+            }
+
+            Field field = reflectionProvider.getField(definedIn, fieldName);
+            marshallField(context, newObj, field);
+            writer.endNode();
+        } catch (RuntimeException e) {
+            // intercept an exception so that the stack trace shows how we end up marshalling the object in question
+            throw new RuntimeException("Failed to serialize " + definedIn.getName() + "#" + fieldName + " for " + source.getClass(), e);
+        }
     }
 
     protected void marshallField(final MarshallingContext context, Object newObj, Field field) {
@@ -292,6 +355,7 @@ public class RobustReflectionConverter implements Converter {
 
     public Object doUnmarshal(final Object result, final HierarchicalStreamReader reader, final UnmarshallingContext context) {
         final SeenFields seenFields = new SeenFields();
+        final ClassPlan plan = plans.get(result.getClass());
         Iterator it = reader.getAttributeNames();
         // Remember outermost Saveable encountered, for reporting below
         if (result instanceof Saveable && context.get("Saveable") == null)
@@ -302,9 +366,8 @@ public class RobustReflectionConverter implements Converter {
             String attrAlias = (String) it.next();
             String attrName = mapper.attributeForAlias(attrAlias);
             Class classDefiningField = determineWhichClassDefinesField(reader);
-            boolean fieldExistsInClass = fieldDefinedInClass(result, attrName);
-            if (fieldExistsInClass) {
-                Field field = reflectionProvider.getField(result.getClass(), attrName);
+            Field field = plan.getFieldOrNull(attrName);
+            if (field != null) {
                 SingleValueConverter converter = mapper.getConverterFromAttribute(field.getDeclaringClass(), attrName, field.getType());
                 Class type = field.getType();
                 if (converter == null) {
@@ -331,25 +394,19 @@ public class RobustReflectionConverter implements Converter {
             boolean critical = false;
             try {
                 String fieldName = mapper.realMember(result.getClass(), reader.getNodeName());
-                for (Class<?> concrete = result.getClass(); concrete != null; concrete = concrete.getSuperclass()) {
-                    // Not quite right since a subclass could shadow a field, but probably suffices:
-                    if (hasCriticalField(concrete, fieldName)) {
-                        critical = true;
-                        break;
-                    }
-                }
+                critical = plan.isCritical(fieldName);
                 boolean implicitCollectionHasSameName = mapper.getImplicitCollectionDefForFieldName(result.getClass(), reader.getNodeName()) != null;
 
                 Class classDefiningField = determineWhichClassDefinesField(reader);
-                boolean fieldExistsInClass = !implicitCollectionHasSameName && fieldDefinedInClass(result, fieldName);
+                Field field = implicitCollectionHasSameName ? null : plan.getFieldOrNull(fieldName);
+                boolean fieldExistsInClass = field != null;
 
                 Class type = determineType(reader, fieldExistsInClass, result, fieldName, classDefiningField);
                 final Object value;
                 if (fieldExistsInClass) {
-                    Field field = reflectionProvider.getField(result.getClass(), fieldName);
                     value = unmarshalField(context, result, type, field);
                     // TODO the reflection provider should have returned the proper field in first place ....
-                    Class definedType = reflectionProvider.getFieldType(result, fieldName, classDefiningField);
+                    Class definedType = classDefiningField == null ? field.getType() : reflectionProvider.getFieldType(result, fieldName, classDefiningField);
                     if (!definedType.isPrimitive()) {
                         type = definedType;
                     }
@@ -443,12 +500,6 @@ public class RobustReflectionConverter implements Converter {
         list.add(e);
     }
 
-    private boolean fieldDefinedInClass(Object result, String attrName) {
-        // during unmarshalling, unmarshal into transient fields like XStream 1.1.3
-        //boolean fieldExistsInClass = reflectionProvider.fieldDefinedInClass(attrName, result.getClass());
-        return reflectionProvider.getFieldOrNull(result.getClass(), attrName) != null;
-    }
-
     protected Object unmarshalField(final UnmarshallingContext context, final Object result, Class type, Field field) {
         Converter converter = mapper.getLocalConverter(field.getDeclaringClass(), field.getName());
         return context.convertAnother(result, type, converter);
@@ -540,6 +591,7 @@ public class RobustReflectionConverter implements Converter {
 
     private Object readResolve() {
         serializationMethodInvoker = new SerializationMembers();
+        plans = newPlans();
         return this;
     }
 
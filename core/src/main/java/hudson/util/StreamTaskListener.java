@@ -45,6 +45,8 @@ import java.nio.file.StandardOpenOption;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.framework.io.WriterOutputStream;
 
 /**
@@ -107,7 +109,7 @@ public class StreamTaskListener extends AbstractTaskListener implements TaskList
         // don't do buffering so that what's written to the listener
         // gets reflected to the file immediately, which can then be
         // served to the browser immediately
-        this(Files.newOutputStream(asPath(out)), charset);
+        this(coalescing(Files.newOutputStream(asPath(out))), charset);
     }
 
     private static Path asPath(@NonNull File out) throws IOException {
@@ -131,14 +133,23 @@ public class StreamTaskListener extends AbstractTaskListener implements TaskList
         // don't do buffering so that what's written to the listener
         // gets reflected to the file immediately, which can then be
         // served to the browser immediately
-        this(Files.newOutputStream(
+        this(coalescing(Files.newOutputStream(
                 asPath(out),
                 StandardOpenOption.CREATE, append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING
-                ),
+                )),
                 charset
         );
     }
 
+    /**
+     * Wraps a stream writing to a log file in a {@link CoalescingOutputStream} if {@link #COALESCE} is set.
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public static OutputStream coalescing(@NonNull OutputStream out) {
+        return COALESCE ? new CoalescingOutputStream(out, COALESCE_BUFFER_SIZE, COALESCE_MAX_DELAY) : out;
+    }
+
     public StreamTaskListener(@NonNull Writer w) throws IOException {
         this(new WriterOutputStream(w));
     }
@@ -192,6 +203,19 @@ public class StreamTaskListener extends AbstractTaskListener implements TaskList
 
     private static /* not final */ boolean AUTO_FLUSH = SystemProperties.getBoolean(KEY_AUTO_FLUSH);
 
+    /**
+     * Coalesces writes to log files, which otherwise hit the file once per write
+     * (for example per chunk received from an agent).
+     * Output is then written when {@link #COALESCE_BUFFER_SIZE} bytes have accumulated or after {@link #COALESCE_MAX_DELAY} milliseconds,
+     * so {@link PrintStream#flush} no longer guarantees that output has reached the file until the listener is closed.
+     * @see CoalescingOutputStream
+     */
+    static /* not final */ boolean COALESCE = SystemProperties.getBoolean(StreamTaskListener.class.getName() + ".COALESCE");
+
+    static /* not final */ int COALESCE_BUFFER_SIZE = SystemProperties.getInteger(StreamTaskListener.class.getName() + ".COALESCE_BUFFER_SIZE", 64 * 1024);
+
+    static /* not final */ long COALESCE_MAX_DELAY = SystemProperties.getLong(StreamTaskListener.class.getName() + ".COALESCE_MAX_DELAY", 200L);
+
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         OutputStream os = (OutputStream) in.readObject();
         String name = (String) in.readObject();
@@ -67,13 +67,17 @@ import hudson.util.xstream.ImmutableMapConverter;
 import hudson.util.xstream.ImmutableSetConverter;
 import hudson.util.xstream.ImmutableSortedSetConverter;
 import hudson.util.xstream.MapperDelegate;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.Writer;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
@@ -119,17 +123,77 @@ public class XStream2 extends XStream {
      */
     private MapperInjectionPoint mapperInjectionPoint;
 
+    /**
+     * Class name of a {@link HierarchicalStreamDriver} to parse XML with instead of StAX,
+     * such as {@code com.thoughtworks.xstream.io.xml.Xpp3Driver}.
+     * XML is always written the same way regardless.
+     */
+    private static final String READER_DRIVER = SystemProperties.getString(XStream2.class.getName() + ".readerDriver");
+
     /**
      * Convenience method so we only have to change the driver in one place
      * if we switch to something new in the future
      *
      * @return a new instance of the HierarchicalStreamDriver we want to use
+     * @see #getSharedDriver
      */
     public static HierarchicalStreamDriver getDefaultDriver() {
-        return new StaxDriver();
+        return new StaxDriver(createReaderDriver());
+    }
+
+    /**
+     * Gets a driver instance shared by all callers.
+     * Unlike a {@linkplain #getDefaultDriver new driver}, it does not look up StAX factories again,
+     * which is much more expensive than parsing a typical configuration file.
+     */
+    @Restricted(NoExternalUse.class)
+    public static HierarchicalStreamDriver getSharedDriver() {
+        return SharedDriver.INSTANCE;
+    }
+
+    private static final class SharedDriver {
+        static final HierarchicalStreamDriver INSTANCE = getDefaultDriver();
+    }
+
+    private static @CheckForNull HierarchicalStreamDriver createReaderDriver() {
+        if (READER_DRIVER == null) {
+            return null;
+        }
+        try {
+            return Class.forName(READER_DRIVER, true, XStream2.class.getClassLoader()).asSubclass(HierarchicalStreamDriver.class).getConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException | LinkageError x) {
+            LOGGER.log(Level.WARNING, "Cannot use " + READER_DRIVER + " to parse XML", x);
+            return null;
+        }
     }
 
     private static class StaxDriver extends StandardStaxDriver {
+        private final @CheckForNull HierarchicalStreamDriver readerDriver;
+
+        StaxDriver(@CheckForNull HierarchicalStreamDriver readerDriver) {
+            this.readerDriver = readerDriver;
+        }
+
+        @Override
+        public HierarchicalStreamReader createReader(Reader in) {
+            return readerDriver != null ? readerDriver.createReader(in) : super.createReader(in);
+        }
+
+        @Override
+        public HierarchicalStreamReader createReader(InputStream in) {
+            return readerDriver != null ? readerDriver.createReader(in) : super.createReader(in);
+        }
+
+        @Override
+        public HierarchicalStreamReader createReader(URL in) {
+            return readerDriver != null ? readerDriver.createReader(in) : super.createReader(in);
+        }
+
+        @Override
+        public HierarchicalStreamReader createReader(File in) {
+            return readerDriver != null ? readerDriver.createReader(in) : super.createReader(in);
+        }
+
         /*
          * The below two methods are copied from com.thoughtworks.xstream.io.xml.AbstractXppDriver to preserve
          * compatibility.
@@ -168,7 +232,7 @@ public class XStream2 extends XStream {
     }
 
     public XStream2() {
-        super(getDefaultDriver());
+        super(getSharedDriver());
         init();
         classOwnership = null;
     }
@@ -191,7 +255,7 @@ public class XStream2 extends XStream {
     }
 
     XStream2(ClassOwnership classOwnership) {
-        super(getDefaultDriver());
+        super(getSharedDriver());
         init();
         this.classOwnership = classOwnership;
     }
@@ -32,6 +32,7 @@ import java.io.OutputStream;
 import java.io.Serializable;
 import java.nio.charset.Charset;
 import java.nio.file.OpenOption;
+import java.util.zip.Deflater;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
@@ -89,6 +90,18 @@ public abstract class ArchiverFactory implements Serializable {
         return new ZipArchiverFactory(prefix, openOptions);
     }
 
+    /**
+     * Zip format, with prefix, compression level and optional OpenOptions.
+     * @param prefix The portion of file path that will be added at the beginning of the relative path inside the archive.
+     *               If non-empty, a trailing forward slash will be enforced.
+     * @param level a {@link Deflater} compression level, used for files not already compressed
+     * @param openOptions the options to apply when opening files.
+     */
+    @Restricted(NoExternalUse.class)
+    public static ArchiverFactory createZipWithPrefix(String prefix, int level, OpenOption... openOptions) {
+        return new ZipArchiverFactory(prefix, level, openOptions);
+    }
+
     private static final class TarArchiverFactory extends ArchiverFactory {
         private final TarCompression method;
 
@@ -108,6 +121,7 @@ public abstract class ArchiverFactory implements Serializable {
     private static final class ZipArchiverFactory extends ArchiverFactory {
 
         private final String prefix;
+        private final int level;
         private final OpenOption[] openOptions;
 
         ZipArchiverFactory() {
@@ -115,14 +129,19 @@ public abstract class ArchiverFactory implements Serializable {
         }
 
         ZipArchiverFactory(String prefix, OpenOption... openOptions) {
+            this(prefix, Deflater.DEFAULT_COMPRESSION, openOptions);
+        }
+
+        ZipArchiverFactory(String prefix, int level, OpenOption... openOptions) {
             this.prefix = prefix;
+            this.level = level;
             this.openOptions = openOptions;
         }
 
         @NonNull
         @Override
         public Archiver create(OutputStream out, Charset filenamesEncoding) {
-            return new ZipArchiver(out, prefix, filenamesEncoding, openOptions);
+            return new ZipArchiver(out, prefix, level, filenamesEncoding, openOptions);
         }
 
         private static final long serialVersionUID = 1L;
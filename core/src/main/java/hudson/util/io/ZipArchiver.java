@@ -37,6 +37,7 @@ import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.OpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.Deflater;
 import org.apache.tools.zip.Zip64Mode;
 import org.apache.tools.zip.ZipEntry;
 import org.apache.tools.zip.ZipOutputStream;
@@ -49,10 +50,11 @@ import org.kohsuke.accmod.restrictions.NoExternalUse;
  * @see ArchiverFactory#ZIP
  */
 final class ZipArchiver extends Archiver {
-    private final byte[] buf = new byte[8192];
+    private final byte[] buf = new byte[64 * 1024];
     private final ZipOutputStream zip;
     private final OpenOption[] openOptions;
     private final String prefix;
+    private final int level;
 
     ZipArchiver(OutputStream out) {
         this(out, "", Charset.defaultCharset());
@@ -61,7 +63,17 @@ final class ZipArchiver extends Archiver {
     // Restriction added for clarity, it's a package class, you should not use it outside of Jenkins core
     @Restricted(NoExternalUse.class)
     ZipArchiver(OutputStream out, String prefix, Charset filenamesEncoding, OpenOption... openOptions) {
+        this(out, prefix, Deflater.DEFAULT_COMPRESSION, filenamesEncoding, openOptions);
+    }
+
+    /**
+     * @param level compression level of files, except that those {@linkplain FilePath#isAlreadyCompressed already compressed}
+     *              are not compressed again
+     */
+    @Restricted(NoExternalUse.class)
+    ZipArchiver(OutputStream out, String prefix, int level, Charset filenamesEncoding, OpenOption... openOptions) {
         this.openOptions = openOptions;
+        this.level = level;
         if (prefix == null || prefix.isBlank()) {
             this.prefix = "";
         } else {
@@ -96,6 +108,7 @@ final class ZipArchiver extends Archiver {
             if (mode != -1)   fileZipEntry.setUnixMode(mode);
             fileZipEntry.setTime(basicFileAttributes.lastModifiedTime().toMillis());
             fileZipEntry.setSize(basicFileAttributes.size());
+            zip.setLevel(FilePath.isAlreadyCompressed(relativePath) ? Deflater.NO_COMPRESSION : level);
             zip.putNextEntry(fileZipEntry);
             try (InputStream in = FilePath.openInputStream(f, openOptions)) {
                 int len;
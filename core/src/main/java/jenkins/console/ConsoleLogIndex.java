@@ -0,0 +1,639 @@
+package jenkins.console;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.console.ConsoleNote;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Optional inverted index over the logs of completed builds, to find which builds printed something.
+ *
+ * <p>
+ * Each build gets a segment file in {@code logIndex/} under the job directory, listing every token of its log
+ * (lowercase runs of letters, digits and underscores) together with the offsets of the lines containing it.
+ * Tokens occurring on more than {@link #MAX_POSTINGS} lines are recorded without offsets.
+ * A search intersects the offsets of the query tokens in each segment, newest build first,
+ * and then reads only those lines to check that they contain the query text.
+ *
+ * <p>
+ * Segments are written in the background once a build is finalized, and deleted along with the build.
+ * Builds completed before the index was enabled are not indexed.
+ */
+@Restricted(NoExternalUse.class)
+public final class ConsoleLogIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(ConsoleLogIndex.class.getName());
+
+    /**
+     * Whether to index build logs at all.
+     */
+    static /* not final */ boolean ENABLED = SystemProperties.getBoolean(ConsoleLogIndex.class.getName() + ".enabled");
+
+    /**
+     * Maximum number of line offsets recorded for one token in one build.
+     */
+    static /* not final */ int MAX_POSTINGS = SystemProperties.getInteger(ConsoleLogIndex.class.getName() + ".maxPostings", 10000);
+
+    /**
+     * Approximate number of bytes of postings held in memory while indexing a log before writing them to a temporary file.
+     */
+    static /* not final */ int MAX_BUFFER = SystemProperties.getInteger(ConsoleLogIndex.class.getName() + ".maxBuffer", 16 * 1024 * 1024);
+
+    private static final int MIN_TOKEN_LENGTH = 2;
+    private static final int MAX_TOKEN_LENGTH = 64;
+
+    /**
+     * Lines longer than this are cut when indexed or shown.
+     */
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private static final int VERSION = 1;
+
+    private static final String DIR = "logIndex";
+    private static final String SUFFIX = ".idx";
+
+    private static final ExecutorService indexer = Executors.newSingleThreadExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), ConsoleLogIndex.class.getName()));
+
+    private ConsoleLogIndex() {}
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * A line of a build log matching a search.
+     */
+    public static final class Match {
+        private final int build;
+        private final long offset;
+        private final String line;
+
+        Match(int build, long offset, String line) {
+            this.build = build;
+            this.offset = offset;
+            this.line = line;
+        }
+
+        public int getBuild() {
+            return build;
+        }
+
+        /**
+         * Offset of the start of the line in the log, in bytes.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * The line, without console notes.
+         */
+        public String getLine() {
+            return line;
+        }
+    }
+
+    /**
+     * Searches the logs of indexed builds for lines containing some text, ignoring case.
+     * Since lookups are by token, every word of the query must appear as a whole word in matching lines.
+     * @param query the text to look for; must contain at least one token
+     * @param maxBuilds how many of the most recent indexed builds to search
+     * @param maxMatches how many matching lines to return at most
+     * @return matches, newest build first
+     */
+    public static @NonNull List<Match> search(@NonNull Job<?, ?> job, @NonNull String query, int maxBuilds, int maxMatches) throws IOException {
+        NavigableSet<String> tokens = tokenize(query);
+        if (tokens.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String needle = query.toLowerCase(Locale.ENGLISH);
+        List<Match> matches = new ArrayList<>();
+        for (int number : indexedBuilds(job, maxBuilds)) {
+            File segment = segment(job, number);
+            long[] candidates;
+            try {
+                candidates = candidates(segment, tokens);
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "Skipping unreadable log index " + segment, x);
+                continue;
+            }
+            if (candidates != null && candidates.length == 0) {
+                continue;
+            }
+            Run<?, ?> run = job.getBuildByNumber(number);
+            if (run == null) {
+                continue; // deleted meanwhile
+            }
+            if (!verify(run, candidates, needle, matches, maxMatches)) {
+                break;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Numbers of the most recent indexed builds, newest first.
+     */
+    private static List<Integer> indexedBuilds(Job<?, ?> job, int max) {
+        String[] names = new File(job.getRootDir(), DIR).list();
+        if (names == null) {
+            return Collections.emptyList();
+        }
+        NavigableSet<Integer> numbers = new TreeSet<>();
+        for (String name : names) {
+            if (name.endsWith(SUFFIX)) {
+                try {
+                    numbers.add(Integer.parseInt(name.substring(0, name.length() - SUFFIX.length())));
+                } catch (NumberFormatException x) {
+                    // not ours
+                }
+            }
+        }
+        List<Integer> result = new ArrayList<>();
+        for (int number : numbers.descendingSet()) {
+            if (result.size() == max) {
+                break;
+            }
+            result.add(number);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the lines which may contain all the tokens.
+     * @return sorted offsets, or null if every token is too common for offsets to have been recorded
+     */
+    private static long[] candidates(File segment, NavigableSet<String> tokens) throws IOException {
+        Map<String, long[]> postings = new TreeMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.toPath())))) {
+            if (in.readInt() != VERSION) {
+                throw new IOException("Unsupported index format in " + segment);
+            }
+            String last = tokens.last();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String token = in.readUTF();
+                int size = in.readInt();
+                if (tokens.contains(token)) {
+                    long[] offsets = null;
+                    if (size >= 0) {
+                        offsets = new long[size];
+                        long offset = 0;
+                        for (int j = 0; j < size; j++) {
+                            offset += readVarLong(in);
+                            offsets[j] = offset;
+                        }
+                    }
+                    postings.put(token, offsets);
+                } else if (token.compareTo(last) > 0) {
+                    break; // tokens are sorted
+                } else {
+                    for (int j = 0; j < size; j++) {
+                        readVarLong(in);
+                    }
+                }
+            }
+        } catch (NoSuchFileException x) {
+            return new long[0]; // deleted meanwhile
+        } catch (EOFException x) {
+            throw new IOException("Truncated " + segment, x);
+        }
+        if (postings.size() < tokens.size()) {
+            return new long[0];
+        }
+        long[] result = null;
+        for (long[] offsets : postings.values()) {
+            if (offsets != null) {
+                result = result == null ? offsets : intersect(result, offsets);
+            }
+        }
+        return result;
+    }
+
+    private static long[] intersect(long[] a, long[] b) {
+        long[] result = new long[Math.min(a.length, b.length)];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[k++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, k);
+    }
+
+    /**
+     * Reads candidate lines (or all lines if null) and collects those containing the needle.
+     * @return false once enough matches were found
+     */
+    private static boolean verify(Run<?, ?> run, long[] candidates, String needle, List<Match> matches, int maxMatches) throws IOException {
+        Charset charset = run.getCharset();
+        try (InputStream in = new BufferedInputStream(run.getLogInputStream())) {
+            LineReader lines = new LineReader(in);
+            int next = 0;
+            while (candidates == null || next < candidates.length) {
+                if (candidates != null) {
+                    lines.skipTo(candidates[next++]);
+                }
+                long offset = lines.position;
+                byte[] line = lines.next();
+                if (line == null) {
+                    break;
+                }
+                String text = ConsoleNote.removeNotes(new String(line, charset)).stripTrailing();
+                if (text.toLowerCase(Locale.ENGLISH).contains(needle)) {
+                    matches.add(new Match(run.getNumber(), offset, text));
+                    if (matches.size() >= maxMatches) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Splits text into lowercase tokens.
+     */
+    static NavigableSet<String> tokenize(String text) {
+        TreeSet<String> tokens = new TreeSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_');
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                int length = i - start;
+                if (length >= MIN_TOKEN_LENGTH && length <= MAX_TOKEN_LENGTH) {
+                    tokens.add(text.substring(start, i).toLowerCase(Locale.ENGLISH));
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Writes the segment of a completed build.
+     * Postings are collected in memory up to {@link #MAX_BUFFER} bytes at a time,
+     * each batch being written to a sorted temporary run, and the runs are then merged into the segment.
+     */
+    static void index(Run<?, ?> run) throws IOException {
+        File segment = segment(run.getParent(), run.getNumber());
+        Path dir = segment.toPath().getParent();
+        Files.createDirectories(dir);
+        List<Path> runs = new ArrayList<>();
+        try {
+            Postings postings = new Postings();
+            Charset charset = run.getCharset();
+            try (InputStream in = new BufferedInputStream(run.getLogInputStream())) {
+                LineReader lines = new LineReader(in);
+                while (true) {
+                    long offset = lines.position;
+                    byte[] line = lines.next();
+                    if (line == null) {
+                        break;
+                    }
+                    for (String token : tokenize(ConsoleNote.removeNotes(new String(line, charset)))) {
+                        postings.add(token, offset);
+                    }
+                    if (postings.bytes > MAX_BUFFER) {
+                        runs.add(writeRun(dir, segment.getName(), postings));
+                        postings = new Postings();
+                    }
+                }
+            }
+            if (!runs.isEmpty() && !postings.tokens.isEmpty()) {
+                runs.add(writeRun(dir, segment.getName(), postings));
+            }
+            Path tmp = Files.createTempFile(dir, segment.getName(), ".tmp");
+            try {
+                int count;
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                    out.writeInt(VERSION);
+                    out.writeInt(0); // filled in below
+                    count = runs.isEmpty() ? write(out, postings) : merge(out, runs);
+                }
+                try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                    channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, count), Integer.BYTES);
+                }
+                Files.move(tmp, segment.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } finally {
+            for (Path r : runs) {
+                Files.deleteIfExists(r);
+            }
+        }
+    }
+
+    /**
+     * Postings of a part of a log, sorted by token.
+     */
+    private static final class Postings {
+        final TreeMap<String, Offsets> tokens = new TreeMap<>();
+        /**
+         * Rough number of bytes of heap used.
+         */
+        long bytes;
+
+        void add(String token, long offset) {
+            Offsets offsets = tokens.get(token);
+            if (offsets == null) {
+                offsets = new Offsets();
+                tokens.put(token, offsets);
+                bytes += 128 + 2L * token.length();
+            }
+            if (offsets.add(offset)) {
+                bytes += Long.BYTES;
+            }
+        }
+    }
+
+    /**
+     * Offsets of the lines containing one token, in increasing order, until there are more than {@link #MAX_POSTINGS}.
+     */
+    private static final class Offsets {
+        private long[] values = new long[4];
+        private int size;
+
+        /**
+         * @return whether the offset was kept
+         */
+        boolean add(long offset) {
+            if (values == null) {
+                return false;
+            }
+            if (size == MAX_POSTINGS) {
+                values = null; // too common to be worth recording
+                return false;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = offset;
+            return true;
+        }
+
+        void saturate() {
+            values = null;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            if (values == null) {
+                out.writeInt(-1);
+                return;
+            }
+            out.writeInt(size);
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                writeVarLong(out, values[i] - previous);
+                previous = values[i];
+            }
+        }
+    }
+
+    /**
+     * Writes entries in the segment format.
+     * @return the number of entries
+     */
+    private static int write(DataOutputStream out, Postings postings) throws IOException {
+        for (Map.Entry<String, Offsets> entry : postings.tokens.entrySet()) {
+            out.writeUTF(entry.getKey());
+            entry.getValue().write(out);
+        }
+        return postings.tokens.size();
+    }
+
+    private static Path writeRun(Path dir, String name, Postings postings) throws IOException {
+        Path run = Files.createTempFile(dir, name, ".run");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+            write(out, postings);
+        } catch (IOException | RuntimeException x) {
+            Files.deleteIfExists(run);
+            throw x;
+        }
+        return run;
+    }
+
+    /**
+     * Merges sorted runs, concatenating the offsets of tokens found in several of them.
+     * Runs cover successive parts of the log, so offsets stay in increasing order.
+     * @return the number of entries written
+     */
+    private static int merge(DataOutputStream out, List<Path> runs) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Comparator.comparing((RunReader r) -> r.token).thenComparingInt(r -> r.index));
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run, readers.size());
+                readers.add(reader);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+            int count = 0;
+            while (!queue.isEmpty()) {
+                String token = queue.peek().token;
+                Offsets merged = new Offsets();
+                while (!queue.isEmpty() && queue.peek().token.equals(token)) {
+                    RunReader reader = queue.poll();
+                    if (reader.offsets == null) {
+                        merged.saturate();
+                    } else {
+                        for (long offset : reader.offsets) {
+                            merged.add(offset);
+                        }
+                    }
+                    if (reader.advance()) {
+                        queue.add(reader);
+                    }
+                }
+                out.writeUTF(token);
+                merged.write(out);
+                count++;
+            }
+            return count;
+        } finally {
+            for (RunReader reader : readers) {
+                reader.in.close();
+            }
+        }
+    }
+
+    private static final class RunReader {
+        final DataInputStream in;
+        final int index;
+        String token;
+        long[] offsets;
+
+        RunReader(Path run, int index) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run)));
+            this.index = index;
+        }
+
+        boolean advance() throws IOException {
+            try {
+                token = in.readUTF();
+            } catch (EOFException x) {
+                return false;
+            }
+            int size = in.readInt();
+            if (size < 0) {
+                offsets = null;
+            } else {
+                offsets = new long[size];
+                long offset = 0;
+                for (int j = 0; j < size; j++) {
+                    offset += readVarLong(in);
+                    offsets[j] = offset;
+                }
+            }
+            return true;
+        }
+    }
+
+    static void delete(Run<?, ?> run) throws IOException {
+        Files.deleteIfExists(segment(run.getParent(), run.getNumber()).toPath());
+    }
+
+    private static File segment(Job<?, ?> job, int number) {
+        return new File(new File(job.getRootDir(), DIR), number + SUFFIX);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Reads lines as bytes, keeping track of offsets.
+     */
+    private static final class LineReader {
+        private final InputStream in;
+        private final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        long position;
+
+        LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        void skipTo(long offset) throws IOException {
+            while (position < offset) {
+                long skipped = in.skip(offset - position);
+                if (skipped <= 0) {
+                    if (in.read() < 0) {
+                        return;
+                    }
+                    skipped = 1;
+                }
+                position += skipped;
+            }
+        }
+
+        /**
+         * @return the next line including its terminator (cut to {@link #MAX_LINE_LENGTH}), or null at the end
+         */
+        byte[] next() throws IOException {
+            buf.reset();
+            int b;
+            while ((b = in.read()) >= 0) {
+                position++;
+                if (buf.size() < MAX_LINE_LENGTH) {
+                    buf.write(b);
+                }
+                if (b == '\n') {
+                    break;
+                }
+            }
+            return b < 0 && buf.size() == 0 ? null : buf.toByteArray();
+        }
+    }
+
+    @Extension
+    public static final class Listener extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onFinalized(Run<?, ?> run) {
+            if (!ENABLED) {
+                return;
+            }
+            indexer.submit(() -> {
+                try {
+                    index(run);
+                } catch (IOException | RuntimeException x) {
+                    LOGGER.log(Level.WARNING, "Failed to index the log of " + run, x);
+                }
+            });
+        }
+
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            try {
+                delete(run);
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "Failed to delete the log index of " + run, x);
+            }
+        }
+    }
+}
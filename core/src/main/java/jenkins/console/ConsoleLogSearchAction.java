@@ -0,0 +1,104 @@
+package jenkins.console;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Job;
+import hudson.util.HttpResponses;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import jenkins.model.TransientActionFactory;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Searches the {@link ConsoleLogIndex} of a job, from a page or as JSON from {@code search?q=…&builds=…}.
+ */
+@Restricted(NoExternalUse.class)
+public class ConsoleLogSearchAction implements Action {
+
+    /**
+     * Default number of recent builds searched.
+     */
+    public static final int DEFAULT_BUILDS = 500;
+
+    private static final int MAX_MATCHES = 1000;
+
+    private final Job<?, ?> job;
+
+    ConsoleLogSearchAction(Job<?, ?> job) {
+        this.job = job;
+    }
+
+    public Job<?, ?> getJob() {
+        return job;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "symbol-search";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.consoleLogSearchDisplayName();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "logSearch";
+    }
+
+    /**
+     * Used from {@code index.jelly}.
+     * @param builds number of recent builds to search, or null for {@link #DEFAULT_BUILDS}
+     */
+    public List<ConsoleLogIndex.Match> search(String q, String builds) throws IOException {
+        if (q == null || q.isBlank()) {
+            return Collections.emptyList();
+        }
+        int max = DEFAULT_BUILDS;
+        if (builds != null && !builds.isEmpty()) {
+            try {
+                max = Integer.parseInt(builds);
+            } catch (NumberFormatException x) {
+                // use the default
+            }
+        }
+        return ConsoleLogIndex.search(job, q, max > 0 ? max : DEFAULT_BUILDS, MAX_MATCHES);
+    }
+
+    public HttpResponse doSearch(@QueryParameter String q, @QueryParameter String builds) throws IOException {
+        JSONArray matches = new JSONArray();
+        for (ConsoleLogIndex.Match match : search(q, builds)) {
+            JSONObject o = new JSONObject();
+            o.put("build", match.getBuild());
+            o.put("offset", match.getOffset());
+            o.put("line", match.getLine());
+            matches.add(o);
+        }
+        return HttpResponses.okJSON(matches);
+    }
+
+    @Extension
+    public static final class Factory extends TransientActionFactory<Job> {
+
+        @Override
+        public Class<Job> type() {
+            return Job.class;
+        }
+
+        @NonNull
+        @Override
+        public Collection<? extends Action> createFor(@NonNull Job target) {
+            return ConsoleLogIndex.isEnabled() ? Set.of(new ConsoleLogSearchAction(target)) : Collections.emptySet();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package jenkins.console;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import hudson.Util;
+import hudson.console.PlainTextConsoleOutputStream;
+import hudson.model.Run;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import javax.servlet.http.HttpServletResponse;
+import jenkins.util.Downloads;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Serves the plain text log of a completed build with support for conditional and range requests.
+ *
+ * <p>
+ * The plain text is the log with {@linkplain hudson.console.ConsoleNote console notes} stripped,
+ * so its length is only known after reading the whole log once; this is remembered per log file, along with
+ * whether the log contains notes at all. The first download of a log is streamed without a length, and measures it;
+ * only a range request for a log not measured yet reads it an extra time first.
+ * Logs without notes are served straight from the file,
+ * using {@link FileChannel#transferTo} for an uncompressed {@code log}, or as is with {@code Content-Encoding: gzip}
+ * for a {@code log.gz} when the client accepts it and asks for the whole log.
+ * Logs with notes are streamed through {@link PlainTextConsoleOutputStream}, stopping at the end of the requested range.
+ */
+@Restricted(NoExternalUse.class)
+public final class ConsoleTextDownload {
+
+    /**
+     * Plain text length and raw length of recently served logs, by entity tag.
+     */
+    private static final Cache<String, Lengths> lengths = CacheBuilder.newBuilder().maximumSize(1000).build();
+
+    private static final class Lengths {
+        final long plain;
+        final long raw;
+
+        Lengths(long plain, long raw) {
+            this.plain = plain;
+            this.raw = raw;
+        }
+
+        boolean hasNotes() {
+            return plain != raw;
+        }
+    }
+
+    private ConsoleTextDownload() {}
+
+    /**
+     * Serves the log of a completed build.
+     */
+    public static void serve(Run<?, ?> run, StaplerRequest req, StaplerResponse rsp) throws IOException {
+        File log = run.getLogFile();
+        if (!log.isFile()) {
+            rsp.setContentType("text/plain;charset=UTF-8");
+            try (InputStream in = run.getLogInputStream()) {
+                in.transferTo(rsp.getOutputStream());
+            }
+            return;
+        }
+        boolean gz = log.getName().endsWith(".gz");
+        String etag = '"' + Util.getDigestOf(log.getAbsolutePath() + ':' + log.length() + ':' + log.lastModified()) + '"';
+        // the gzip encoded log is a different representation, so it gets a different tag
+        String gzEtag = etag.substring(0, etag.length() - 1) + "-gzip\"";
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (Downloads.matches(ifNoneMatch, etag) || gz && Downloads.matches(ifNoneMatch, gzEtag)) {
+            rsp.setHeader("ETag", etag);
+            rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        String range = req.getHeader("Range");
+        String ifRange = req.getHeader("If-Range");
+        boolean ranged = range != null && (ifRange == null || ifRange.equals(etag));
+        Lengths l = lengths.getIfPresent(etag);
+        if (l == null && ranged) {
+            l = strip(run, OutputStream.nullOutputStream());
+            lengths.put(etag, l);
+        }
+        rsp.setContentType("text/plain;charset=UTF-8");
+        rsp.setHeader("Accept-Ranges", "bytes");
+        if (gz) {
+            rsp.setHeader("Vary", "Accept-Encoding");
+        }
+        if (l == null) {
+            rsp.setHeader("ETag", etag);
+            lengths.put(etag, strip(run, rsp.getOutputStream()));
+            return;
+        }
+        if (gz && !l.hasNotes() && range == null && acceptsGzip(req)) {
+            rsp.setHeader("ETag", gzEtag);
+            rsp.setHeader("Content-Encoding", "gzip");
+            rsp.setContentLengthLong(log.length());
+            transfer(log, 0, log.length(), rsp.getOutputStream());
+            return;
+        }
+        rsp.setHeader("ETag", etag);
+
+        long first = 0;
+        long last = l.plain - 1;
+        if (ranged) {
+            long[] r = Downloads.parseRange(range, l.plain);
+            if (r == null) {
+                rsp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                rsp.setHeader("Content-Range", "bytes */" + l.plain);
+                return;
+            }
+            if (r.length == 2) {
+                first = r[0];
+                last = r[1];
+                rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                rsp.setHeader("Content-Range", "bytes " + first + "-" + last + "/" + l.plain);
+            }
+        }
+        long count = last - first + 1;
+        rsp.setContentLengthLong(count);
+        if (count <= 0) {
+            return;
+        }
+        OutputStream out = rsp.getOutputStream();
+        if (!l.hasNotes() && !gz) {
+            transfer(log, first, count, out);
+            return;
+        }
+        try (InputStream in = run.getLogInputStream()) {
+            if (l.hasNotes()) {
+                Downloads.Window window = new Downloads.Window(out, first, count, false);
+                PlainTextConsoleOutputStream plain = new PlainTextConsoleOutputStream(window);
+                byte[] buf = new byte[8192];
+                int len;
+                while (!window.isDone() && (len = in.read(buf)) >= 0) {
+                    plain.write(buf, 0, len);
+                }
+                if (!window.isDone()) {
+                    plain.forceEol();
+                }
+                plain.flush();
+            } else {
+                in.skipNBytes(first);
+                Downloads.copy(in, out, count);
+            }
+        }
+    }
+
+    /**
+     * Writes the plain text of the whole log, measuring it.
+     */
+    private static Lengths strip(Run<?, ?> run, OutputStream out) throws IOException {
+        Downloads.Counter plain = new Downloads.Counter(out);
+        PlainTextConsoleOutputStream stripped = new PlainTextConsoleOutputStream(plain);
+        long raw = 0;
+        try (InputStream in = run.getLogInputStream()) {
+            byte[] buf = new byte[8192];
+            int len;
+            while ((len = in.read(buf)) >= 0) {
+                stripped.write(buf, 0, len);
+                raw += len;
+            }
+        }
+        stripped.forceEol();
+        stripped.flush();
+        return new Lengths(plain.getCount(), raw);
+    }
+
+    private static boolean acceptsGzip(StaplerRequest req) {
+        String accept = req.getHeader("Accept-Encoding");
+        if (accept == null) {
+            return false;
+        }
+        for (String coding : accept.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private static void transfer(File file, long position, long count, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Downloads.transfer(channel, position, count, out);
+        }
+    }
+}
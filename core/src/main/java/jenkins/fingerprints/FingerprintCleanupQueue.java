@@ -0,0 +1,306 @@
+package jenkins.fingerprints;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Fingerprint;
+import hudson.model.FingerprintCleanupThread;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.tasks.Fingerprinter;
+import hudson.util.AtomicFileWriter;
+import hudson.util.LogTaskListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Cleans up the fingerprints used by builds shortly after these get deleted,
+ * so that {@link FingerprintCleanupThread} only needs to go through all fingerprints once in a while.
+ *
+ * <p>
+ * The {@link Fingerprinter.FingerprintAction} of each deleted build lists the fingerprints it used.
+ * When a whole job is deleted, these are collected before its files go away:
+ * for builds which have not been loaded, the action is found in {@code build.xml} without unmarshalling the build.
+ * Only these fingerprints are then loaded and {@linkplain FingerprintStorage#cleanFingerprint cleaned up}.
+ * Their IDs are appended to {@code fingerprint-cleanup.txt} in {@code JENKINS_HOME} until then,
+ * so that the cleanup is resumed after a restart.
+ *
+ * <p>
+ * Fingerprints recorded by other means, such as by plugins with their own actions, are left to the full scan.
+ */
+@Restricted(NoExternalUse.class)
+public final class FingerprintCleanupQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(FingerprintCleanupQueue.class.getName());
+
+    static final String NAME = "fingerprint-cleanup.txt";
+
+    /**
+     * Whether to clean up the fingerprints used by builds when these get deleted.
+     */
+    public static /* non-final for Groovy */ boolean ENABLED = SystemProperties.getBoolean(FingerprintCleanupQueue.class.getName() + ".enabled", true);
+
+    /**
+     * Seconds to wait after a deletion, so that the fingerprints of builds deleted together are processed together.
+     */
+    public static /* non-final for Groovy */ int DELAY = SystemProperties.getInteger(FingerprintCleanupQueue.class.getName() + ".delay", 60);
+
+    /**
+     * IDs of fingerprints to clean up, guarded by the class.
+     */
+    private static final Set<String> pending = new LinkedHashSet<>();
+
+    private static boolean scheduled;
+
+    private static final Pattern BUILD_NUMBER = Pattern.compile("[0-9]+");
+
+    /**
+     * How XStream names {@link Fingerprinter.FingerprintAction} in {@code build.xml}.
+     */
+    private static final String FINGERPRINT_ACTION = "hudson.tasks.Fingerprinter_-FingerprintAction";
+
+    private FingerprintCleanupQueue() {}
+
+    /**
+     * Collects the fingerprints used by builds of a job about to be deleted.
+     * @param loaded those builds which are loaded anyway; the others are only read from {@code build.xml}, as loading them would slow down the deletion
+     * @param buildDir where the builds of the job are
+     * @return the IDs to pass to {@link #onDeleted} once the job is actually deleted
+     */
+    public static @NonNull Collection<String> onDeleting(@NonNull Collection<? extends Run<?, ?>> loaded, @NonNull File buildDir) {
+        if (!isEnabled()) {
+            return Collections.emptySet();
+        }
+        Set<String> ids = new LinkedHashSet<>();
+        Set<String> numbers = new HashSet<>();
+        for (Run<?, ?> r : loaded) {
+            collect(r, ids);
+            numbers.add(Integer.toString(r.getNumber()));
+        }
+        File[] dirs = buildDir.listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                if (!BUILD_NUMBER.matcher(dir.getName()).matches() || numbers.contains(dir.getName())) {
+                    continue;
+                }
+                File xml = new File(dir, "build.xml");
+                if (!xml.isFile()) {
+                    continue;
+                }
+                try {
+                    collect(xml, ids);
+                } catch (IOException x) {
+                    LOGGER.log(Level.WARNING, "Failed to read the fingerprints used by " + dir, x);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Queues the fingerprints used by builds of a deleted job for cleanup.
+     * @param ids as returned by {@link #onDeleting}
+     */
+    public static void onDeleted(@NonNull Collection<String> ids) {
+        add(ids);
+    }
+
+    private static void collect(Run<?, ?> r, Collection<String> ids) {
+        Fingerprinter.FingerprintAction action = r.getAction(Fingerprinter.FingerprintAction.class);
+        if (action != null) {
+            ids.addAll(action.getRecords().values());
+        }
+    }
+
+    /**
+     * Reads the fingerprints recorded by a build which has not been loaded, stopping after its {@link Fingerprinter.FingerprintAction}.
+     */
+    static void collect(File buildXml, Collection<String> ids) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        try (InputStream in = Files.newInputStream(buildXml.toPath())) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                boolean inAction = false;
+                List<String> entry = null;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if (name.equals(FINGERPRINT_ACTION)) {
+                            inAction = true;
+                        } else if (inAction && name.equals("entry")) {
+                            entry = new ArrayList<>(2);
+                        } else if (entry != null) {
+                            // file name, then fingerprint ID
+                            entry.add(reader.getElementText());
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && inAction) {
+                        String name = reader.getLocalName();
+                        if (name.equals(FINGERPRINT_ACTION)) {
+                            return;
+                        } else if (name.equals("entry") && entry != null) {
+                            if (entry.size() == 2) {
+                                ids.add(entry.get(1).trim());
+                            }
+                            entry = null;
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException x) {
+            throw new IOException(x);
+        }
+    }
+
+    private static boolean isEnabled() {
+        return ENABLED && !GlobalFingerprintConfiguration.get().isFingerprintCleanupDisabled();
+    }
+
+    private static File file() {
+        return new File(Jenkins.get().getRootDir(), NAME);
+    }
+
+    static synchronized void add(Collection<String> ids) {
+        List<String> added = new ArrayList<>();
+        for (String id : ids) {
+            if (pending.add(id)) {
+                added.add(id);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        try {
+            Files.write(file().toPath(), added, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException x) {
+            LOGGER.log(Level.WARNING, "Failed to record fingerprints to clean up", x);
+        }
+        schedule();
+    }
+
+    private static synchronized void schedule() {
+        if (!scheduled && !pending.isEmpty()) {
+            scheduled = true;
+            Timer.get().schedule(FingerprintCleanupQueue::process, DELAY, TimeUnit.SECONDS);
+        }
+    }
+
+    static void process() {
+        List<String> ids;
+        synchronized (FingerprintCleanupQueue.class) {
+            scheduled = false;
+            ids = new ArrayList<>(pending);
+        }
+        if (isEnabled()) {
+            TaskListener listener = new LogTaskListener(LOGGER, Level.FINE);
+            try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+                FingerprintStorage storage = FingerprintStorage.get();
+                for (String id : ids) {
+                    try {
+                        Fingerprint fp = Fingerprint.load(id);
+                        if (fp != null) {
+                            storage.cleanFingerprint(fp, listener);
+                        }
+                    } catch (IOException x) {
+                        LOGGER.log(Level.WARNING, "Failed to clean up fingerprint " + id, x);
+                    }
+                }
+            }
+        }
+        LOGGER.log(Level.FINE, "Processed {0} fingerprints of deleted builds", ids.size());
+        synchronized (FingerprintCleanupQueue.class) {
+            ids.forEach(pending::remove);
+            checkpoint();
+        }
+    }
+
+    /**
+     * Rewrites the file with the IDs added while processing, or deletes it if there are none.
+     */
+    private static void checkpoint() {
+        File file = file();
+        try {
+            if (pending.isEmpty()) {
+                Files.deleteIfExists(file.toPath());
+                return;
+            }
+            AtomicFileWriter w = new AtomicFileWriter(file.toPath(), StandardCharsets.UTF_8);
+            try {
+                for (String id : pending) {
+                    w.write(id);
+                    w.write('\n');
+                }
+                w.commit();
+            } finally {
+                w.abort();
+            }
+        } catch (IOException x) {
+            LOGGER.log(Level.WARNING, "Failed to write " + file, x);
+        }
+    }
+
+    @Initializer(after = InitMilestone.JOB_CONFIG_ADAPTED)
+    public static void resume() throws IOException {
+        File file = file();
+        if (!file.isFile()) {
+            return;
+        }
+        List<String> ids = new ArrayList<>();
+        for (String id : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (!id.isEmpty()) {
+                ids.add(id);
+            }
+        }
+        LOGGER.log(Level.FINE, "Resuming the cleanup of {0} fingerprints", ids.size());
+        synchronized (FingerprintCleanupQueue.class) {
+            pending.addAll(ids);
+            schedule();
+        }
+    }
+
+    @Extension
+    public static final class RunDeletionListener extends RunListener<Run<?, ?>> {
+        @Override
+        public void onDeleted(Run<?, ?> r) {
+            if (!isEnabled()) {
+                return;
+            }
+            List<String> ids = new ArrayList<>();
+            collect(r, ids);
+            add(ids);
+        }
+    }
+}
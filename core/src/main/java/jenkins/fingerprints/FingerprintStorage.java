@@ -33,6 +33,7 @@ import hudson.model.AbstractDescribableImpl;
 import hudson.model.Fingerprint;
 import hudson.model.TaskListener;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Date;
 import jenkins.model.FingerprintFacet;
 import jenkins.model.Jenkins;
@@ -71,6 +72,19 @@ public abstract class FingerprintStorage extends AbstractDescribableImpl<Fingerp
      */
     public abstract void save(Fingerprint fp) throws IOException;
 
+    /**
+     * Saves several fingerprints at once, as done by {@link Fingerprint#batch}.
+     * The default implementation saves them one by one; storages able to group writes should override it.
+     *
+     * @throws IOException Save error
+     * @since TODO
+     */
+    public void saveAll(@NonNull Collection<Fingerprint> fingerprints) throws IOException {
+        for (Fingerprint fp : fingerprints) {
+            save(fp);
+        }
+    }
+
     /**
      * Returns the Fingerprint with the given unique ID.
      * The unique ID for a fingerprint is defined by {@link Fingerprint#getHashString()}.
@@ -0,0 +1,274 @@
+package jenkins.fingerprints;
+
+import com.thoughtworks.xstream.XStreamException;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.Functions;
+import hudson.Util;
+import hudson.init.Terminator;
+import hudson.model.Fingerprint;
+import hudson.model.TaskListener;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import jenkins.model.Jenkins;
+import jenkins.util.io.Journal;
+import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Keeps all fingerprints in a single {@link Journal}, {@code fingerprints.journal} in {@code JENKINS_HOME},
+ * instead of one file each.
+ *
+ * <p>
+ * Fingerprints are stored in the same XML form as by {@link FileFingerprintStorage}.
+ * Those still in the {@code fingerprints} directory are moved into the journal when first loaded,
+ * and all remaining ones by the next {@linkplain #iterateAndCleanupFingerprints cleanup},
+ * which then goes through the journal in order of fingerprint ID.
+ * The index of the journal takes some heap for each fingerprint.
+ */
+@Symbol("journalFingerprintStorage")
+@Restricted(NoExternalUse.class)
+@Extension(ordinal = -200)
+public class JournalFingerprintStorage extends FingerprintStorage {
+
+    private static final Logger LOGGER = Logger.getLogger(JournalFingerprintStorage.class.getName());
+
+    static final String NAME = "fingerprints.journal";
+
+    /**
+     * Number of fingerprints read or written at once when iterating.
+     */
+    private static final int BATCH = 1000;
+
+    private static final Pattern FINGERPRINT_FILE_PATTERN = Pattern.compile("[0-9a-f]{28}\\.xml");
+
+    private static Journal journal;
+
+    private static File journalRoot;
+
+    @DataBoundConstructor
+    public JournalFingerprintStorage() {}
+
+    /**
+     * Opens the journal of the current {@code JENKINS_HOME} if necessary.
+     */
+    private static synchronized Journal journal() throws IOException {
+        File root = Jenkins.get().getRootDir();
+        if (journal == null || !root.equals(journalRoot)) {
+            if (journal != null) {
+                journal.close();
+            }
+            journal = null;
+            journal = new Journal(new File(root, NAME));
+            journalRoot = root;
+        }
+        return journal;
+    }
+
+    @Terminator
+    public static synchronized void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    @Override
+    public void save(Fingerprint fp) throws IOException {
+        saveAll(Collections.singleton(fp));
+    }
+
+    /**
+     * Saves several fingerprints in a single commit.
+     */
+    @Override
+    public void saveAll(@NonNull Collection<Fingerprint> fingerprints) throws IOException {
+        Map<String, byte[]> writes = new LinkedHashMap<>();
+        for (Fingerprint fp : fingerprints) {
+            synchronized (fp) {
+                writes.put(fp.getHashString(), toXml(fp));
+            }
+        }
+        journal().commit(writes, Collections.emptySet());
+    }
+
+    private static byte[] toXml(Fingerprint fp) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (Writer w = new OutputStreamWriter(baos, StandardCharsets.UTF_8)) {
+            w.write("<?xml version='1.1' encoding='UTF-8'?>\n");
+            Fingerprint.getXStream().toXML(fp, w);
+        }
+        return baos.toByteArray();
+    }
+
+    @Override
+    public @CheckForNull Fingerprint load(@NonNull String id) throws IOException {
+        byte[] data = journal().read(id);
+        if (data == null) {
+            return null;
+        }
+        try {
+            Object loaded = Fingerprint.getXStream().fromXML(new ByteArrayInputStream(data));
+            if (!(loaded instanceof Fingerprint f) || f.getPersistedFacets() == null) {
+                LOGGER.log(Level.WARNING, "Discarding malformed fingerprint {0}", id);
+                delete(id);
+                return null;
+            }
+            return f;
+        } catch (XStreamException | LinkageError x) {
+            LOGGER.log(Level.WARNING, "Discarding malformed fingerprint " + id, x);
+            delete(id);
+            return null;
+        }
+    }
+
+    @Override
+    public void delete(String id) throws IOException {
+        Journal j = journal();
+        if (j.read(id) != null) {
+            j.commit(Collections.emptyMap(), Collections.singleton(id));
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        return new File(Jenkins.get().getRootDir(), NAME).exists();
+    }
+
+    /**
+     * Moves any fingerprints left in the {@code fingerprints} directory into the journal,
+     * then cleans up all fingerprints in order, a batch at a time.
+     */
+    @Override
+    public void iterateAndCleanupFingerprints(TaskListener taskListener) {
+        Journal j;
+        try {
+            j = journal();
+            migrate(j, taskListener);
+        } catch (IOException e) {
+            Functions.printStackTrace(e, taskListener.error("Failed to open " + NAME));
+            return;
+        }
+
+        int numFingerprints = 0;
+        String after = null;
+        List<String> ids;
+        while (!(ids = j.keys(after, BATCH)).isEmpty()) {
+            for (String id : ids) {
+                try {
+                    Fingerprint fp = load(id);
+                    if (fp != null && cleanFingerprint(fp, taskListener)) {
+                        numFingerprints++;
+                    }
+                } catch (IOException e) {
+                    Functions.printStackTrace(e, taskListener.error("Failed to process " + id));
+                }
+            }
+            after = ids.get(ids.size() - 1);
+        }
+
+        try {
+            if (j.isWasteful()) {
+                j.compact(id -> true);
+            }
+        } catch (IOException e) {
+            Functions.printStackTrace(e, taskListener.error("Failed to compact " + NAME));
+        }
+        taskListener.getLogger().println("Cleaned up " + numFingerprints + " records");
+    }
+
+    /**
+     * Moves fingerprints from the layout of {@link FileFingerprintStorage} into the journal, a batch per commit.
+     */
+    private void migrate(Journal j, TaskListener taskListener) throws IOException {
+        File root = new File(Jenkins.get().getRootDir(), FileFingerprintStorage.FINGERPRINTS_DIR_NAME);
+        File[] dirs1 = root.listFiles(f -> f.isDirectory() && f.getName().length() == 2);
+        if (dirs1 == null) {
+            return;
+        }
+        int count = 0;
+        Map<String, byte[]> batch = new LinkedHashMap<>();
+        Map<String, File> batchFiles = new LinkedHashMap<>();
+        List<File> dirs = new ArrayList<>();
+        for (File dir1 : dirs1) {
+            File[] dirs2 = dir1.listFiles(f -> f.isDirectory() && f.getName().length() == 2);
+            for (File dir2 : dirs2 == null ? new File[0] : dirs2) {
+                File[] files = dir2.listFiles(f -> f.isFile() && FINGERPRINT_FILE_PATTERN.matcher(f.getName()).matches());
+                for (File file : files == null ? new File[0] : files) {
+                    String name = file.getName();
+                    String id = dir1.getName() + dir2.getName() + name.substring(0, name.length() - ".xml".length());
+                    // a fingerprint already in the journal was saved since, so the file is obsolete
+                    if (!j.contains(id)) {
+                        batch.put(id, Files.readAllBytes(file.toPath()));
+                    }
+                    batchFiles.put(id, file);
+                    if (batchFiles.size() == BATCH) {
+                        count += commit(j, batch, batchFiles);
+                    }
+                }
+                dirs.add(dir2);
+            }
+            dirs.add(dir1);
+        }
+        count += commit(j, batch, batchFiles);
+        for (File dir : dirs) {
+            deleteIfEmpty(dir);
+        }
+        deleteIfEmpty(root);
+        if (count > 0) {
+            taskListener.getLogger().println("Moved " + count + " fingerprints from " + root + " to " + NAME);
+        }
+    }
+
+    private static int commit(Journal j, Map<String, byte[]> batch, Map<String, File> batchFiles) throws IOException {
+        // skip any fingerprint saved since its file was read, as the file is then obsolete
+        int count = batch.isEmpty() ? 0 : j.commitAbsent(batch);
+        for (File file : batchFiles.values()) {
+            Files.deleteIfExists(Util.fileToPath(file));
+        }
+        batch.clear();
+        batchFiles.clear();
+        return count;
+    }
+
+    private static void deleteIfEmpty(File dir) {
+        try {
+            Files.deleteIfExists(dir.toPath());
+        } catch (DirectoryNotEmptyException x) {
+            // still in use
+        } catch (IOException x) {
+            LOGGER.log(Level.WARNING, null, x);
+        }
+    }
+
+    @Extension
+    public static class DescriptorImpl extends FingerprintStorageDescriptor {
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return Messages.JournalFingerprintStorage_DisplayName();
+        }
+
+    }
+
+}
@@ -0,0 +1,182 @@
+package jenkins.model;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import hudson.init.Terminator;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import jenkins.util.io.Journal;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Files archived by {@link ContentAddressedArtifactManager}, each stored once under the SHA-256 of its contents
+ * in {@code artifact-blobs} in {@code JENKINS_HOME}.
+ *
+ * <p>
+ * A {@link Journal} keeps the number of builds referring to each file, which gets deleted once none do.
+ * References are acquired before a file is looked up or added, so it cannot be deleted in between.
+ */
+@Restricted(NoExternalUse.class)
+public final class ArtifactBlobStore {
+
+    static final String NAME = "artifact-blobs";
+
+    private static ArtifactBlobStore instance;
+
+    private final File dir;
+
+    private final Journal refs;
+
+    private ArtifactBlobStore(File dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir.toPath());
+        refs = new Journal(new File(dir, "refs.journal"));
+        if (refs.isWasteful()) {
+            refs.compact(hash -> true);
+        }
+    }
+
+    /**
+     * Opens the store of the current {@code JENKINS_HOME} if necessary.
+     */
+    static synchronized @NonNull ArtifactBlobStore get() throws IOException {
+        File dir = new File(Jenkins.get().getRootDir(), NAME);
+        if (instance == null || !instance.dir.equals(dir)) {
+            if (instance != null) {
+                instance.refs.close();
+            }
+            instance = null;
+            instance = new ArtifactBlobStore(dir);
+        }
+        return instance;
+    }
+
+    /**
+     * Whether anything was ever archived in the current {@code JENKINS_HOME}.
+     */
+    static boolean exists() {
+        return new File(Jenkins.get().getRootDir(), NAME).isDirectory();
+    }
+
+    @Terminator
+    public static synchronized void close() throws IOException {
+        if (instance != null) {
+            instance.refs.close();
+            instance = null;
+        }
+    }
+
+    @NonNull File blob(@NonNull String hash) {
+        return new File(new File(dir, hash.substring(0, 2)), hash.substring(2));
+    }
+
+    boolean has(@NonNull String hash) {
+        return blob(hash).isFile();
+    }
+
+    /**
+     * Creates a directory in which to receive files before they are {@linkplain #put added}.
+     */
+    @NonNull File staging() throws IOException {
+        Path tmp = dir.toPath().resolve("tmp");
+        Files.createDirectories(tmp);
+        return Files.createTempDirectory(tmp, "archive").toFile();
+    }
+
+    synchronized void acquire(@NonNull Collection<String> hashes) throws IOException {
+        adjust(hashes, 1);
+    }
+
+    /**
+     * Releases references, deleting the files which are no longer referred to.
+     */
+    synchronized void release(@NonNull Collection<String> hashes) throws IOException {
+        for (String hash : adjust(hashes, -1)) {
+            Files.deleteIfExists(blob(hash).toPath());
+        }
+    }
+
+    /**
+     * @return the hashes no longer referred to
+     */
+    private List<String> adjust(Collection<String> hashes, int delta) throws IOException {
+        Map<String, byte[]> writes = new HashMap<>();
+        List<String> deletes = new ArrayList<>();
+        for (String hash : hashes) {
+            byte[] data = refs.read(hash);
+            long count = (data == null ? 0 : Long.parseLong(new String(data, StandardCharsets.US_ASCII))) + delta;
+            if (count > 0) {
+                writes.put(hash, Long.toString(count).getBytes(StandardCharsets.US_ASCII));
+            } else {
+                deletes.add(hash);
+            }
+        }
+        if (!writes.isEmpty() || !deletes.isEmpty()) {
+            refs.commit(writes, deletes);
+        }
+        return deletes;
+    }
+
+    /**
+     * Moves a received file into the store, unless it already has one with the same contents.
+     * The hash is computed here, so as not to trust whoever sent the file.
+     * @param acquired hashes the caller already acquired; that of this file is acquired and added unless among them
+     * @return the hash of the contents
+     */
+    @NonNull String put(@NonNull File received, @NonNull Set<String> acquired) throws IOException {
+        Path p = received.toPath();
+        if (!Files.isRegularFile(p, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException("Not a regular file: " + received);
+        }
+        String hash = hash(Files.newInputStream(p));
+        synchronized (this) {
+            if (acquired.add(hash)) {
+                acquire(Collections.singleton(hash));
+            }
+            Path target = blob(hash).toPath();
+            if (Files.exists(target)) {
+                Files.delete(p);
+            } else {
+                Files.createDirectories(target.getParent());
+                Files.move(p, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Computes the SHA-256 of a stream, closing it.
+     */
+    static @NonNull String hash(@NonNull InputStream in) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException x) {
+            throw new AssertionError(x);
+        }
+        try (in) {
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                digest.update(buf, 0, n);
+            }
+        }
+        return Util.toHexString(digest.digest());
+    }
+}
@@ -0,0 +1,111 @@
+package jenkins.model;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.AtomicFileWriter;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Lists the files archived by a build using {@link ContentAddressedArtifactManager}, by relative path.
+ *
+ * <p>
+ * Stored as one line per file, of the form {@code HASH LENGTH LASTMODIFIED PATH}.
+ */
+final class ArtifactManifest implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final class Entry implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * SHA-256 of the contents, in hexadecimal.
+         */
+        final @NonNull String hash;
+        final long length;
+        final long lastModified;
+
+        Entry(@NonNull String hash, long length, long lastModified) {
+            this.hash = hash;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Files by {@code /}-separated relative path.
+     */
+    final NavigableMap<String, Entry> entries;
+
+    ArtifactManifest() {
+        this(new TreeMap<>());
+    }
+
+    private ArtifactManifest(NavigableMap<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    ArtifactManifest copy() {
+        return new ArtifactManifest(new TreeMap<>(entries));
+    }
+
+    /**
+     * Gets the distinct hashes of all files.
+     */
+    Set<String> hashes() {
+        Set<String> hashes = new TreeSet<>();
+        for (Entry e : entries.values()) {
+            hashes.add(e.hash);
+        }
+        return hashes;
+    }
+
+    /**
+     * @return null if the file does not exist
+     */
+    static @CheckForNull ArtifactManifest load(@NonNull File file) throws IOException {
+        NavigableMap<String, Entry> entries = new TreeMap<>();
+        try (BufferedReader r = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                String[] fields = line.split(" ", 4);
+                if (fields.length != 4) {
+                    throw new IOException("Malformed line in " + file + ": " + line);
+                }
+                try {
+                    entries.put(fields[3], new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+                } catch (NumberFormatException x) {
+                    throw new IOException("Malformed line in " + file + ": " + line, x);
+                }
+            }
+        } catch (NoSuchFileException x) {
+            return null;
+        }
+        return new ArtifactManifest(entries);
+    }
+
+    void save(@NonNull File file) throws IOException {
+        AtomicFileWriter w = new AtomicFileWriter(file.toPath(), StandardCharsets.UTF_8);
+        try {
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                w.write(entry.hash + ' ' + entry.length + ' ' + entry.lastModified + ' ' + e.getKey() + '\n');
+            }
+            w.commit();
+        } finally {
+            w.abort();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package jenkins.model;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import jenkins.util.io.ConfigStorage;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Optionally lets startup read the configuration files of items, nodes and users
+ * from a single snapshot written during the previous run, rather than opening them one by one.
+ *
+ * <p>
+ * Once items are loaded, the {@code config.xml} of every item (including those in folders), node and user
+ * is compressed in the background into {@code config-snapshot.bin} in {@code JENKINS_HOME}, along with its size and modification time.
+ * On startup the snapshot is loaded before anything else is, and deleted so that it is only ever used once.
+ * {@link XmlFile} then takes the contents of a file from the snapshot if the file still has the same size and modification time,
+ * which only costs a {@code stat} rather than an open and a read; changed and new files are read from disk as usual.
+ * Files modified at or after the time the snapshot started being written are left out of it,
+ * since a rewrite of the same size within the granularity of modification times would not be noticed;
+ * that time is taken from the filesystem itself, as the modification time of the new snapshot file, so clock skew does not matter.
+ * What is left of the snapshot is dropped once all items are loaded.
+ *
+ * <p>
+ * Files are still parsed and unmarshalled as usual, since that is what runs the compatibility code of the classes involved;
+ * this mainly helps when {@code JENKINS_HOME} is on a network filesystem.
+ */
+@Restricted(NoExternalUse.class)
+public final class ConfigSnapshot {
+
+    private static final Logger LOGGER = Logger.getLogger(ConfigSnapshot.class.getName());
+
+    public static /* non-final for Groovy */ boolean ENABLED = SystemProperties.getBoolean(ConfigSnapshot.class.getName() + ".enabled");
+
+    static final String NAME = "config-snapshot.bin";
+
+    private static final int MAGIC = 0x4A43534E;
+
+    /**
+     * Snapshot entries not used yet, by absolute path, while starting up.
+     */
+    private static volatile Map<String, Entry> entries;
+
+    private static final class Entry {
+        final long lastModified;
+        final long size;
+        final byte[] compressed;
+
+        Entry(long lastModified, long size, byte[] compressed) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.compressed = compressed;
+        }
+    }
+
+    private ConfigSnapshot() {}
+
+    @Initializer(after = InitMilestone.PLUGINS_STARTED, before = InitMilestone.EXTENSIONS_AUGMENTED)
+    public static void load() {
+        Jenkins j = Jenkins.getInstanceOrNull();
+        if (!ENABLED || j == null || isStored()) {
+            return;
+        }
+        File root = j.getRootDir();
+        File file = new File(root, NAME);
+        if (!file.isFile()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Map<String, Entry> loaded = new ConcurrentHashMap<>();
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())), crc))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a configuration snapshot");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long lastModified = in.readLong();
+                long size = in.readLong();
+                byte[] compressed = new byte[in.readInt()];
+                in.readFully(compressed);
+                loaded.put(new File(root, path).getAbsolutePath(), new Entry(lastModified, size, compressed));
+            }
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("checksum mismatch");
+            }
+            entries = loaded;
+            LOGGER.log(Level.FINE, "Loaded {0} entries from {1} in {2}ms", new Object[] {count, file, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)});
+        } catch (IOException | RuntimeException x) {
+            LOGGER.log(Level.WARNING, "Ignoring " + file, x);
+        } finally {
+            try {
+                Files.delete(file.toPath());
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "Failed to delete " + file, x);
+            }
+        }
+    }
+
+    @Initializer(after = InitMilestone.JOB_CONFIG_ADAPTED)
+    public static void discard() {
+        Map<String, Entry> m = entries;
+        entries = null;
+        if (m != null && !m.isEmpty()) {
+            LOGGER.log(Level.FINE, "{0} snapshot entries were not used", m.size());
+        }
+    }
+
+    /**
+     * Gets the contents of a file from the snapshot, if it is still current.
+     * Each entry can only be taken once.
+     *
+     * @return null if the file has to be read from disk
+     */
+    public static @CheckForNull byte[] take(File file) {
+        Map<String, Entry> m = entries;
+        if (m == null) {
+            return null;
+        }
+        Entry e = m.remove(file.getAbsolutePath());
+        if (e == null) {
+            return null;
+        }
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            if (attrs.lastModifiedTime().toMillis() != e.lastModified || attrs.size() != e.size || e.size > Integer.MAX_VALUE) {
+                return null;
+            }
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(e.compressed);
+                byte[] data = new byte[(int) e.size];
+                int len = 0;
+                while (len < data.length && !inflater.finished()) {
+                    int n = inflater.inflate(data, len, data.length - len);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        return null;
+                    }
+                    len += n;
+                }
+                return len == data.length ? data : null;
+            } finally {
+                inflater.end();
+            }
+        } catch (IOException | DataFormatException | RuntimeException x) {
+            LOGGER.log(Level.FINE, "Not using snapshot of " + file, x);
+            return null;
+        }
+    }
+
+    @Initializer(after = InitMilestone.JOB_CONFIG_ADAPTED)
+    public static void writeLater() {
+        if (ENABLED) {
+            Timer.get().submit(ConfigSnapshot::write);
+        }
+    }
+
+    /**
+     * Writes the snapshot from the files now on disk.
+     * Files changed later are detected on the next startup by their size and modification time,
+     * except for files modified at or after the snapshot started, which are left out.
+     */
+    public static void write() {
+        Jenkins j = Jenkins.getInstanceOrNull();
+        if (!ENABLED || j == null || isStored()) {
+            return;
+        }
+        long start = System.nanoTime();
+        File root = j.getRootDir();
+        List<String> paths = new ArrayList<>();
+        for (String top : new String[] {"nodes", "users"}) {
+            File[] children = new File(root, top).listFiles(File::isDirectory);
+            if (children != null) {
+                for (File child : children) {
+                    paths.add(top + '/' + child.getName() + "/config.xml");
+                }
+            }
+        }
+        listJobs(paths, "jobs", new File(root, "jobs"));
+
+        File file = new File(root, NAME);
+        File tmp = new File(root, NAME + ".tmp");
+        int count = 0;
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            CRC32 crc = new CRC32();
+            try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp.toPath())), crc))) {
+                long started = Files.getLastModifiedTime(tmp.toPath()).toMillis();
+                List<byte[]> records = new ArrayList<>();
+                for (String path : paths) {
+                    byte[] record = record(root, path, started, deflater);
+                    if (record != null) {
+                        records.add(record);
+                    }
+                }
+                out.writeInt(MAGIC);
+                out.writeInt(records.size());
+                for (byte[] record : records) {
+                    out.write(record);
+                }
+                out.flush();
+                out.writeLong(crc.getValue());
+                count = records.size();
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.log(Level.FINE, "Wrote {0} entries to {1} in {2}ms", new Object[] {count, file, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)});
+        } catch (IOException | RuntimeException x) {
+            LOGGER.log(Level.WARNING, "Failed to write " + file, x);
+            try {
+                Files.deleteIfExists(tmp.toPath());
+            } catch (IOException x2) {
+                x.addSuppressed(x2);
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void listJobs(List<String> paths, String path, File jobs) {
+        File[] children = jobs.listFiles(File::isDirectory);
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String childPath = path + '/' + child.getName();
+            paths.add(childPath + "/config.xml");
+            listJobs(paths, childPath + "/jobs", new File(child, "jobs"));
+        }
+    }
+
+    /**
+     * Whether configuration files are kept in a {@link ConfigStorage}, including one which failed to open, stopping startup.
+     */
+    private static boolean isStored() {
+        try {
+            return ConfigStorage.get() != null;
+        } catch (IOException x) {
+            return true;
+        }
+    }
+
+    /**
+     * Encodes the snapshot entry of a file.
+     * @param started modification time of files which could still be rewritten without their modification time changing
+     * @return null if there is no such file, or it was modified too recently
+     */
+    private static @CheckForNull byte[] record(File root, String path, long started, Deflater deflater) throws IOException {
+        File f = new File(root, path);
+        BasicFileAttributes attrs;
+        byte[] data;
+        try {
+            attrs = Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+            data = Files.readAllBytes(f.toPath());
+        } catch (NoSuchFileException x) {
+            return null;
+        }
+        if (attrs.size() != data.length || attrs.lastModifiedTime().toMillis() >= started) {
+            return null; // being modified
+        }
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4 + 64);
+        byte[] buf = new byte[8192];
+        while (!deflater.finished()) {
+            compressed.write(buf, 0, deflater.deflate(buf));
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(compressed.size() + path.length() + 32);
+        DataOutputStream out = new DataOutputStream(baos);
+        out.writeUTF(path);
+        out.writeLong(attrs.lastModifiedTime().toMillis());
+        out.writeLong(attrs.size());
+        out.writeInt(compressed.size());
+        compressed.writeTo(out);
+        out.flush();
+        return baos.toByteArray();
+    }
+}
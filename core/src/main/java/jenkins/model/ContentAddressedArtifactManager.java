@@ -0,0 +1,436 @@
+package jenkins.model;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.BuildListener;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.remoting.VirtualChannel;
+import hudson.util.DirScanner;
+import hudson.util.FileVisitor;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.util.SystemProperties;
+import jenkins.util.VirtualFile;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Artifact manager which stores each distinct file once in an {@link ArtifactBlobStore},
+ * with a manifest in each build directory listing which files the build archived.
+ *
+ * <p>
+ * When archiving, the agent first computes the SHA-256 of each file,
+ * and only those whose contents were not archived by this build or one of the {@link #RECENT_BUILDS} builds of the same job
+ * before it get transferred.
+ * So builds archiving mostly the same files as previous ones transfer and store little.
+ * Files archived by other jobs are transferred again even though the store has them,
+ * so that an agent cannot obtain a file it has no access to just by claiming its hash;
+ * the controller computes the hash of whatever it receives again, and stores it once under that.
+ * Symbolic links are archived as the files they point to.
+ */
+@Restricted(NoExternalUse.class)
+public class ContentAddressedArtifactManager extends ArtifactManager {
+
+    private static final Logger LOGGER = Logger.getLogger(ContentAddressedArtifactManager.class.getName());
+
+    static final String MANIFEST = "archive.manifest";
+
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+
+    /**
+     * Number of previous builds of the same job whose files the agent need not transfer again.
+     */
+    static /* non-final for Groovy */ int RECENT_BUILDS = SystemProperties.getInteger(ContentAddressedArtifactManager.class.getName() + ".recentBuilds", 10);
+
+    private transient Run<?, ?> build;
+
+    public ContentAddressedArtifactManager(Run<?, ?> build) {
+        onLoad(build);
+    }
+
+    @Override public void onLoad(@NonNull Run<?, ?> build) {
+        this.build = build;
+    }
+
+    private File manifestFile() {
+        return new File(build.getRootDir(), MANIFEST);
+    }
+
+    @Override public void archive(FilePath workspace, Launcher launcher, BuildListener listener, Map<String, String> artifacts) throws IOException, InterruptedException {
+        for (String path : artifacts.keySet()) {
+            if (path.indexOf('\n') != -1 || path.indexOf('\r') != -1) {
+                throw new IOException("Cannot archive " + path + " as its name contains a line break");
+            }
+        }
+        Map<String, ArtifactManifest.Entry> hashed = workspace.act(new Hash(artifacts));
+        for (ArtifactManifest.Entry entry : hashed.values()) {
+            if (!HASH.matcher(entry.hash).matches()) {
+                throw new IOException("Unexpected hash " + entry.hash);
+            }
+        }
+        ArtifactBlobStore store = ArtifactBlobStore.get();
+        synchronized (this) {
+            ArtifactManifest old = ArtifactManifest.load(manifestFile());
+            Set<String> oldHashes = old == null ? Set.of() : old.hashes();
+            ArtifactManifest updated = old == null ? new ArtifactManifest() : old.copy();
+            updated.entries.putAll(hashed);
+
+            // referring to the files first, so that they do not get deleted meanwhile
+            Set<String> acquired = new HashSet<>(updated.hashes());
+            acquired.removeAll(oldHashes);
+            store.acquire(acquired);
+            boolean success = false;
+            try {
+                Set<String> known = new HashSet<>(oldHashes);
+                known.addAll(recentlyArchived());
+                Map<String, String> missing = new LinkedHashMap<>();
+                for (Map.Entry<String, ArtifactManifest.Entry> e : hashed.entrySet()) {
+                    String hash = e.getValue().hash;
+                    if (!known.contains(hash) || !store.has(hash)) {
+                        missing.putIfAbsent(hash, artifacts.get(e.getKey()));
+                    }
+                }
+                if (!missing.isEmpty()) {
+                    transfer(workspace, store, missing, hashed, updated, acquired);
+                }
+                LOGGER.log(Level.FINE, "transferred {0} of {1} files archived by {2}", new Object[] {missing.size(), artifacts.size(), build});
+                updated.save(manifestFile());
+                success = true;
+            } finally {
+                if (!success) {
+                    store.release(acquired);
+                }
+            }
+            // no longer referred to, such as hashes files were expected to have but did not when transferred
+            Set<String> unused = new HashSet<>(oldHashes);
+            unused.addAll(acquired);
+            unused.removeAll(updated.hashes());
+            store.release(unused);
+        }
+    }
+
+    /**
+     * Reads which files were archived by the builds of the same job just before this one.
+     */
+    private Set<String> recentlyArchived() {
+        File[] dirs = build.getParent().getBuildDir().listFiles(File::isDirectory);
+        if (dirs == null || RECENT_BUILDS <= 0) {
+            return Set.of();
+        }
+        int number = build.getNumber();
+        TreeMap<Integer, File> previous = new TreeMap<>();
+        for (File dir : dirs) {
+            int n;
+            try {
+                n = Integer.parseInt(dir.getName());
+            } catch (NumberFormatException x) {
+                continue;
+            }
+            if (n < number) {
+                previous.put(n, dir);
+                if (previous.size() > RECENT_BUILDS) {
+                    previous.pollFirstEntry();
+                }
+            }
+        }
+        Set<String> hashes = new HashSet<>();
+        for (File dir : previous.values()) {
+            try {
+                ArtifactManifest manifest = ArtifactManifest.load(new File(dir, MANIFEST));
+                if (manifest != null) {
+                    hashes.addAll(manifest.hashes());
+                }
+            } catch (IOException x) {
+                LOGGER.log(Level.FINE, "Failed to read artifacts archived in " + dir, x);
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Transfers files from the agent and adds them to the store.
+     * @param missing paths in the workspace by hash
+     */
+    private void transfer(FilePath workspace, ArtifactBlobStore store, Map<String, String> missing, Map<String, ArtifactManifest.Entry> hashed,
+                          ArtifactManifest updated, Set<String> acquired) throws IOException, InterruptedException {
+        File staging = store.staging();
+        try {
+            String description = "transfer of " + missing.size() + " files";
+            workspace.copyRecursiveTo(new Dereferencing(missing), new FilePath(staging), description, StandardArtifactManager.TAR_COMPRESSION);
+            for (String expected : missing.keySet()) {
+                String actual = store.put(new File(staging, expected), acquired);
+                if (!actual.equals(expected)) {
+                    // modified since hashed, so refer to what was actually received
+                    for (Map.Entry<String, ArtifactManifest.Entry> e : hashed.entrySet()) {
+                        ArtifactManifest.Entry entry = e.getValue();
+                        if (entry.hash.equals(expected)) {
+                            updated.entries.put(e.getKey(), new ArtifactManifest.Entry(actual, Files.size(store.blob(actual).toPath()), entry.lastModified));
+                        }
+                    }
+                }
+            }
+        } finally {
+            Util.deleteRecursive(staging);
+        }
+    }
+
+    @Override public boolean delete() throws IOException, InterruptedException {
+        return release(manifestFile());
+    }
+
+    private static synchronized boolean release(File manifestFile) throws IOException {
+        ArtifactManifest manifest = ArtifactManifest.load(manifestFile);
+        if (manifest == null) {
+            return false;
+        }
+        // deleting the manifest first, so that failing in between leaks references rather than releasing them twice
+        Files.delete(manifestFile.toPath());
+        ArtifactBlobStore.get().release(manifest.hashes());
+        return true;
+    }
+
+    /**
+     * Reads which files are archived by the builds of a job about to be deleted,
+     * as {@link #delete} is not called for each build then.
+     * Only reads the manifests, without loading the builds.
+     * @return the files archived by each build, to pass to {@link #onDeleted} once the builds are actually deleted
+     */
+    public static @NonNull List<Set<String>> onDeleting(Job<?, ?> job) {
+        if (!ArtifactBlobStore.exists()) {
+            return List.of();
+        }
+        File[] dirs = job.getBuildDir().listFiles(File::isDirectory);
+        if (dirs == null) {
+            return List.of();
+        }
+        List<Set<String>> archived = new ArrayList<>();
+        for (File dir : dirs) {
+            try {
+                ArtifactManifest manifest = ArtifactManifest.load(new File(dir, MANIFEST));
+                if (manifest != null) {
+                    archived.add(manifest.hashes());
+                }
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "Failed to read artifacts archived in " + dir, x);
+            }
+        }
+        return archived;
+    }
+
+    /**
+     * Releases the files archived by the builds of a deleted job.
+     * @param archived as returned by {@link #onDeleting}
+     */
+    public static void onDeleted(@NonNull List<Set<String>> archived) {
+        if (archived.isEmpty()) {
+            return;
+        }
+        ArtifactBlobStore store = ArtifactBlobStore.get();
+        // one build at a time, as each one holds a reference to every file it archived
+        for (Set<String> hashes : archived) {
+            try {
+                synchronized (ContentAddressedArtifactManager.class) {
+                    store.release(hashes);
+                }
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "Failed to release artifacts of a deleted build", x);
+            }
+        }
+    }
+
+    @Override public VirtualFile root() {
+        ArtifactManifest manifest;
+        try {
+            manifest = ArtifactManifest.load(manifestFile());
+        } catch (IOException x) {
+            LOGGER.log(Level.WARNING, "Failed to load artifacts of " + build, x);
+            manifest = null;
+        }
+        @SuppressWarnings("deprecation")
+        File dir = build.getArtifactsDir();
+        return new ManifestFile(dir, manifest == null ? new ArtifactManifest() : manifest, "");
+    }
+
+    /**
+     * Computes the hashes of files on the agent.
+     */
+    private static final class Hash extends MasterToSlaveFileCallable<Map<String, ArtifactManifest.Entry>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Map<String, String> artifacts;
+
+        Hash(Map<String, String> artifacts) {
+            this.artifacts = artifacts;
+        }
+
+        @Override
+        public Map<String, ArtifactManifest.Entry> invoke(File workspace, VirtualChannel channel) throws IOException {
+            Map<String, ArtifactManifest.Entry> hashed = new HashMap<>();
+            for (Map.Entry<String, String> e : artifacts.entrySet()) {
+                File f = new File(workspace, e.getValue());
+                String hash = ArtifactBlobStore.hash(Files.newInputStream(f.toPath()));
+                hashed.put(e.getKey(), new ArtifactManifest.Entry(hash, f.length(), f.lastModified()));
+            }
+            return hashed;
+        }
+    }
+
+    /**
+     * Sends files under the name of their hash, following symbolic links.
+     */
+    private static final class Dereferencing extends DirScanner {
+        private static final long serialVersionUID = 1L;
+
+        private final Map<String, String> files;
+
+        Dereferencing(Map<String, String> files) {
+            this.files = files;
+        }
+
+        @Override public void scan(File dir, FileVisitor visitor) throws IOException {
+            for (Map.Entry<String, String> e : files.entrySet()) {
+                visitor.visit(new File(dir, e.getValue()), e.getKey());
+            }
+        }
+    }
+
+    /**
+     * A file or directory in a manifest.
+     */
+    private static final class ManifestFile extends VirtualFile {
+        private static final long serialVersionUID = 1L;
+
+        private final File root;
+        private final ArtifactManifest manifest;
+        /**
+         * Relative path, or empty for the root directory.
+         */
+        private final String path;
+
+        ManifestFile(File root, ArtifactManifest manifest, String path) {
+            this.root = root;
+            this.manifest = manifest;
+            this.path = path;
+        }
+
+        private String prefix() {
+            return path.isEmpty() ? "" : path + '/';
+        }
+
+        @Override public @NonNull String getName() {
+            return path.isEmpty() ? root.getName() : path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        @Override public @NonNull URI toURI() {
+            return path.isEmpty() ? root.toURI() : new File(root, path).toURI();
+        }
+
+        @Override public VirtualFile getParent() {
+            if (path.isEmpty()) {
+                return VirtualFile.forFile(root.getParentFile());
+            }
+            int slash = path.lastIndexOf('/');
+            return new ManifestFile(root, manifest, slash == -1 ? "" : path.substring(0, slash));
+        }
+
+        @Override public boolean isDirectory() {
+            if (path.isEmpty()) {
+                return true;
+            }
+            String first = manifest.entries.ceilingKey(prefix());
+            return first != null && first.startsWith(prefix());
+        }
+
+        @Override public boolean isFile() {
+            return manifest.entries.containsKey(path);
+        }
+
+        @Override public boolean exists() {
+            return isFile() || isDirectory();
+        }
+
+        @Override public @NonNull VirtualFile[] list() {
+            String prefix = prefix();
+            List<VirtualFile> children = new ArrayList<>();
+            String key = manifest.entries.ceilingKey(prefix);
+            while (key != null && key.startsWith(prefix)) {
+                int slash = key.indexOf('/', prefix.length());
+                String child = slash == -1 ? key : key.substring(0, slash);
+                children.add(new ManifestFile(root, manifest, child));
+                // skip over the rest of a subdirectory, '0' following '/'
+                key = slash == -1 ? manifest.entries.higherKey(key) : manifest.entries.ceilingKey(child + '0');
+            }
+            return children.toArray(new VirtualFile[0]);
+        }
+
+        @Override public @NonNull VirtualFile child(@NonNull String name) {
+            return new ManifestFile(root, manifest, prefix() + name);
+        }
+
+        @Override public long length() {
+            ArtifactManifest.Entry entry = manifest.entries.get(path);
+            return entry == null ? 0 : entry.length;
+        }
+
+        @Override public long lastModified() {
+            ArtifactManifest.Entry entry = manifest.entries.get(path);
+            return entry == null ? 0 : entry.lastModified;
+        }
+
+        @Override public boolean canRead() {
+            return exists();
+        }
+
+        @Override public InputStream open() throws IOException {
+            ArtifactManifest.Entry entry = manifest.entries.get(path);
+            if (entry == null) {
+                throw new FileNotFoundException(path);
+            }
+            return Files.newInputStream(ArtifactBlobStore.get().blob(entry.hash).toPath());
+        }
+
+        @Override public FileChannel openChannel(OpenOption... openOptions) throws IOException {
+            ArtifactManifest.Entry entry = manifest.entries.get(path);
+            if (entry == null) {
+                throw new FileNotFoundException(path);
+            }
+            return FileChannel.open(ArtifactBlobStore.get().blob(entry.hash).toPath(), StandardOpenOption.READ);
+        }
+
+        @Override public boolean supportIsDescendant() {
+            return true;
+        }
+
+        @Override public boolean isDescendant(String childRelativePath) {
+            // there are no symbolic links, only names which might go up
+            for (String segment : childRelativePath.split("[/\\\\]")) {
+                if (segment.equals("..")) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package jenkins.model;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Run;
+import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Uses {@link ContentAddressedArtifactManager} for all builds.
+ */
+@Restricted(NoExternalUse.class)
+public class ContentAddressedArtifactManagerFactory extends ArtifactManagerFactory {
+
+    @DataBoundConstructor
+    public ContentAddressedArtifactManagerFactory() {}
+
+    @Override
+    public ArtifactManager managerFor(Run<?, ?> build) {
+        return new ContentAddressedArtifactManager(build);
+    }
+
+    @Extension @Symbol("contentAddressed")
+    public static final class DescriptorImpl extends ArtifactManagerFactoryDescriptor {
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return Messages.ContentAddressedArtifactManagerFactory_DisplayName();
+        }
+
+    }
+
+}
@@ -41,6 +41,7 @@ import hudson.slaves.EphemeralNode;
 import hudson.slaves.OfflineCause;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
@@ -49,6 +50,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -86,6 +88,30 @@ public class Nodes implements PersistenceRoot {
      */
     private final ConcurrentMap<String, Node> nodes = new ConcurrentSkipListMap<>();
 
+    /**
+     * What was last seen in or written to the {@code config.xml} of each node, so that only modified nodes get saved.
+     */
+    private final ConcurrentMap<String, Saved> saved = new ConcurrentHashMap<>();
+
+    /**
+     * Digest of a {@code config.xml}, along with the file attributes used to tell whether it is still current.
+     */
+    private static final class Saved {
+        final String digest;
+        final long length;
+        final long lastModified;
+
+        Saved(String digest, File file) {
+            this.digest = digest;
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        boolean matches(File file) {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+    }
+
     /**
      * Constructor, intended to be called only from {@link Jenkins}.
      *
@@ -132,6 +158,7 @@ public class Nodes implements PersistenceRoot {
         });
         save();
         for (String name : toRemove) {
+            saved.remove(name);
             LOGGER.fine(() -> "deleting " + new File(getRootDir(), name));
             Util.deleteRecursive(new File(getRootDir(), name));
         }
@@ -250,6 +277,7 @@ public class Nodes implements PersistenceRoot {
             });
             updateNode(newOne);
             if (!newOne.getNodeName().equals(oldOne.getNodeName())) {
+                saved.remove(oldOne.getNodeName());
                 LOGGER.fine(() -> "deleting " + new File(getRootDir(), oldOne.getNodeName()));
                 Util.deleteRecursive(new File(getRootDir(), oldOne.getNodeName()));
             }
@@ -287,6 +315,7 @@ public class Nodes implements PersistenceRoot {
                 }
             });
             // no need for a full save() so we just do the minimum
+            saved.remove(node.getNodeName());
             LOGGER.fine(() -> "deleting " + new File(getRootDir(), node.getNodeName()));
             Util.deleteRecursive(new File(getRootDir(), node.getNodeName()));
 
@@ -298,20 +327,71 @@ public class Nodes implements PersistenceRoot {
         }
     }
 
+    /**
+     * Saves all nodes.
+     * Only nodes whose {@code config.xml} would actually change are written,
+     * so to update many nodes at once, make the changes within a {@link BulkChange} on this object
+     * (or call {@link #save(Collection)} with the modified nodes).
+     */
     @Override
     public void save() throws IOException {
         if (BulkChange.contains(this)) {
             return;
         }
-        for (Node n : nodes.values()) {
-            if (n instanceof EphemeralNode) {
+        save(nodes.values());
+    }
+
+    /**
+     * Saves some nodes, writing only those whose {@code config.xml} would change.
+     * Nodes which are not in the list of nodes are ignored.
+     *
+     * @param modified the nodes which may have been modified.
+     * @throws IOException if a node could not be persisted.
+     */
+    public void save(@NonNull Collection<? extends Node> modified) throws IOException {
+        if (BulkChange.contains(this)) {
+            return;
+        }
+        int written = 0;
+        for (Node n : modified) {
+            if (n instanceof EphemeralNode || n != nodes.get(n.getNodeName())) {
                 continue;
             }
             XmlFile xmlFile = getConfigFile(n);
+            String xml = xmlFile.toXml(n);
+            String digest = Util.getHexOfSHA256DigestOf(xml.getBytes(StandardCharsets.UTF_8));
+            if (digest.equals(getSavedDigest(n.getNodeName(), xmlFile))) {
+                LOGGER.finer(() -> "unchanged " + xmlFile);
+                continue;
+            }
             LOGGER.fine(() -> "saving " + xmlFile);
-            xmlFile.write(n);
+            xmlFile.writeXml(xml);
+            saved.put(n.getNodeName(), new Saved(digest, xmlFile.getFile()));
+            written++;
             SaveableListener.fireOnChange(this, xmlFile);
         }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("wrote " + written + " of " + modified.size() + " nodes");
+        }
+    }
+
+    /**
+     * Returns the digest of what is currently in the {@code config.xml} of a node, or null if there is no such file.
+     */
+    @CheckForNull
+    private String getSavedDigest(String name, XmlFile xmlFile) throws IOException {
+        File file = xmlFile.getFile();
+        Saved s = saved.get(name);
+        if (s != null && s.matches(file)) {
+            return s.digest;
+        }
+        if (!xmlFile.exists()) {
+            return null;
+        }
+        // first save since startup, or the file was modified by someone else
+        s = new Saved(Util.getHexOfSHA256DigestOf(xmlFile.readBytes()), file);
+        saved.put(name, s);
+        return s.digest;
     }
 
     /**
@@ -45,6 +45,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import jenkins.util.WriteBehindSaver;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
@@ -203,7 +204,7 @@ public class ApiTokenStats implements Saveable {
             return;
         }
 
-        if (BulkChange.contains(this))
+        if (BulkChange.contains(this) || WriteBehindSaver.defer(this))
             return;
 
         /*
@@ -212,7 +213,7 @@ public class ApiTokenStats implements Saveable {
          * but when this code is called, from token used / removed, the folder exists.
          */
         File userFolder = getUserFolder();
-        if (userFolder == null) {
+        if (userFolder == null || !userFolder.isDirectory()) { // the user may have been deleted while the save was deferred
             return;
         }
 
@@ -0,0 +1,192 @@
+package jenkins.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import hudson.model.DirectoryBrowserSupport;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.http.HttpServletResponse;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.Beta;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Serves a single file which cannot change, such as an artifact of a completed build, for {@link DirectoryBrowserSupport}.
+ *
+ * <p>
+ * The file gets a strong entity tag derived from the given version, so clients can make conditional and range requests.
+ * Files on the controller are sent with {@link FileChannel#transferTo} from a {@linkplain VirtualFile#openChannel channel};
+ * others are streamed, skipping to the start of the requested range.
+ *
+ * <p>
+ * The number of requests, bytes sent and time spent sending them are counted, as are the requests for each of the
+ * most recently downloaded files; monitoring plugins may read these through the getters, which are beta API.
+ *
+ * @since TODO
+ */
+public final class ArtifactDownload {
+
+    /**
+     * Number of files for which to count requests.
+     */
+    private static final int HOT_ARTIFACTS = SystemProperties.getInteger(ArtifactDownload.class.getName() + ".hotArtifacts", 1000);
+
+    private static final LongAdder requests = new LongAdder();
+    private static final LongAdder bytes = new LongAdder();
+    private static final LongAdder nanos = new LongAdder();
+
+    private static final Cache<String, LongAdder> hits = CacheBuilder.newBuilder().maximumSize(HOT_ARTIFACTS).build();
+
+    private ArtifactDownload() {}
+
+    /**
+     * Serves a file.
+     * @param version identifies the contents of {@code file}, which must not change as long as this does
+     * @param name identifies the file when counting requests for it
+     * @param fileName determines the content type
+     */
+    @Restricted(NoExternalUse.class)
+    public static void serve(@NonNull VirtualFile file, @NonNull String version, @NonNull String name, @NonNull String fileName,
+                             StaplerRequest req, StaplerResponse rsp, OpenOption... openOptions) throws IOException {
+        requests.increment();
+        hits(name).increment();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        String etag = '"' + Util.getDigestOf(version + '\n' + length + '\n' + lastModified) + '"';
+        rsp.setHeader("ETag", etag);
+        if (lastModified > 0) {
+            rsp.setDateHeader("Last-Modified", lastModified);
+        }
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null ? Downloads.matches(ifNoneMatch, etag) : notModifiedSince(req, lastModified)) {
+            rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        String contentType = req.getServletContext().getMimeType(fileName);
+        rsp.setContentType(contentType != null ? contentType : "application/octet-stream");
+        rsp.setHeader("Accept-Ranges", "bytes");
+
+        long first = 0;
+        long last = length - 1;
+        String range = req.getHeader("Range");
+        String ifRange = req.getHeader("If-Range");
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            long[] r = Downloads.parseRange(range, length);
+            if (r == null) {
+                rsp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                rsp.setHeader("Content-Range", "bytes */" + length);
+                return;
+            }
+            if (r.length == 2) {
+                first = r[0];
+                last = r[1];
+                rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                rsp.setHeader("Content-Range", "bytes " + first + "-" + last + "/" + length);
+            }
+        }
+        long count = last - first + 1;
+        rsp.setContentLengthLong(count);
+        if (count <= 0) {
+            return;
+        }
+        FileChannel channel;
+        InputStream in = null;
+        try {
+            channel = file.openChannel(openOptions);
+            if (channel == null) {
+                in = file.open(openOptions);
+            }
+        } catch (IOException x) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        long start = System.nanoTime();
+        try (Closeable source = channel != null ? channel : in) {
+            Downloads.Counter out = new Downloads.Counter(rsp.getOutputStream());
+            try {
+                if (channel != null) {
+                    Downloads.transfer(channel, first, count, out);
+                } else {
+                    in.skipNBytes(first);
+                    Downloads.copy(in, out, count);
+                }
+            } finally {
+                bytes.add(out.getCount());
+            }
+        } finally {
+            nanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private static boolean notModifiedSince(StaplerRequest req, long lastModified) {
+        long since;
+        try {
+            since = req.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException x) {
+            return false;
+        }
+        // HTTP dates have a resolution of one second
+        return since != -1 && lastModified > 0 && lastModified / 1000 <= since / 1000;
+    }
+
+    private static LongAdder hits(String name) {
+        try {
+            return hits.get(name, LongAdder::new);
+        } catch (ExecutionException x) {
+            throw new AssertionError(x);
+        }
+    }
+
+    /**
+     * @return the number of files served
+     */
+    @Restricted(Beta.class)
+    public static long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return the number of bytes sent
+     */
+    @Restricted(Beta.class)
+    public static long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * @return the bytes sent per second while sending files, or 0 if none were
+     */
+    @Restricted(Beta.class)
+    public static long getThroughput() {
+        long n = nanos.sum();
+        return n == 0 ? 0 : (long) (bytes.sum() / ((double) n / TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    /**
+     * @param max the maximum number of files to return
+     * @return the files requested most often, with the number of requests for each, most requested first
+     */
+    @Restricted(Beta.class)
+    public static @NonNull Map<String, Long> getHotArtifacts(int max) {
+        Map<String, Long> r = new LinkedHashMap<>();
+        hits.asMap().entrySet().stream()
+                .map(e -> Map.entry(e.getKey(), e.getValue().sum()))
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+                .limit(max)
+                .forEach(e -> r.put(e.getKey(), e.getValue()));
+        return r;
+    }
+}
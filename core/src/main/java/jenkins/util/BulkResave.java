@@ -0,0 +1,443 @@
+package jenkins.util;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.model.Item;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.User;
+import hudson.model.listeners.SaveableListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.AtomicFileWriter;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Saves a large number of objects in the background, such as when resaving data in an old format.
+ *
+ * <p>
+ * Objects are saved by {@link #THREADS} worker threads, paced so as to stay under {@link #OPS_PER_SECOND} saves
+ * and {@link #BYTES_PER_SECOND} bytes written per second, to leave some IO to builds and requests.
+ * Items, builds and users are queued by name and only loaded when their turn comes;
+ * the names of those not saved yet are regularly written to {@code bulk-resave.txt} in {@code JENKINS_HOME},
+ * so that saving resumes after a restart. Other objects are held in memory and are not resumed.
+ *
+ * <p>
+ * Migrations which must be complete before the objects involved can be loaded, such as those of build directories
+ * or user IDs, cannot use this and stay synchronous.
+ */
+@Restricted(NoExternalUse.class)
+public final class BulkResave {
+
+    private static final Logger LOGGER = Logger.getLogger(BulkResave.class.getName());
+
+    /**
+     * Number of objects saved concurrently.
+     */
+    public static /* non-final for Groovy */ int THREADS = SystemProperties.getInteger(BulkResave.class.getName() + ".threads", 2);
+
+    /**
+     * Maximum number of saves per second, or 0 for no limit.
+     */
+    public static /* non-final for Groovy */ int OPS_PER_SECOND = SystemProperties.getInteger(BulkResave.class.getName() + ".opsPerSecond", 0);
+
+    /**
+     * Maximum number of bytes written per second, or 0 for no limit.
+     */
+    public static /* non-final for Groovy */ long BYTES_PER_SECOND = SystemProperties.getLong(BulkResave.class.getName() + ".bytesPerSecond", 0L);
+
+    /**
+     * How often, in milliseconds, the list of objects left to save is written.
+     */
+    public static /* non-final for Groovy */ long CHECKPOINT_INTERVAL = SystemProperties.getLong(BulkResave.class.getName() + ".checkpointInterval", 10_000L);
+
+    static final String NAME = "bulk-resave.txt";
+
+    private static final String ITEM = "item:";
+    private static final String RUN = "run:";
+    private static final String USER = "user:";
+
+    private static final Queue<Target> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Objects queued or being saved.
+     */
+    private static final Set<Target> pending = ConcurrentHashMap.newKeySet();
+
+    private static final AtomicInteger workers = new AtomicInteger();
+
+    private static final AtomicInteger total = new AtomicInteger();
+    private static final AtomicInteger done = new AtomicInteger();
+    private static final AtomicInteger failed = new AtomicInteger();
+    private static final AtomicLong bytes = new AtomicLong();
+    private static volatile long started;
+
+    /**
+     * Time per {@link System#nanoTime} from which the next save may start.
+     */
+    private static long nextSlot;
+
+    private static long lastCheckpoint;
+
+    private static ExecutorService executor;
+
+    /**
+     * Set once shutting down, so that no more workers are started.
+     */
+    private static boolean stopping;
+
+    /**
+     * Set on worker threads while saving, to count the bytes written.
+     */
+    private static final ThreadLocal<long[]> written = new ThreadLocal<>();
+
+    private BulkResave() {}
+
+    /**
+     * An object to save, either by name or held directly.
+     */
+    private static final class Target {
+        final @CheckForNull String id;
+        final @CheckForNull Saveable instance;
+
+        Target(@CheckForNull String id, @CheckForNull Saveable instance) {
+            this.id = id;
+            this.instance = instance;
+        }
+
+        @CheckForNull Saveable resolve() {
+            if (instance != null) {
+                return instance;
+            }
+            assert id != null;
+            if (id.startsWith(ITEM)) {
+                return Jenkins.get().getItemByFullName(id.substring(ITEM.length()));
+            } else if (id.startsWith(RUN)) {
+                try {
+                    return Run.fromExternalizableId(id.substring(RUN.length()));
+                } catch (IllegalArgumentException x) {
+                    LOGGER.log(Level.FINE, null, x);
+                    return null;
+                }
+            } else if (id.startsWith(USER)) {
+                return User.getById(id.substring(USER.length()), false);
+            }
+            return null;
+        }
+
+        @Override
+        public int hashCode() {
+            return id != null ? id.hashCode() : System.identityHashCode(instance);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Target)) {
+                return false;
+            }
+            Target other = (Target) obj;
+            return id != null ? id.equals(other.id) : other.id == null && instance == other.instance;
+        }
+
+        @Override
+        public String toString() {
+            return id != null ? id : String.valueOf(instance);
+        }
+    }
+
+    /**
+     * Queues builds to be saved, without loading them until then.
+     * @param externalizableIds as per {@link Run#getExternalizableId}
+     */
+    public static void submitRuns(@NonNull Collection<String> externalizableIds) {
+        for (String id : externalizableIds) {
+            submit(new Target(RUN + id, null));
+        }
+        checkpoint(true);
+    }
+
+    /**
+     * Queues objects to be saved.
+     */
+    public static void submit(@NonNull Collection<? extends Saveable> saveables) {
+        for (Saveable s : saveables) {
+            submit(new Target(idOf(s), s instanceof Item || s instanceof Run || s instanceof User ? null : s));
+        }
+        checkpoint(true);
+    }
+
+    private static @CheckForNull String idOf(Saveable s) {
+        if (s instanceof Item) {
+            return ITEM + ((Item) s).getFullName();
+        } else if (s instanceof Run) {
+            return RUN + ((Run<?, ?>) s).getExternalizableId();
+        } else if (s instanceof User) {
+            return USER + ((User) s).getId();
+        }
+        return null;
+    }
+
+    private static void submit(Target target) {
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                // a new run, so start counting again
+                total.set(0);
+                done.set(0);
+                failed.set(0);
+                bytes.set(0);
+                started = System.nanoTime();
+            }
+            if (!pending.add(target)) {
+                return;
+            }
+        }
+        total.incrementAndGet();
+        queue.add(target);
+        startWorkers();
+    }
+
+    private static synchronized void startWorkers() {
+        if (stopping) {
+            return;
+        }
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(new NamingThreadFactory(new DaemonThreadFactory(), "BulkResave"));
+        }
+        while (workers.get() < Math.max(1, THREADS) && !queue.isEmpty()) {
+            workers.incrementAndGet();
+            executor.submit(BulkResave::work);
+        }
+    }
+
+    private static void work() {
+        try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+            Target target;
+            while ((target = queue.poll()) != null) {
+                try {
+                    pace();
+                } catch (InterruptedException x) {
+                    // shutting down: leave it for the next startup
+                    queue.add(target);
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                save(target);
+                finished(target);
+            }
+        } finally {
+            workers.decrementAndGet();
+            if (!queue.isEmpty() && !Thread.currentThread().isInterrupted()) {
+                startWorkers();
+            }
+        }
+    }
+
+    private static void save(Target target) {
+        long[] count = new long[1];
+        written.set(count);
+        try {
+            Saveable s = target.resolve();
+            if (s != null) {
+                s.save();
+            }
+            done.incrementAndGet();
+        } catch (IOException | RuntimeException x) {
+            failed.incrementAndGet();
+            LOGGER.log(Level.WARNING, "Failed to save " + target, x);
+        } finally {
+            written.remove();
+            bytes.addAndGet(count[0]);
+            long limit = BYTES_PER_SECOND;
+            if (limit > 0 && count[0] > 0) {
+                reserve(TimeUnit.SECONDS.toNanos(count[0]) / limit);
+            }
+        }
+    }
+
+    private static synchronized void finished(Target target) {
+        pending.remove(target);
+        checkpoint(pending.isEmpty());
+    }
+
+    /**
+     * Waits for the next save to be allowed.
+     */
+    private static void pace() throws InterruptedException {
+        int ops = OPS_PER_SECOND;
+        long wait = reserve(ops > 0 ? TimeUnit.SECONDS.toNanos(1) / ops : 0);
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Takes up some time from the shared budget.
+     * @return how long to wait until that time starts
+     */
+    private static synchronized long reserve(long cost) {
+        long now = System.nanoTime();
+        if (nextSlot - now < 0) {
+            nextSlot = now;
+        }
+        long wait = nextSlot - now;
+        nextSlot += cost;
+        return wait;
+    }
+
+    /**
+     * Writes the names of the objects left to save, or deletes the file once there are none.
+     * @param force whether to write even if it was recently written
+     */
+    private static synchronized void checkpoint(boolean force) {
+        long now = System.nanoTime();
+        if (!force && now - lastCheckpoint < TimeUnit.MILLISECONDS.toNanos(CHECKPOINT_INTERVAL)) {
+            return;
+        }
+        lastCheckpoint = now;
+        Jenkins j = Jenkins.getInstanceOrNull();
+        if (j == null) {
+            return;
+        }
+        File file = new File(j.getRootDir(), NAME);
+        List<String> ids = new ArrayList<>();
+        for (Target target : pending) {
+            if (target.id != null) {
+                ids.add(target.id);
+            }
+        }
+        try {
+            if (ids.isEmpty()) {
+                Files.deleteIfExists(file.toPath());
+                return;
+            }
+            AtomicFileWriter w = new AtomicFileWriter(file.toPath(), StandardCharsets.UTF_8);
+            try {
+                for (String id : ids) {
+                    w.write(id);
+                    w.write('\n');
+                }
+                w.commit();
+            } finally {
+                w.abort();
+            }
+        } catch (IOException x) {
+            LOGGER.log(Level.WARNING, "Failed to write " + file, x);
+        }
+    }
+
+    @Initializer(after = InitMilestone.JOB_CONFIG_ADAPTED)
+    public static void resume() throws IOException {
+        synchronized (BulkResave.class) {
+            stopping = false;
+        }
+        File file = new File(Jenkins.get().getRootDir(), NAME);
+        if (!file.isFile()) {
+            return;
+        }
+        List<String> ids = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        LOGGER.log(Level.INFO, "Resuming the saving of {0} objects", ids.size());
+        for (String id : ids) {
+            if (!id.isEmpty()) {
+                submit(new Target(id, null));
+            }
+        }
+    }
+
+    /**
+     * Stops the workers, leaving what is left to save for the next startup.
+     */
+    @Terminator
+    public static void stop() throws InterruptedException {
+        ExecutorService e;
+        synchronized (BulkResave.class) {
+            stopping = true;
+            e = executor;
+            executor = null;
+        }
+        if (e == null) {
+            return;
+        }
+        e.shutdownNow();
+        e.awaitTermination(1, TimeUnit.MINUTES);
+        checkpoint(true);
+        queue.clear();
+        pending.clear();
+    }
+
+    /**
+     * Whether there are objects left to save.
+     */
+    public static synchronized boolean isRunning() {
+        return !pending.isEmpty();
+    }
+
+    public static int getTotal() {
+        return total.get();
+    }
+
+    public static int getDone() {
+        return done.get();
+    }
+
+    public static int getFailed() {
+        return failed.get();
+    }
+
+    public static long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Average number of saves per second since saving started.
+     */
+    public static double getOpsPerSecond() {
+        long elapsed = System.nanoTime() - started;
+        return elapsed > 0 ? (done.get() + failed.get()) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed : 0;
+    }
+
+    /**
+     * Average number of bytes written per second since saving started.
+     */
+    public static double getBytesPerSecond() {
+        long elapsed = System.nanoTime() - started;
+        return elapsed > 0 ? bytes.get() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed : 0;
+    }
+
+    @Extension
+    public static final class WrittenListener extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            long[] count = written.get();
+            if (count != null) {
+                count[0] += file.getFile().length();
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package jenkins.util;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Conditional and range request handling shared by downloads of build logs, artifacts and zips.
+ *
+ * <p>
+ * Only single byte ranges are supported; a {@code Range} header asking for anything else is ignored,
+ * and the whole representation is sent, as allowed by RFC 9110.
+ */
+@Restricted(NoExternalUse.class)
+public final class Downloads {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+    private Downloads() {}
+
+    /**
+     * Parses a {@code Range} header.
+     * @return the first and last positions, an empty array if the header should be ignored, or null if unsatisfiable
+     */
+    public static @CheckForNull long[] parseRange(@NonNull String header, long length) {
+        Matcher m = RANGE.matcher(header.trim());
+        if (!m.matches() || m.group(1).isEmpty() && m.group(2).isEmpty()) {
+            return new long[0]; // multiple ranges, other units, or garbage: send everything
+        }
+        try {
+            long first;
+            long last;
+            if (m.group(1).isEmpty()) {
+                long suffix = Long.parseLong(m.group(2));
+                if (suffix == 0) {
+                    return null;
+                }
+                first = Math.max(0, length - suffix);
+                last = length - 1;
+            } else {
+                first = Long.parseLong(m.group(1));
+                if (!m.group(2).isEmpty() && Long.parseLong(m.group(2)) < first) {
+                    return new long[0]; // syntactically invalid
+                }
+                last = m.group(2).isEmpty() ? length - 1 : Math.min(Long.parseLong(m.group(2)), length - 1);
+            }
+            if (first >= length) {
+                return null;
+            }
+            return new long[] {first, last};
+        } catch (NumberFormatException x) {
+            return new long[0];
+        }
+    }
+
+    /**
+     * Checks an {@code If-None-Match} header, which may list several tags, weak ones, or {@code *}.
+     * @param etag a strong entity tag, quoted
+     */
+    public static boolean matches(@CheckForNull String ifNoneMatch, @NonNull String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends part of a file with {@link FileChannel#transferTo}.
+     */
+    public static void transfer(@NonNull FileChannel channel, long position, long count, @NonNull OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        long end = position + count;
+        while (position < end) {
+            long n = channel.transferTo(position, end - position, target);
+            if (n <= 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += n;
+        }
+    }
+
+    /**
+     * Copies an exact number of bytes.
+     */
+    public static void copy(@NonNull InputStream in, @NonNull OutputStream out, long count) throws IOException {
+        byte[] buf = new byte[64 * 1024];
+        while (count > 0) {
+            int len = in.read(buf, 0, (int) Math.min(buf.length, count));
+            if (len < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            out.write(buf, 0, len);
+            count -= len;
+        }
+    }
+
+    /**
+     * Counts the bytes written through it.
+     */
+    public static final class Counter extends OutputStream {
+        private final OutputStream out;
+        private long count;
+
+        public Counter(@NonNull OutputStream out) {
+            this.out = out;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Passes on only the bytes in a given range of what is written to it.
+     */
+    public static final class Window extends OutputStream {
+        private final OutputStream out;
+        private final long first;
+        private final long end;
+        private final boolean stop;
+        private long position;
+
+        /**
+         * @param stop whether to fail writes past the end, so as to stop whatever produces the output
+         */
+        public Window(@NonNull OutputStream out, long first, long count, boolean stop) {
+            this.out = out;
+            this.first = first;
+            this.end = first + count;
+            this.stop = stop;
+        }
+
+        public boolean isDone() {
+            return position >= end;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (stop && isDone()) {
+                throw new IOException("End of range reached");
+            }
+            long from = Math.max(position, first);
+            long to = Math.min(position + len, end);
+            if (from < to) {
+                out.write(b, off + (int) (from - position), (int) (to - from));
+            }
+            position += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
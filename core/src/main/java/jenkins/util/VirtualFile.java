@@ -31,6 +31,7 @@ import hudson.Util;
 import hudson.model.DirectoryBrowserSupport;
 import hudson.remoting.Callable;
 import hudson.remoting.Channel;
+import hudson.remoting.Pipe;
 import hudson.remoting.RemoteInputStream;
 import hudson.remoting.VirtualChannel;
 import hudson.util.DirScanner;
@@ -38,6 +39,11 @@ import hudson.util.FileVisitor;
 import hudson.util.IOUtils;
 import hudson.util.io.Archiver;
 import hudson.util.io.ArchiverFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -46,6 +52,7 @@ import java.io.OutputStream;
 import java.io.Serializable;
 import java.net.URI;
 import java.net.URL;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
@@ -57,9 +64,13 @@ import java.util.Collections;
 import java.util.Deque;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.zip.Deflater;
 import jenkins.MasterToSlaveFileCallable;
 import jenkins.model.ArtifactManager;
 import jenkins.security.MasterToSlaveCallable;
@@ -236,6 +247,227 @@ public abstract class VirtualFile implements Comparable<VirtualFile>, Serializab
         return result;
     }
 
+    /**
+     * Lists the children of this directory along with their metadata.
+     * <p>The default implementation calls {@link #list(OpenOption...)} and the methods of each child inside {@link #run},
+     * so this is a single call for a directory on another machine, where calling them individually would be one call each.
+     * @param openOptions the options to apply when listing
+     * @return the children, named by {@link Attributes#getPath} as per {@link #getName}; empty for a file or nonexistent directory
+     * @throws IOException if this directory exists but listing was not possible for some other reason
+     * @since TODO
+     */
+    public @NonNull List<Attributes> listWithAttributes(OpenOption... openOptions) throws IOException {
+        return run(new ListWithAttributes(this, openOptions));
+    }
+
+    /**
+     * Visits all files and directories inside this directory, recursively, along with their metadata.
+     * A directory is visited before its contents. Symbolic links to directories are visited but not followed.
+     * <p>The default implementation calls {@link #listWithAttributes} recursively.
+     * Implementations for directories on another machine may send all results in one stream instead.
+     * @param visitor receives each file, named by a {@code /}-separated path relative to this directory
+     * @param openOptions the options to apply when listing
+     * @throws IOException if listing was not possible, or as thrown by the visitor
+     * @since TODO
+     */
+    public void walkWithAttributes(@NonNull AttributesVisitor visitor, OpenOption... openOptions) throws IOException {
+        walkWithAttributes(this, "", visitor, openOptions);
+    }
+
+    private static void walkWithAttributes(VirtualFile dir, String prefix, AttributesVisitor visitor, OpenOption... openOptions) throws IOException {
+        for (Attributes a : dir.listWithAttributes(openOptions)) {
+            String name = a.getPath();
+            visitor.visit(prefix.isEmpty() ? a : a.withPath(prefix + name));
+            if (a.isDirectory() && a.getSymlinkTarget() == null) {
+                walkWithAttributes(dir.child(name), prefix + name + '/', visitor, openOptions);
+            }
+        }
+    }
+
+    private static final class WalkWithAttributes extends MasterToSlaveCallable<Void, IOException> {
+        private static final long serialVersionUID = 1;
+        private final VirtualFile dir;
+        private final Pipe pipe;
+        private final OpenOption[] openOptions;
+
+        WalkWithAttributes(VirtualFile dir, Pipe pipe, OpenOption[] openOptions) {
+            this.dir = dir;
+            this.pipe = pipe;
+            this.openOptions = openOptions;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(pipe.getOut()))) {
+                dir.walkWithAttributes(a -> {
+                    out.writeBoolean(true);
+                    a.write(out);
+                }, openOptions);
+                out.writeBoolean(false);
+            }
+            return null;
+        }
+    }
+
+    private static final class ListWithAttributes extends MasterToSlaveCallable<List<Attributes>, IOException> {
+        private static final long serialVersionUID = 1;
+        private final VirtualFile dir;
+        private final OpenOption[] openOptions;
+
+        ListWithAttributes(VirtualFile dir, OpenOption[] openOptions) {
+            this.dir = dir;
+            this.openOptions = openOptions;
+        }
+
+        @Override
+        public List<Attributes> call() throws IOException {
+            VirtualFile[] children = dir.list(openOptions);
+            List<Attributes> r = new ArrayList<>(children.length);
+            for (VirtualFile child : children) {
+                r.add(Attributes.of(child.getName(), child));
+            }
+            return r;
+        }
+    }
+
+    /**
+     * Receives the files found by {@link #walkWithAttributes}.
+     * @since TODO
+     */
+    @FunctionalInterface
+    public interface AttributesVisitor {
+        void visit(@NonNull Attributes attributes) throws IOException;
+    }
+
+    /**
+     * Metadata of a file, as returned in bulk by {@link #listWithAttributes} and {@link #walkWithAttributes}.
+     * @since TODO
+     */
+    public static final class Attributes implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        private final @NonNull String path;
+        private final boolean directory;
+        private final boolean file;
+        private final long length;
+        private final long lastModified;
+        private final int mode;
+        private final boolean readable;
+        private final @CheckForNull String symlinkTarget;
+
+        public Attributes(@NonNull String path, boolean directory, boolean file, long length, long lastModified, int mode,
+                          boolean readable, @CheckForNull String symlinkTarget) {
+            this.path = path;
+            this.directory = directory;
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.mode = mode;
+            this.readable = readable;
+            this.symlinkTarget = symlinkTarget;
+        }
+
+        /**
+         * Gets the metadata of a file by calling each of its methods.
+         */
+        public static @NonNull Attributes of(@NonNull String path, @NonNull VirtualFile f) throws IOException {
+            return new Attributes(path, f.isDirectory(), f.isFile(), f.length(), f.lastModified(), f.mode(), f.canRead(), f.readLink());
+        }
+
+        Attributes withPath(String path) {
+            return new Attributes(path, directory, file, length, lastModified, mode, readable, symlinkTarget);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(path);
+            out.writeBoolean(directory);
+            out.writeBoolean(file);
+            out.writeLong(length);
+            out.writeLong(lastModified);
+            out.writeInt(mode);
+            out.writeBoolean(readable);
+            out.writeBoolean(symlinkTarget != null);
+            if (symlinkTarget != null) {
+                out.writeUTF(symlinkTarget);
+            }
+        }
+
+        static Attributes read(DataInputStream in) throws IOException {
+            String path = in.readUTF();
+            boolean directory = in.readBoolean();
+            boolean file = in.readBoolean();
+            long length = in.readLong();
+            long lastModified = in.readLong();
+            int mode = in.readInt();
+            boolean readable = in.readBoolean();
+            String symlinkTarget = in.readBoolean() ? in.readUTF() : null;
+            return new Attributes(path, directory, file, length, lastModified, mode, readable, symlinkTarget);
+        }
+
+        /**
+         * @return the name of the file, or its relative path when walking
+         */
+        public @NonNull String getPath() {
+            return path;
+        }
+
+        /**
+         * @see VirtualFile#getName
+         */
+        public @NonNull String getName() {
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        /**
+         * @see VirtualFile#isDirectory
+         */
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        /**
+         * @see VirtualFile#isFile
+         */
+        public boolean isFile() {
+            return file;
+        }
+
+        /**
+         * @see VirtualFile#length
+         */
+        public long length() {
+            return length;
+        }
+
+        /**
+         * @see VirtualFile#lastModified
+         */
+        public long lastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @see VirtualFile#mode
+         */
+        public int mode() {
+            return mode;
+        }
+
+        /**
+         * @see VirtualFile#canRead
+         */
+        public boolean canRead() {
+            return readable;
+        }
+
+        /**
+         * @see VirtualFile#readLink
+         */
+        public @CheckForNull String getSymlinkTarget() {
+            return symlinkTarget;
+        }
+    }
+
     /**
      * @deprecated use {@link #list(String, String, boolean)} instead
      */
@@ -374,12 +606,34 @@ public abstract class VirtualFile implements Comparable<VirtualFile>, Serializab
             correctPrefix = Util.ensureEndsWith(prefix, "/");
         }
 
+        return zipListed(outputStream, includes, excludes, useDefaultExcludes, correctPrefix, Deflater.DEFAULT_COMPRESSION, openOptions);
+    }
+
+    /**
+     * Same as {@link #zip(OutputStream, String, String, boolean, String, OpenOption...)} with a given compression level.
+     * Files in {@linkplain FilePath#isAlreadyCompressed already compressed formats} are not compressed again.
+     * Implementations overriding only the other method are called without the level.
+     * @param level a {@link Deflater} compression level
+     */
+    @Restricted(NoExternalUse.class)
+    public int zip(OutputStream outputStream, String includes, String excludes, boolean useDefaultExcludes,
+                   String prefix, int level, OpenOption... openOptions) throws IOException {
+        if (Util.isOverridden(VirtualFile.class, getClass(), "zip", OutputStream.class, String.class, String.class, boolean.class, String.class, OpenOption[].class)) {
+            return zip(outputStream, includes, excludes, useDefaultExcludes, prefix, openOptions);
+        }
+        String correctPrefix = prefix == null || prefix.isBlank() ? "" : Util.ensureEndsWith(prefix, "/");
+        return zipListed(outputStream, includes, excludes, useDefaultExcludes, correctPrefix, level, openOptions);
+    }
+
+    private int zipListed(OutputStream outputStream, String includes, String excludes, boolean useDefaultExcludes,
+                          String correctPrefix, int level, OpenOption[] openOptions) throws IOException {
         Collection<String> files = list(includes, excludes, useDefaultExcludes, openOptions);
         try (ZipOutputStream zos = new ZipOutputStream(outputStream)) {
             zos.setEncoding(Charset.defaultCharset().displayName()); // TODO JENKINS-20663 make this overridable via query parameter
 
             for (String relativePath : files) {
                 VirtualFile virtualFile = this.child(relativePath);
+                zos.setLevel(FilePath.isAlreadyCompressed(relativePath) ? Deflater.NO_COMPRESSION : level);
                 sendOneZipEntry(zos, virtualFile, relativePath, correctPrefix, openOptions);
             }
         }
@@ -464,6 +718,19 @@ public abstract class VirtualFile implements Comparable<VirtualFile>, Serializab
         return open();
     }
 
+    /**
+     * Opens a channel on the file if it is stored on this machine,
+     * so that ranges of it can be read or {@linkplain FileChannel#transferTo transferred} without going through a stream.
+     *
+     * @param openOptions the options to apply when opening.
+     * @return an open channel, or null if the file is elsewhere, in which case {@link #open(OpenOption...)} should be used
+     * @throws IOException if it could not be opened
+     */
+    @Restricted(NoExternalUse.class)
+    public @CheckForNull FileChannel openChannel(OpenOption... openOptions) throws IOException {
+        return null;
+    }
+
     /**
      * Does case-insensitive comparison.
      * {@inheritDoc}
@@ -637,6 +904,9 @@ public abstract class VirtualFile implements Comparable<VirtualFile>, Serializab
             public VirtualFile[] list(OpenOption... openOptions) throws IOException {
                 String rootPath = determineRootPath();
                 File[] kids = f.listFiles();
+                if (kids == null) {
+                    return new VirtualFile[0];
+                }
                 List<VirtualFile> contents = new ArrayList<>(kids.length);
                 for (File child : kids) {
                     if (!FilePath.isSymlink(child, rootPath, openOptions) && !FilePath.isTmpDir(child, rootPath, openOptions)) {
@@ -687,9 +957,17 @@ public abstract class VirtualFile implements Comparable<VirtualFile>, Serializab
             @Override
             public int zip(OutputStream outputStream, String includes, String excludes, boolean useDefaultExcludes,
                 String prefix, OpenOption... openOptions) throws IOException {
+                return zip(outputStream, includes, excludes, useDefaultExcludes, prefix, Deflater.DEFAULT_COMPRESSION, openOptions);
+            }
+
+            @Override
+            public int zip(OutputStream outputStream, String includes, String excludes, boolean useDefaultExcludes,
+                String prefix, int level, OpenOption... openOptions) throws IOException {
                 String rootPath = determineRootPath();
                 DirScanner.Glob globScanner = new DirScanner.Glob(includes, excludes, useDefaultExcludes, openOptions);
-                ArchiverFactory archiverFactory = prefix == null ? ArchiverFactory.ZIP : ArchiverFactory.createZipWithPrefix(prefix, openOptions);
+                ArchiverFactory archiverFactory = prefix == null && level == Deflater.DEFAULT_COMPRESSION
+                        ? ArchiverFactory.ZIP
+                        : ArchiverFactory.createZipWithPrefix(prefix, level, openOptions);
                 try (Archiver archiver = archiverFactory.create(outputStream)) {
                     globScanner.scan(f, FilePath.ignoringTmpDirs(FilePath.ignoringSymlinks(archiver, rootPath, openOptions), rootPath, openOptions));
                     return archiver.countEntries();
@@ -752,6 +1030,11 @@ public abstract class VirtualFile implements Comparable<VirtualFile>, Serializab
                 return inputStream;
             }
 
+            @Override
+            public FileChannel openChannel(OpenOption... openOptions) throws IOException {
+                return FilePath.newChannelDenyingSymlinkAsNeeded(f, determineRootPath(), openOptions);
+            }
+
         @Override
         public boolean containsSymLinkChild(OpenOption... openOptions) {
             String rootPath = determineRootPath();
@@ -1012,10 +1295,16 @@ public abstract class VirtualFile implements Comparable<VirtualFile>, Serializab
             @Override
             public int zip(OutputStream outputStream, String includes, String excludes, boolean useDefaultExcludes,
                                     String prefix, OpenOption... openOptions) throws IOException {
+                return zip(outputStream, includes, excludes, useDefaultExcludes, prefix, Deflater.DEFAULT_COMPRESSION, openOptions);
+            }
+
+            @Override
+            public int zip(OutputStream outputStream, String includes, String excludes, boolean useDefaultExcludes,
+                                    String prefix, int level, OpenOption... openOptions) throws IOException {
                 try {
                     String rootPath = root == null ? null : root.getRemote();
                     DirScanner.Glob globScanner = new DirScanner.Glob(includes, excludes, useDefaultExcludes, openOptions);
-                    return f.zip(outputStream, globScanner, rootPath, prefix, openOptions);
+                    return f.zip(outputStream, globScanner, rootPath, prefix, level, openOptions);
                 } catch (InterruptedException x) {
                     throw new IOException(x);
                 }
@@ -1073,6 +1362,13 @@ public abstract class VirtualFile implements Comparable<VirtualFile>, Serializab
                 }
             }
 
+            @Override public FileChannel openChannel(OpenOption... openOptions) throws IOException {
+                if (f.isRemote()) {
+                    return null;
+                }
+                return FilePath.newChannelDenyingSymlinkAsNeeded(new File(f.getRemote()), root == null ? null : root.getRemote(), openOptions);
+            }
+
             @Override public <V> V run(Callable<V, IOException> callable) throws IOException {
                 try {
                     return f.act(callable);
@@ -1081,6 +1377,44 @@ public abstract class VirtualFile implements Comparable<VirtualFile>, Serializab
                 }
             }
 
+            /**
+             * Walks on the agent, which sends the results as they are found.
+             */
+            @Override public void walkWithAttributes(@NonNull AttributesVisitor visitor, OpenOption... openOptions) throws IOException {
+                if (!f.isRemote()) {
+                    super.walkWithAttributes(visitor, openOptions);
+                    return;
+                }
+                Pipe pipe = Pipe.createRemoteToLocal();
+                Future<Void> future = f.getChannel().callAsync(new WalkWithAttributes(this, pipe, openOptions));
+                boolean complete = false;
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(pipe.getIn()))) {
+                    while (in.readBoolean()) {
+                        visitor.visit(Attributes.read(in));
+                    }
+                    complete = true;
+                } catch (EOFException x) {
+                    // the agent failed, as reported below
+                } finally {
+                    if (!complete) {
+                        future.cancel(true);
+                    }
+                }
+                try {
+                    future.get();
+                } catch (ExecutionException x) {
+                    throw new IOException("Failed to list " + f, x.getCause());
+                } catch (CancellationException x) {
+                    // cancelled above
+                } catch (InterruptedException x) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(x);
+                }
+                if (!complete) {
+                    throw new IOException("Listing of " + f + " ended unexpectedly");
+                }
+            }
+
         /**
          * TODO un-restrict it in a weekly after the patch
          */
@@ -0,0 +1,252 @@
+package jenkins.util;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.BulkChange;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.model.Saveable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Optionally defers {@link Saveable#save} of frequently modified objects to a background thread,
+ * so that several changes in a row result in a single write, off the request or build thread.
+ *
+ * <p>
+ * An owner opts in by starting its {@code save()} method with:
+ * <pre>{@code
+ * if (WriteBehindSaver.defer(this)) {
+ *     return;
+ * }
+ * }</pre>
+ * after its {@link BulkChange} check. When enabled, this records the object as modified and returns true;
+ * at most {@link #INTERVAL} milliseconds later {@code save()} gets called again from the background,
+ * this time with {@link #defer} returning false so that the object really gets written.
+ * Pending saves are all performed when Jenkins shuts down, after which saves are synchronous again.
+ *
+ * <p>
+ * Changes which are still pending are lost if the JVM crashes, so this must only be used
+ * for state which is either recovered on startup or acceptable to lose.
+ */
+@Restricted(NoExternalUse.class)
+public final class WriteBehindSaver {
+
+    private static final Logger LOGGER = Logger.getLogger(WriteBehindSaver.class.getName());
+
+    /**
+     * Whether saves of objects which opted in get deferred.
+     */
+    public static /* non-final for Groovy */ boolean ENABLED = SystemProperties.getBoolean(WriteBehindSaver.class.getName() + ".enabled");
+
+    /**
+     * How long, in milliseconds, a change may stay pending.
+     */
+    public static /* non-final for Groovy */ long INTERVAL = SystemProperties.getLong(WriteBehindSaver.class.getName() + ".interval", 1000L);
+
+    /**
+     * Objects to save, by key, along with when they were first modified per {@link System#nanoTime}.
+     */
+    private static final Map<Object, Pending> pending = new LinkedHashMap<>();
+
+    private static boolean scheduled;
+
+    /**
+     * Whether Jenkins has been shut down, until it is started again.
+     */
+    private static boolean stopped;
+
+    /**
+     * Saves taken by {@link #flush} but not yet performed, by key.
+     */
+    private static final Map<Object, Saveable> inFlight = new LinkedHashMap<>();
+
+    /**
+     * Key of the save being performed, if any.
+     */
+    private static Object saving;
+
+    private static final ThreadLocal<Boolean> flushing = new ThreadLocal<>();
+
+    private static volatile long lastFlushDuration;
+
+    private static final class Pending {
+        Saveable saveable;
+        final long since;
+
+        Pending(Saveable saveable, long since) {
+            this.saveable = saveable;
+            this.since = since;
+        }
+    }
+
+    private WriteBehindSaver() {}
+
+    /**
+     * Defers saving an object.
+     *
+     * @return true if the save has been deferred and the caller must not write anything,
+     *         false if the caller should write the object now
+     */
+    public static boolean defer(@NonNull Saveable saveable) {
+        return defer(saveable, saveable);
+    }
+
+    /**
+     * Defers a save identified by a key other than the object itself,
+     * for objects with several separately saved parts.
+     *
+     * @param key identifies the save; a later deferral with an equal key replaces an earlier one
+     * @param saveable what to call later
+     * @return true if the save has been deferred and the caller must not write anything,
+     *         false if the caller should write now
+     */
+    public static boolean defer(@NonNull Object key, @NonNull Saveable saveable) {
+        if (!ENABLED || flushing.get() != null) {
+            return false;
+        }
+        synchronized (pending) {
+            if (stopped || Jenkins.getInstanceOrNull() == null) {
+                return false;
+            }
+            Pending p = pending.get(key);
+            if (p == null) {
+                pending.put(key, new Pending(saveable, System.nanoTime()));
+            } else {
+                p.saveable = saveable;
+            }
+            if (!scheduled) {
+                scheduled = true;
+                Timer.get().schedule(WriteBehindSaver::flush, INTERVAL, TimeUnit.MILLISECONDS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Forgets about a pending save, typically because the object is being deleted.
+     * If the save is being performed right now, waits for it to complete, so that the caller may then delete what got written.
+     */
+    public static void cancel(@NonNull Object key) {
+        synchronized (pending) {
+            pending.remove(key);
+            inFlight.remove(key);
+            if (flushing.get() != null) {
+                return;
+            }
+            boolean interrupted = false;
+            while (key.equals(saving)) {
+                try {
+                    pending.wait();
+                } catch (InterruptedException x) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Number of saves currently pending.
+     */
+    public static int getPendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * How long the oldest pending change has been waiting, in milliseconds.
+     */
+    public static long getLag() {
+        long now = System.nanoTime();
+        long oldest = now;
+        synchronized (pending) {
+            for (Pending p : pending.values()) {
+                oldest = Math.min(oldest, p.since);
+            }
+        }
+        return TimeUnit.NANOSECONDS.toMillis(now - oldest);
+    }
+
+    /**
+     * How long the last round of saves took, in milliseconds.
+     */
+    public static long getLastFlushDuration() {
+        return lastFlushDuration;
+    }
+
+    /**
+     * Performs all pending saves now.
+     */
+    public static void flush() {
+        List<Object> keys;
+        synchronized (pending) {
+            scheduled = false;
+            keys = new ArrayList<>(pending.keySet());
+            for (Map.Entry<Object, Pending> entry : pending.entrySet()) {
+                inFlight.put(entry.getKey(), entry.getValue().saveable);
+            }
+            pending.clear();
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        int count = 0;
+        flushing.set(true);
+        try {
+            for (Object key : keys) {
+                Saveable saveable;
+                synchronized (pending) {
+                    saveable = inFlight.remove(key);
+                    if (saveable == null) {
+                        continue; // cancelled meanwhile
+                    }
+                    saving = key;
+                }
+                try {
+                    saveable.save();
+                    count++;
+                } catch (IOException | RuntimeException x) {
+                    LOGGER.log(Level.WARNING, "Failed to save " + saveable, x);
+                } finally {
+                    synchronized (pending) {
+                        saving = null;
+                        pending.notifyAll();
+                    }
+                }
+            }
+        } finally {
+            flushing.remove();
+        }
+        lastFlushDuration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOGGER.log(Level.FINE, "saved {0} objects in {1}ms", new Object[] {count, lastFlushDuration});
+    }
+
+    @Initializer(after = InitMilestone.STARTED)
+    public static void startUp() {
+        synchronized (pending) {
+            stopped = false;
+        }
+    }
+
+    @Terminator
+    public static void shutDown() {
+        synchronized (pending) {
+            stopped = true;
+        }
+        flush();
+    }
+}
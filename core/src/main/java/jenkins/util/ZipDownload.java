@@ -0,0 +1,158 @@
+package jenkins.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.DirectoryBrowserSupport;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.OpenOption;
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.Deflater;
+import javax.servlet.http.HttpServletResponse;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Serves the files of a directory as a zip for {@link DirectoryBrowserSupport}.
+ *
+ * <p>
+ * The zip is written to the response while it is created, so only a few buffers of it are held at a time,
+ * and a slow client holds up reading the files, including on an agent.
+ * Files {@linkplain FilePath#isAlreadyCompressed already compressed} are not compressed again,
+ * and others are compressed at {@link #LEVEL}.
+ *
+ * <p>
+ * When the files cannot change, such as the artifacts of a completed build, the zip comes out the same each time,
+ * so an interrupted download can be resumed with a {@code Range} request:
+ * the zip is created again, sending only the requested bytes.
+ * Compressed output only stays the same with the same compression code, so the entity tag also covers
+ * the Java version and the output of the {@link Deflater} on a sample, which changes with the zlib in use.
+ * A range request needs the length of the zip, which is remembered from a complete download.
+ * Otherwise the whole zip is created once without sending anything to measure it, reading and compressing all the files
+ * an extra time while the client waits, so the first range request for a large zip takes about as long as a full download.
+ */
+@Restricted(NoExternalUse.class)
+public final class ZipDownload {
+
+    /**
+     * {@link Deflater} compression level of files which are not compressed already.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* non-final for Groovy */ int LEVEL = SystemProperties.getInteger(ZipDownload.class.getName() + ".level", Deflater.DEFAULT_COMPRESSION);
+
+    /**
+     * Lengths of recently served zips, by entity tag.
+     */
+    private static final Cache<String, Long> lengths = CacheBuilder.newBuilder().maximumSize(1000).build();
+
+    /**
+     * Identifies the compression code, by compressed samples, by level.
+     */
+    private static final Cache<Integer, String> compressors = CacheBuilder.newBuilder().build();
+
+    private ZipDownload() {}
+
+    /**
+     * Serves a zip of files in a directory.
+     * @param includes as per {@link VirtualFile#zip(OutputStream, String, String, boolean, String, OpenOption...)}
+     * @param prefix as per {@link VirtualFile#zip(OutputStream, String, String, boolean, String, OpenOption...)}
+     * @param version identifies the contents of {@code dir} if they cannot change, else null
+     */
+    public static void serve(VirtualFile dir, String includes, String prefix, @CheckForNull String version,
+                             StaplerRequest req, StaplerResponse rsp, OpenOption... openOptions) throws IOException {
+        int level = LEVEL;
+        rsp.setContentType("application/zip");
+        if (version == null) {
+            dir.zip(rsp.getOutputStream(), includes, null, true, prefix, level, openOptions);
+            return;
+        }
+        // the names tell apart the same build before and after some of its artifacts got deleted
+        Collection<String> files = dir.list(includes, null, true, openOptions);
+        String etag = '"' + Util.getDigestOf(version + '\n' + includes + '\n' + prefix + '\n' + level + '\n' + compressor(level) + '\n' + String.join("\n", files)) + '"';
+        rsp.setHeader("ETag", etag);
+        if (Downloads.matches(req.getHeader("If-None-Match"), etag)) {
+            rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        rsp.setHeader("Accept-Ranges", "bytes");
+
+        Long length = lengths.getIfPresent(etag);
+        String range = req.getHeader("Range");
+        String ifRange = req.getHeader("If-Range");
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            if (length == null) {
+                Downloads.Counter counter = new Downloads.Counter(OutputStream.nullOutputStream());
+                dir.zip(counter, includes, null, true, prefix, level, openOptions);
+                length = counter.getCount();
+                lengths.put(etag, length);
+            }
+            long[] r = Downloads.parseRange(range, length);
+            if (r == null) {
+                rsp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                rsp.setHeader("Content-Range", "bytes */" + length);
+                return;
+            }
+            if (r.length == 2) {
+                rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                rsp.setHeader("Content-Range", "bytes " + r[0] + "-" + r[1] + "/" + length);
+                rsp.setContentLengthLong(r[1] - r[0] + 1);
+                Downloads.Window window = new Downloads.Window(rsp.getOutputStream(), r[0], r[1] - r[0] + 1, true);
+                try {
+                    dir.zip(window, includes, null, true, prefix, level, openOptions);
+                } catch (IOException x) {
+                    if (!window.isDone()) {
+                        throw x;
+                    }
+                    // otherwise stopped creating the zip after the end of the range
+                }
+                return;
+            }
+        }
+        if (length != null) {
+            rsp.setContentLengthLong(length);
+        }
+        Downloads.Counter counter = new Downloads.Counter(rsp.getOutputStream());
+        dir.zip(counter, includes, null, true, prefix, level, openOptions);
+        lengths.put(etag, counter.getCount());
+    }
+
+    /**
+     * Identifies the Java version and the zlib it uses, by compressing a sample.
+     */
+    private static String compressor(int level) {
+        try {
+            return compressors.get(level, () -> {
+                // varied enough for matches to be found differently by different implementations
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < 4000; i++) {
+                    text.append(Integer.toString(i * i, 2 + i % 35)).append(i % 7 == 0 ? '\n' : ' ');
+                }
+                byte[] sample = text.toString().getBytes(StandardCharsets.US_ASCII);
+                Deflater deflater = new Deflater(level, true);
+                try {
+                    deflater.setInput(sample);
+                    deflater.finish();
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buf = new byte[1024];
+                    while (!deflater.finished()) {
+                        out.write(buf, 0, deflater.deflate(buf));
+                    }
+                    return Runtime.version() + "/" + Util.getDigestOf(Util.toHexString(out.toByteArray()));
+                } finally {
+                    deflater.end();
+                }
+            });
+        } catch (ExecutionException x) {
+            throw new AssertionError(x);
+        }
+    }
+}
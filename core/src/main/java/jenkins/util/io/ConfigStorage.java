@@ -0,0 +1,376 @@
+package jenkins.util.io;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.PluginManager;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.XmlFile;
+import hudson.util.AtomicFileWriter;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Keeps the configuration files of items, nodes and users somewhere other than directly on the filesystem.
+ *
+ * <p>
+ * By default there is no such storage and {@link XmlFile} reads and writes files as it always has.
+ * When the system property {@code jenkins.util.io.ConfigStorage.type} names a subclass,
+ * such as {@link JournalConfigStorage}, an instance of it is created for {@code JENKINS_HOME}
+ * with a constructor taking the root directory, and every {@link XmlFile} whose path it {@linkplain #handles handles}
+ * is read from and written to it instead.
+ *
+ * <p>
+ * Only file contents are kept in the storage: directories are still created, renamed and deleted on disk,
+ * and an entry is only considered to exist while its parent directory does.
+ * That way deleting or moving an item's directory implicitly deletes or moves its configuration,
+ * as long as {@link #moved} is called.
+ *
+ * <p>
+ * Code reading or writing these files through {@link File} rather than {@link XmlFile} will not see the stored contents;
+ * {@link #exportTo} writes them all back to the usual layout.
+ *
+ * <p>
+ * If the storage cannot be opened, startup fails, and so does any access to the files it handles:
+ * the files on disk are out of date once they have been imported, so falling back to them would roll back the configuration.
+ */
+@Restricted(NoExternalUse.class)
+public abstract class ConfigStorage implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(ConfigStorage.class.getName());
+
+    /**
+     * Class name of the storage to use, or null for plain files.
+     */
+    public static /* non-final for Groovy */ String TYPE = SystemProperties.getString(ConfigStorage.class.getName() + ".type");
+
+    /**
+     * Relative paths of the files kept in a storage by default.
+     */
+    private static final Pattern HANDLED = Pattern.compile("jobs/[^/]+(/jobs/[^/]+)*/config[.]xml|(nodes|users)/[^/]+/config[.]xml");
+
+    private static ConfigStorage current;
+
+    /**
+     * Directory for which the storage could not be opened, so it is not tried again for every file.
+     */
+    private static File failed;
+
+    private static IOException failure;
+
+    protected final File root;
+
+    protected ConfigStorage(@NonNull File root) {
+        this.root = root;
+    }
+
+    /**
+     * Whether a file should be kept in this storage.
+     * @param path a path relative to {@code JENKINS_HOME}, using {@code /} as separator
+     */
+    public boolean handles(@NonNull String path) {
+        return HANDLED.matcher(path).matches();
+    }
+
+    /**
+     * Gets the stored contents of a file.
+     * @return null if nothing is stored under this path
+     */
+    protected abstract @CheckForNull byte[] read(@NonNull String path) throws IOException;
+
+    /**
+     * Atomically and durably applies a set of changes.
+     * @param writes new contents by path
+     * @param deletes paths to remove
+     */
+    protected abstract void commit(@NonNull Map<String, byte[]> writes, @NonNull Collection<String> deletes) throws IOException;
+
+    /**
+     * Paths of all stored files.
+     */
+    protected abstract @NonNull Collection<String> list() throws IOException;
+
+    /**
+     * Opens the storage in use, if any, before items, nodes and users are loaded.
+     */
+    @Initializer(after = InitMilestone.PLUGINS_STARTED, before = InitMilestone.EXTENSIONS_AUGMENTED)
+    public static void init() throws IOException {
+        get();
+    }
+
+    /**
+     * Finds the storage in use, opening it if necessary.
+     * @return null if files are kept on the filesystem
+     * @throws IOException if a storage is configured but could not be opened
+     */
+    public static @CheckForNull ConfigStorage get() throws IOException {
+        if (TYPE == null) {
+            return null;
+        }
+        Jenkins j = Jenkins.getInstanceOrNull();
+        if (j == null) {
+            return null;
+        }
+        File root = j.getRootDir();
+        synchronized (ConfigStorage.class) {
+            if (current == null || !current.root.equals(root)) {
+                if (current != null) {
+                    try {
+                        current.close();
+                    } catch (IOException x) {
+                        LOGGER.log(Level.WARNING, "Failed to close " + current, x);
+                    }
+                    current = null;
+                }
+                current = open(j, root);
+            }
+            return current;
+        }
+    }
+
+    private static @NonNull ConfigStorage open(Jenkins j, File root) throws IOException {
+        if (root.equals(failed)) {
+            throw new IOException("Configuration storage " + TYPE + " in " + root + " could not be opened", failure);
+        }
+        PluginManager pm = j.getPluginManager();
+        ClassLoader loader = pm != null ? pm.uberClassLoader : ConfigStorage.class.getClassLoader();
+        ConfigStorage storage;
+        try {
+            storage = loader.loadClass(TYPE).asSubclass(ConfigStorage.class).getConstructor(File.class).newInstance(root);
+        } catch (ReflectiveOperationException | ClassCastException x) {
+            Throwable cause = x instanceof InvocationTargetException ? x.getCause() : x;
+            LOGGER.log(Level.SEVERE, "Cannot create configuration storage " + TYPE + " in " + root, cause);
+            failed = root;
+            failure = new IOException("Cannot create configuration storage " + TYPE + " in " + root, cause);
+            throw failure;
+        }
+        LOGGER.fine(() -> "Using " + storage + " for configuration files in " + root);
+        return storage;
+    }
+
+    /**
+     * Finds where a file is kept, if not directly on the filesystem.
+     * @return null if the file should be accessed directly
+     */
+    public static @CheckForNull Location locate(@NonNull File file) throws IOException {
+        if (TYPE == null) {
+            return null;
+        }
+        ConfigStorage storage = get();
+        if (storage == null) {
+            return null;
+        }
+        String path = storage.relativize(file);
+        return path != null && storage.handles(path) ? new Location(storage, path, file) : null;
+    }
+
+    /**
+     * Notes that a directory has been renamed on disk, moving any stored files inside it along.
+     */
+    public static void moved(@NonNull File from, @NonNull File to) throws IOException {
+        ConfigStorage storage = get();
+        if (storage == null) {
+            return;
+        }
+        String fromPath = storage.relativize(from);
+        String toPath = storage.relativize(to);
+        if (fromPath == null) {
+            return;
+        }
+        Map<String, byte[]> writes = new LinkedHashMap<>();
+        List<String> deletes = new ArrayList<>();
+        for (String path : storage.list()) {
+            if (path.startsWith(fromPath + '/')) {
+                byte[] data = storage.read(path);
+                deletes.add(path);
+                if (data == null) {
+                    continue;
+                }
+                String target = toPath == null ? null : toPath + path.substring(fromPath.length());
+                if (target != null && storage.handles(target)) {
+                    writes.put(target, data);
+                } else {
+                    writeFile(new File(to, path.substring(fromPath.length() + 1)), data);
+                }
+            }
+        }
+        if (!writes.isEmpty() || !deletes.isEmpty()) {
+            storage.commit(writes, deletes);
+        }
+    }
+
+    /**
+     * Notes that a directory has been deleted from disk, along with any stored files inside it.
+     */
+    public static void deleted(@NonNull File dir) throws IOException {
+        ConfigStorage storage = get();
+        if (storage == null) {
+            return;
+        }
+        String dirPath = storage.relativize(dir);
+        if (dirPath == null) {
+            return;
+        }
+        List<String> deletes = new ArrayList<>();
+        for (String path : storage.list()) {
+            if (path.startsWith(dirPath + '/')) {
+                deletes.add(path);
+            }
+        }
+        if (!deletes.isEmpty()) {
+            storage.commit(Collections.emptyMap(), deletes);
+        }
+    }
+
+    private @CheckForNull String relativize(File file) {
+        String prefix = root.getAbsolutePath() + File.separator;
+        String path = file.getAbsolutePath();
+        if (!path.startsWith(prefix)) {
+            return null;
+        }
+        return path.substring(prefix.length()).replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Writes every stored file to its usual place on disk, overwriting what is there.
+     * @return the number of files written
+     */
+    public int exportTo(@NonNull File dir) throws IOException {
+        int count = 0;
+        for (String path : list()) {
+            byte[] data = read(path);
+            File file = new File(dir, path);
+            if (data != null && file.getParentFile().isDirectory()) {
+                writeFile(file, data);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stores every file under a directory which would be kept in this storage, in a single commit.
+     * @return the number of files stored
+     */
+    public int importFrom(@NonNull File dir) throws IOException {
+        Map<String, byte[]> writes = new LinkedHashMap<>();
+        for (String top : new String[] {"nodes", "users"}) {
+            File[] children = new File(dir, top).listFiles(File::isDirectory);
+            if (children != null) {
+                for (File child : children) {
+                    importFile(writes, top + '/' + child.getName() + "/config.xml", new File(child, "config.xml"));
+                }
+            }
+        }
+        importJobs(writes, "jobs", new File(dir, "jobs"));
+        if (!writes.isEmpty()) {
+            commit(writes, Collections.emptySet());
+        }
+        return writes.size();
+    }
+
+    private void importJobs(Map<String, byte[]> writes, String path, File jobs) throws IOException {
+        File[] children = jobs.listFiles(File::isDirectory);
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String childPath = path + '/' + child.getName();
+            importFile(writes, childPath + "/config.xml", new File(child, "config.xml"));
+            importJobs(writes, childPath + "/jobs", new File(child, "jobs"));
+        }
+    }
+
+    private void importFile(Map<String, byte[]> writes, String path, File file) throws IOException {
+        if (handles(path) && file.isFile()) {
+            writes.put(path, Files.readAllBytes(file.toPath()));
+        }
+    }
+
+    private static void writeFile(File file, byte[] data) throws IOException {
+        // ISO-8859-1 maps every byte to a char and back unchanged
+        AtomicFileWriter w = new AtomicFileWriter(file.toPath(), StandardCharsets.ISO_8859_1);
+        try {
+            w.write(new String(data, StandardCharsets.ISO_8859_1));
+            w.commit();
+        } finally {
+            w.abort();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + root + "]";
+    }
+
+    /**
+     * A file kept in a {@link ConfigStorage}.
+     */
+    public static final class Location {
+        private final ConfigStorage storage;
+        private final String path;
+        private final File file;
+
+        Location(ConfigStorage storage, String path, File file) {
+            this.storage = storage;
+            this.path = path;
+            this.file = file;
+        }
+
+        public boolean exists() {
+            try {
+                return file.getParentFile().isDirectory() && storage.read(path) != null;
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "Failed to read " + path + " from " + storage, x);
+                return false;
+            }
+        }
+
+        public @NonNull byte[] read() throws IOException {
+            byte[] data = file.getParentFile().isDirectory() ? storage.read(path) : null;
+            if (data == null) {
+                throw new NoSuchFileException(file.toString());
+            }
+            return data;
+        }
+
+        public @NonNull InputStream open() throws IOException {
+            return new ByteArrayInputStream(read());
+        }
+
+        public void write(@NonNull byte[] data) throws IOException {
+            storage.commit(Collections.singletonMap(path, data), Collections.emptySet());
+        }
+
+        public void delete() throws IOException {
+            if (storage.read(path) != null) {
+                storage.commit(Collections.emptyMap(), Collections.singleton(path));
+            }
+        }
+
+        @Override
+        public String toString() {
+            return storage + ":" + path;
+        }
+    }
+}
@@ -0,0 +1,532 @@
+package jenkins.util.io;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Functions;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * A key-value store kept in a single append-only file.
+ *
+ * <p>
+ * Each {@link #commit} appends one checksummed record holding all its changes, so it is atomic,
+ * and only needs to force that one file; concurrent commits share a single force.
+ * A sorted index of where the latest value of each key starts is kept in memory,
+ * so values are read with a single positional read and keys can be iterated in order.
+ * On opening, a torn record at the end, left by a crash, is discarded;
+ * corruption anywhere else stops the journal from being opened, rather than losing the records after it.
+ * When most of the file consists of obsolete values, {@link #compact} rewrites it.
+ */
+@Restricted(NoExternalUse.class)
+public final class Journal implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(Journal.class.getName());
+
+    private static final int MAGIC = 0x4A434A31;
+
+    private static final byte WRITE = 1;
+    private static final byte DELETE = 2;
+
+    private final File file;
+
+    private FileChannel channel;
+
+    /**
+     * Where the latest value of each key is in the file.
+     */
+    private final NavigableMap<String, Entry> index = new TreeMap<>();
+
+    /**
+     * Total length of the latest values.
+     */
+    private long live;
+
+    /**
+     * Length of the valid part of the file, where the next record goes.
+     */
+    private long end;
+
+    /**
+     * Position at which the current file starts, so that positions keep increasing when {@link #compact} replaces it
+     * and any position awaited by {@link #force} from before counts as forced.
+     */
+    private long base;
+
+    /**
+     * How much of the file is known to be forced to disk, counted from {@link #base}.
+     */
+    private long forced;
+
+    private boolean forcing;
+
+    private boolean closed;
+
+    private static final class Entry {
+        final long position;
+        final int length;
+
+        Entry(long position, int length) {
+            this.position = position;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Opens a journal, creating it if it does not exist yet.
+     */
+    public Journal(@NonNull File file) throws IOException {
+        this.file = file;
+        boolean created = !file.exists();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (created) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, MAGIC));
+            channel.force(true);
+            end = forced = 4;
+        } else {
+            try {
+                load();
+            } catch (IOException x) {
+                channel.close();
+                throw x;
+            }
+        }
+    }
+
+    private synchronized void load() throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(4);
+        readFully(header, 0);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a journal");
+        }
+        long position = 4;
+        ByteBuffer lengths = ByteBuffer.allocate(8);
+        while (position < size) {
+            long next = -1;
+            if (position + 8 <= size) {
+                lengths.clear();
+                readFully(lengths, position);
+                int length = lengths.getInt(0);
+                if (length >= 4 && length <= size - position - 8) {
+                    ByteBuffer record = ByteBuffer.allocate(length);
+                    readFully(record, position + 8);
+                    CRC32 check = new CRC32();
+                    check.update(record.array());
+                    if ((int) check.getValue() == lengths.getInt(4)) {
+                        record.rewind();
+                        try {
+                            apply(record, position + 8);
+                        } catch (RuntimeException x) {
+                            throw corrupt(position, x);
+                        }
+                        next = position + 8 + length;
+                    } else if (position + 8 + length < size && !isZeros(position, size)) {
+                        throw corrupt(position, new IOException("checksum mismatch"));
+                    }
+                } else if (length >= 0 && length < 4 && !isZeros(position, size)) {
+                    throw corrupt(position, new IOException("invalid length " + length));
+                }
+                // otherwise the record would run past the end of the file
+            }
+            if (next == -1) {
+                // only the last record can have been torn by a crash while it was being written
+                LOGGER.log(Level.WARNING, "Discarding {0} bytes of incomplete data at the end of {1}", new Object[] {size - position, file});
+                channel.truncate(position);
+                channel.force(true);
+                break;
+            }
+            position = next;
+        }
+        end = position;
+        forced = base + position;
+    }
+
+    private IOException corrupt(long position, Exception cause) {
+        LOGGER.log(Level.SEVERE, "Not opening " + file + " as the record at " + position + " is corrupt; the file was left as it is", cause);
+        return new IOException(file + " is corrupt at " + position, cause);
+    }
+
+    /**
+     * Whether the file only has zeros from a given position, as some file systems leave when extending a file is torn.
+     */
+    private boolean isZeros(long position, long size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        while (position < size) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), size - position));
+            readFully(buf, position);
+            for (int i = 0; i < buf.limit(); i++) {
+                if (buf.get(i) != 0) {
+                    return false;
+                }
+            }
+            position += buf.limit();
+        }
+        return true;
+    }
+
+    /**
+     * Updates the index according to a record.
+     * @param offset position of the record in the file
+     */
+    private void apply(ByteBuffer record, long offset) {
+        int count = record.getInt();
+        for (int i = 0; i < count; i++) {
+            byte op = record.get();
+            byte[] keyBytes = new byte[record.getShort() & 0xFFFF];
+            record.get(keyBytes);
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            Entry old;
+            if (op == WRITE) {
+                int length = record.getInt();
+                old = index.put(key, new Entry(offset + record.position(), length));
+                live += length;
+                record.position(record.position() + length);
+            } else if (op == DELETE) {
+                old = index.remove(key);
+            } else {
+                throw new IllegalStateException("unknown operation " + op);
+            }
+            if (old != null) {
+                live -= old.length;
+            }
+        }
+    }
+
+    /**
+     * Whether obsolete values take up most of the file.
+     */
+    public synchronized boolean isWasteful() {
+        return end > 4 * live + 1024 * 1024;
+    }
+
+    /**
+     * Rewrites the file with only the latest values.
+     * @param keep which keys to keep
+     */
+    public synchronized void compact(@NonNull Predicate<String> keep) throws IOException {
+        awaitForce();
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tmp = new File(dir, file.getName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, ByteBuffer.allocate(4).putInt(0, MAGIC));
+            // write records of about a megabyte each, rather than holding everything in memory at once
+            Map<String, byte[]> batch = new LinkedHashMap<>();
+            long batchLength = 0;
+            for (String key : new ArrayList<>(index.keySet())) {
+                if (!keep.test(key)) {
+                    continue;
+                }
+                byte[] value = read(key);
+                batch.put(key, value);
+                batchLength += value.length;
+                if (batchLength >= 1024 * 1024) {
+                    writeFully(out, ByteBuffer.wrap(encode(batch, Collections.emptySet())));
+                    batch.clear();
+                    batchLength = 0;
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeFully(out, ByteBuffer.wrap(encode(batch, Collections.emptySet())));
+            }
+            out.force(true);
+        }
+        channel.close();
+        move(tmp, file);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index.clear();
+        live = 0;
+        base += end;
+        load();
+        LOGGER.fine(() -> "Compacted " + file + " to " + end + " bytes");
+    }
+
+    /**
+     * Closes this journal and puts its file in place of another, so that opening that one gives the same contents.
+     * As the file is replaced in one step, a journal can be filled in before it becomes visible under its final name.
+     */
+    public synchronized void moveTo(@NonNull File target) throws IOException {
+        close();
+        move(file, target);
+    }
+
+    private static void move(File from, File to) throws IOException {
+        Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (!Functions.isWindows()) {
+            try (FileChannel d = FileChannel.open(to.getAbsoluteFile().getParentFile().toPath())) {
+                d.force(true);
+            }
+        }
+    }
+
+    /**
+     * Gets the latest value of a key.
+     * @return null if there is none
+     */
+    public @CheckForNull byte[] read(@NonNull String key) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            Entry e;
+            FileChannel c;
+            synchronized (this) {
+                e = index.get(key);
+                c = channel();
+            }
+            if (e == null) {
+                return null;
+            }
+            ByteBuffer data = ByteBuffer.allocate(e.length);
+            try {
+                while (data.hasRemaining()) {
+                    if (c.read(data, e.position + data.position()) < 0) {
+                        throw new EOFException(file + " is truncated");
+                    }
+                }
+                return data.array();
+            } catch (ClosedChannelException x) {
+                // retry once if the channel was replaced by compact or closed by another thread being interrupted
+                if (x instanceof ClosedByInterruptException || attempt > 0) {
+                    throw x;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the channel, reopening it if it was closed by a thread being interrupted while using it.
+     */
+    private synchronized FileChannel channel() throws IOException {
+        if (!channel.isOpen() && !closed) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return channel;
+    }
+
+    /**
+     * Atomically and durably applies a set of changes.
+     * @param writes new values by key
+     * @param deletes keys to remove
+     */
+    public void commit(@NonNull Map<String, byte[]> writes, @NonNull Collection<String> deletes) throws IOException {
+        force(append(encode(writes, deletes)));
+    }
+
+    /**
+     * Atomically and durably adds values for those keys which have none,
+     * leaving alone any which were written in the meantime.
+     * @param writes values by key
+     * @return the number of values added
+     */
+    public int commitAbsent(@NonNull Map<String, byte[]> writes) throws IOException {
+        long target;
+        int count;
+        synchronized (this) {
+            Map<String, byte[]> absent = new LinkedHashMap<>(writes);
+            absent.keySet().removeIf(index::containsKey);
+            if (absent.isEmpty()) {
+                return 0;
+            }
+            target = append(encode(absent, Collections.emptySet()));
+            count = absent.size();
+        }
+        force(target);
+        return count;
+    }
+
+    /**
+     * Writes a record at the end of the file and indexes it.
+     * @return the new end of the file, counted from {@link #base}
+     */
+    private synchronized long append(byte[] record) throws IOException {
+        long position = end;
+        ByteBuffer buf = ByteBuffer.wrap(record);
+        FileChannel c = channel();
+        while (buf.hasRemaining()) {
+            c.write(buf, position + buf.position());
+        }
+        apply(ByteBuffer.wrap(record, 8, record.length - 8).slice(), position + 8);
+        end = position + record.length;
+        return base + end;
+    }
+
+    /**
+     * Waits until the file has been forced at least up to a given position,
+     * forcing it if no other thread is already doing so.
+     * The monitor is not held while forcing, so that reads and further commits can go on meanwhile,
+     * to be forced together next.
+     */
+    private void force(long target) throws IOException {
+        while (true) {
+            FileChannel c;
+            long upTo;
+            synchronized (this) {
+                awaitForce();
+                if (forced >= target) {
+                    return;
+                }
+                forcing = true;
+                c = channel();
+                upTo = base + end;
+            }
+            boolean done = false;
+            try {
+                c.force(false);
+                done = true;
+            } catch (ClosedChannelException x) {
+                // retry on the reopened channel if it was closed by another thread being interrupted
+                if (x instanceof ClosedByInterruptException) {
+                    throw x;
+                }
+                synchronized (this) {
+                    if (closed) {
+                        throw x;
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    forcing = false;
+                    if (done && c == channel) {
+                        forced = Math.max(forced, upTo);
+                    }
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for any other thread to finish forcing the file.
+     */
+    private synchronized void awaitForce() {
+        boolean interrupted = false;
+        while (forcing) {
+            try {
+                wait();
+            } catch (InterruptedException x) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Encodes a record: length, checksum, number of operations, then each operation.
+     */
+    private static byte[] encode(Map<String, byte[]> writes, Collection<String> deletes) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        out.writeLong(0); // length and checksum, filled in below
+        out.writeInt(writes.size() + deletes.size());
+        for (String key : deletes) {
+            out.writeByte(DELETE);
+            writeKey(out, key);
+        }
+        for (Map.Entry<String, byte[]> e : writes.entrySet()) {
+            out.writeByte(WRITE);
+            writeKey(out, e.getKey());
+            out.writeInt(e.getValue().length);
+            out.write(e.getValue());
+        }
+        byte[] record = baos.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(record, 8, record.length - 8);
+        ByteBuffer.wrap(record).putInt(0, record.length - 8).putInt(4, (int) crc.getValue());
+        return record;
+    }
+
+    private static void writeKey(DataOutputStream out, String key) throws IOException {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Key too long: " + key);
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    /**
+     * All keys, in order.
+     */
+    public synchronized @NonNull List<String> keys() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    /**
+     * A range of keys, in order, so that all keys can be iterated without copying them at once.
+     * @param after the last key of the previous range, or null to start from the first key
+     * @param limit maximum number of keys to return
+     */
+    public synchronized @NonNull List<String> keys(@CheckForNull String after, int limit) {
+        List<String> keys = new ArrayList<>(Math.min(limit, index.size()));
+        for (String key : after == null ? index.keySet() : index.tailMap(after, false).keySet()) {
+            if (keys.size() == limit) {
+                break;
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    /**
+     * Whether a key has a value, without reading it.
+     */
+    public synchronized boolean contains(@NonNull String key) {
+        return index.containsKey(key);
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+}
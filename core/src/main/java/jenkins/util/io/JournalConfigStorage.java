@@ -0,0 +1,77 @@
+package jenkins.util.io;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Map;
+import java.util.logging.Logger;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Keeps configuration files in a single append-only {@link Journal}, {@code config-storage.journal} in {@code JENKINS_HOME}.
+ *
+ * <p>
+ * Each {@link #commit} is atomic and only needs to force that one file.
+ * On startup, if most of the journal consists of obsolete contents, it gets rewritten
+ * with only the files whose directory still exists.
+ *
+ * <p>
+ * When the journal does not exist yet, it is created with the files already on disk,
+ * and only put in place once they have all been copied.
+ */
+@Restricted(NoExternalUse.class)
+public class JournalConfigStorage extends ConfigStorage {
+
+    private static final Logger LOGGER = Logger.getLogger(JournalConfigStorage.class.getName());
+
+    static final String NAME = "config-storage.journal";
+
+    private Journal journal;
+
+    public JournalConfigStorage(@NonNull File root) throws IOException {
+        super(root);
+        File file = new File(root, NAME);
+        if (!file.exists()) {
+            // import into another file first, so an interrupted import is not mistaken for a complete one
+            File importing = new File(root, NAME + ".import");
+            Files.deleteIfExists(importing.toPath());
+            journal = new Journal(importing);
+            int count;
+            try {
+                count = importFrom(root);
+                journal.moveTo(file);
+            } finally {
+                journal.close();
+            }
+            LOGGER.info(() -> "Moved " + count + " configuration files in " + root + " to " + file + "; the files on disk are no longer used");
+        }
+        journal = new Journal(file);
+        if (journal.isWasteful()) {
+            journal.compact(path -> new File(root, path).getParentFile().isDirectory());
+        }
+    }
+
+    @Override
+    protected @CheckForNull byte[] read(@NonNull String path) throws IOException {
+        return journal.read(path);
+    }
+
+    @Override
+    protected void commit(@NonNull Map<String, byte[]> writes, @NonNull Collection<String> deletes) throws IOException {
+        journal.commit(writes, deletes);
+    }
+
+    @Override
+    protected @NonNull Collection<String> list() {
+        return journal.keys();
+    }
+
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+}
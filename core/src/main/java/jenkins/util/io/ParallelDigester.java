@@ -0,0 +1,191 @@
+package jenkins.util.io;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Computes MD5 digests of many files in parallel, as when fingerprinting a workspace.
+ *
+ * <p>
+ * Meant to be used from a {@link hudson.FilePath.FileCallable}, so this runs on whichever JVM holds the files,
+ * using a pool of {@link #THREADS} threads there.
+ *
+ * <p>
+ * If {@link #CACHE} is set, the digest of each file is remembered along with its size, modification time and
+ * file key (the inode number on Unix), and reused as long as all of these are unchanged.
+ * Files modified within the last few seconds are not cached, since their modification time may not have changed yet
+ * if they are still being written. Files without a file key, as on Windows, are never cached.
+ */
+@Restricted(NoExternalUse.class)
+public final class ParallelDigester {
+
+    /**
+     * Number of files read at once.
+     */
+    public static /* non-final for Groovy */ int THREADS = SystemProperties.getInteger(ParallelDigester.class.getName() + ".threads",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Whether to reuse digests of unchanged files.
+     */
+    public static /* non-final for Groovy */ boolean CACHE = SystemProperties.getBoolean(ParallelDigester.class.getName() + ".cache");
+
+    /**
+     * Maximum number of digests remembered.
+     */
+    public static /* non-final for Groovy */ int CACHE_SIZE = SystemProperties.getInteger(ParallelDigester.class.getName() + ".cacheSize", 100_000);
+
+    private static final long SETTLED = TimeUnit.SECONDS.toMillis(2);
+
+    private static ForkJoinPool pool;
+
+    /**
+     * Digests by absolute path, least recently used first.
+     */
+    private static final Map<String, Cached> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private static final class Cached {
+        final long size;
+        final long lastModified;
+        final Object fileKey;
+        final String digest;
+
+        Cached(BasicFileAttributes attrs, String digest) {
+            this.size = attrs.size();
+            this.lastModified = attrs.lastModifiedTime().toMillis();
+            this.fileKey = attrs.fileKey();
+            this.digest = digest;
+        }
+
+        boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size() && lastModified == attrs.lastModifiedTime().toMillis() && fileKey.equals(attrs.fileKey());
+        }
+    }
+
+    private ParallelDigester() {}
+
+    /**
+     * Computes the digest of one file, reusing a remembered one if enabled and possible.
+     */
+    public static @NonNull String digest(@NonNull File file) throws IOException {
+        if (!CACHE) {
+            return Util.getDigestOf(file);
+        }
+        String path = file.getAbsolutePath();
+        BasicFileAttributes attrs = Files.readAttributes(Util.fileToPath(file), BasicFileAttributes.class);
+        synchronized (cache) {
+            Cached c = cache.get(path);
+            if (c != null && c.matches(attrs)) {
+                return c.digest;
+            }
+        }
+        String digest = Util.getDigestOf(file);
+        if (attrs.fileKey() != null && attrs.lastModifiedTime().toMillis() < System.currentTimeMillis() - SETTLED) {
+            synchronized (cache) {
+                cache.put(path, new Cached(attrs, digest));
+            }
+        }
+        return digest;
+    }
+
+    /**
+     * Computes the digests of files in parallel.
+     * @return the digests, in the same order as the files
+     * @throws Failure if some file could not be read
+     */
+    public static @NonNull String[] digest(@NonNull File[] files) throws IOException, InterruptedException {
+        String[] digests = new String[files.length];
+        if (files.length <= 1 || THREADS <= 1) {
+            for (int i = 0; i < files.length; i++) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                try {
+                    digests[i] = digest(files[i]);
+                } catch (IOException x) {
+                    throw new Failure(files[i], x);
+                }
+            }
+            return digests;
+        }
+        // cancelling the task does not interrupt the files being read, so each checks this before starting
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ForkJoinTask<?> task = pool().submit(() -> IntStream.range(0, files.length).parallel().forEach(i -> {
+            if (cancelled.get()) {
+                return;
+            }
+            try {
+                digests[i] = digest(files[i]);
+            } catch (IOException x) {
+                throw new UncheckedIOException(new Failure(files[i], x));
+            }
+        }));
+        try {
+            task.get();
+        } catch (InterruptedException x) {
+            cancelled.set(true);
+            task.cancel(true);
+            throw x;
+        } catch (ExecutionException x) {
+            Throwable cause = x.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+        return digests;
+    }
+
+    /**
+     * Thrown by {@link #digest(File[])} for a file which could not be read.
+     */
+    public static final class Failure extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final File file;
+
+        Failure(File file, IOException cause) {
+            super("Failed to compute digest for " + file, cause);
+            this.file = file;
+        }
+
+        public File getFile() {
+            return file;
+        }
+    }
+
+    private static synchronized ForkJoinPool pool() {
+        if (pool == null || pool.getParallelism() != THREADS) {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            pool = new ForkJoinPool(THREADS);
+        }
+        return pool;
+    }
+}
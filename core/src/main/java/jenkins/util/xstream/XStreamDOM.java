@@ -244,11 +244,11 @@ public class XStreamDOM {
      * Writes this {@link XStreamDOM} into {@link OutputStream}.
      */
     public void writeTo(OutputStream os) {
-        writeTo(XStream2.getDefaultDriver().createWriter(os));
+        writeTo(XStream2.getSharedDriver().createWriter(os));
     }
 
     public void writeTo(Writer w) {
-        writeTo(XStream2.getDefaultDriver().createWriter(w));
+        writeTo(XStream2.getSharedDriver().createWriter(w));
     }
 
     public void writeTo(HierarchicalStreamWriter w) {
@@ -265,11 +265,11 @@ public class XStreamDOM {
     }
 
     public static XStreamDOM from(InputStream in) {
-        return from(XStream2.getDefaultDriver().createReader(in));
+        return from(XStream2.getSharedDriver().createReader(in));
     }
 
     public static XStreamDOM from(Reader in) {
-        return from(XStream2.getDefaultDriver().createReader(in));
+        return from(XStream2.getSharedDriver().createReader(in));
     }
 
     public static XStreamDOM from(HierarchicalStreamReader in) {
@@ -34,8 +34,10 @@ import java.util.logging.Logger;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import jenkins.model.Jenkins;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.Beta;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.HttpResponse;
 import org.kohsuke.stapler.StaplerRequest;
 
@@ -139,6 +141,33 @@ public class WebSockets {
         return provider != null;
     }
 
+    /**
+     * Checks that a request comes from a page served by this Jenkins.
+     * Browsers do not restrict cross-origin WebSocket connections, so endpoints acting on behalf of the user must check this themselves.
+     * @return true if the {@code Origin} header matches the root URL
+     */
+    @Restricted(NoExternalUse.class)
+    public static boolean isSameOrigin(StaplerRequest req) {
+        final String actualOrigin = req.getHeader("Origin");
+
+        String o = Jenkins.get().getRootUrlFromRequest();
+        String removeSuffix1 = "/";
+        if (o.endsWith(removeSuffix1)) {
+            o = o.substring(0, o.length() - removeSuffix1.length());
+        }
+        String removeSuffix2 = req.getContextPath();
+        if (o.endsWith(removeSuffix2)) {
+            o = o.substring(0, o.length() - removeSuffix2.length());
+        }
+        final String expectedOrigin = o;
+
+        if (actualOrigin == null || !actualOrigin.equals(expectedOrigin)) {
+            LOGGER.log(Level.FINE, () -> "Rejecting origin: " + actualOrigin + "; expected was from request: " + expectedOrigin);
+            return false;
+        }
+        return true;
+    }
+
     private WebSockets() {}
 
 }
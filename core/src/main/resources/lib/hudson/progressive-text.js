@@ -9,6 +9,7 @@ Behaviour.specify(
     let startOffset = holder.getAttribute("data-start-offset");
     let onFinishEvent = holder.getAttribute("data-on-finish-event");
     let errorMessage = holder.getAttribute("data-error-message");
+    let webSocketHref = holder.getAttribute("data-web-socket-href");
 
     var scroller = new AutoScroller(document.body);
     /*
@@ -87,8 +88,53 @@ Behaviour.specify(
         });
       });
     }
-    document.getElementById(idref).fetchedBytes =
-      startOffset !== "" ? Number(startOffset) : 0;
-    fetchNext(document.getElementById(idref), href, onFinishEvent);
+    /*
+  receives updates pushed by the server, falling back to fetchNext if the connection is lost
+  @param e
+      DOM node that gets the text appended to
+  */
+    function follow(e, onFinishEvent) {
+      var url = new URL(webSocketHref, document.location.href);
+      url.protocol = url.protocol === "https:" ? "wss:" : "ws:";
+      url.searchParams.set("start", e.fetchedBytes);
+      var completed = false;
+      var socket = new WebSocket(url.href);
+      socket.onmessage = function (event) {
+        var message = JSON.parse(event.data);
+        var stickToBottom = scroller.isSticking();
+        if (message.text !== "") {
+          var p = document.createElement("DIV");
+          e.appendChild(p);
+          p.innerHTML = message.text;
+          Behaviour.applySubtree(p);
+          if (stickToBottom) {
+            scroller.scrollToBottom();
+          }
+        }
+        e.fetchedBytes = message.end;
+        if (message.completed) {
+          completed = true;
+          if (spinner !== "") {
+            document.getElementById(spinner).style.display = "none";
+          }
+          if (onFinishEvent) {
+            window.dispatchEvent(new Event(onFinishEvent));
+          }
+        }
+      };
+      socket.onclose = function () {
+        if (!completed) {
+          fetchNext(e, href, onFinishEvent);
+        }
+      };
+    }
+
+    var output = document.getElementById(idref);
+    output.fetchedBytes = startOffset !== "" ? Number(startOffset) : 0;
+    if (webSocketHref && window.WebSocket) {
+      follow(output, onFinishEvent);
+    } else {
+      fetchNext(output, href, onFinishEvent);
+    }
   },
 );
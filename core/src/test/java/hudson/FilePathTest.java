@@ -43,6 +43,7 @@ import hudson.model.TaskListener;
 import hudson.os.WindowsUtil;
 import hudson.remoting.VirtualChannel;
 import hudson.slaves.WorkspaceList;
+import hudson.util.DirScanner;
 import hudson.util.StreamTaskListener;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -256,6 +257,33 @@ public class FilePathTest {
             }
     }
 
+    @Test public void parallelCopyRecursiveTo() throws Exception {
+        File src = temp.newFolder("src");
+        FilePath from = new FilePath(src);
+        for (int i = 0; i < 20; i++) {
+            from.child("dir" + i % 3 + "/file" + i + ".txt").write("content " + i, "UTF-8");
+        }
+        from.child("lib.jar").write("not really compressed", "UTF-8");
+        int oldStreams = FilePath.PARALLEL_TRANSFER_STREAMS;
+        FilePath.PARALLEL_TRANSFER_STREAMS = 4;
+        try {
+            File toRemote = temp.newFolder("toRemote");
+            assertEquals(21, from.copyRecursiveTo(new DirScanner.Glob("**", null), new FilePath(channels.british, toRemote.getPath()), "src", TarCompression.GZIP));
+            File toLocal = temp.newFolder("toLocal");
+            assertEquals(21, new FilePath(channels.british, src.getPath()).copyRecursiveTo(new DirScanner.Glob("**", null), new FilePath(toLocal), "src", TarCompression.GZIP));
+            for (File dst : new File[] {toRemote, toLocal}) {
+                for (int i = 0; i < 20; i++) {
+                    assertEquals("content " + i, Files.readString(new File(dst, "dir" + i % 3 + "/file" + i + ".txt").toPath()));
+                }
+                assertEquals("not really compressed", Files.readString(new File(dst, "lib.jar").toPath()));
+            }
+        } finally {
+            FilePath.PARALLEL_TRANSFER_STREAMS = oldStreams;
+        }
+        assertTrue(FilePath.isAlreadyCompressed("dir/archive.TGZ"));
+        assertFalse(FilePath.isAlreadyCompressed("dir.zip/file"));
+    }
+
     @Issue("JENKINS-4039")
     @Test public void archiveBug() throws Exception {
             FilePath d = new FilePath(channels.french, temp.getRoot().getPath());
@@ -216,6 +216,31 @@ public class FingerprintTest {
         assertFalse(x.removeAll(y));
     }
 
+    @Test public void modifyUnsorted() {
+        RangeSet x = RangeSet.fromString("5,1-2,3", true);
+        assertEquals("[5,6),[1,3),[3,4)", x.toString());
+        assertTrue(x.includes(3));
+        assertFalse(x.includes(4));
+        x.add(4);
+        assertEquals("[1,6)", x.toString());
+        assertEquals("1-5", RangeSet.ConverterImpl.serialize(x));
+    }
+
+    @Test public void manyRanges() {
+        RangeSet x = new RangeSet();
+        for (int i = 1000; i > 0; i -= 2) {
+            x.add(i);
+        }
+        assertEquals(500, x.getRanges().size());
+        assertTrue(x.includes(2));
+        assertFalse(x.includes(3));
+        for (int i = 1; i < 1000; i += 2) {
+            x.add(i);
+        }
+        assertEquals("[1,1001)", x.toString());
+        assertEquals(x, RangeSet.fromString("1-1000", false));
+    }
+
     @Test public void deserialize() throws Exception {
         assertEquals("Fingerprint["
                 + "original=stapler/org.kohsuke.stapler:stapler-jelly #123,"
@@ -4,6 +4,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThrows;
@@ -21,14 +22,24 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.stream.Collectors;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.jvnet.hudson.test.Issue;
+import org.jvnet.hudson.test.LoggerRule;
 
 public class AtomicFileWriterTest {
     private static final String PREVIOUS = "previous value \n blah";
@@ -40,6 +51,8 @@ public class AtomicFileWriterTest {
     private static Set<PosixFilePermission> DEFAULT_GIVEN_PERMISSIONS;
     @ClassRule
     public static TemporaryFolder tmp = new TemporaryFolder();
+    @Rule
+    public LoggerRule logging = new LoggerRule().record(AtomicFileWriter.class, Level.FINER).capture(100);
     File af;
     AtomicFileWriter afw;
     String expectedContent = "hello world";
@@ -184,4 +197,47 @@ public class AtomicFileWriterTest {
 
         assertThat(Files.getPosixFilePermissions(filePath), equalTo(DEFAULT_GIVEN_PERMISSIONS));
     }
+
+    @Test
+    public void groupCommit() throws Exception {
+        assumeFalse(Functions.isWindows());
+        File[] dirs = {tmp.newFolder(), tmp.newFolder()};
+        long window = AtomicFileWriter.GROUP_COMMIT_WINDOW;
+        AtomicFileWriter.GROUP_COMMIT_WINDOW = 500;
+        try {
+            ExecutorService executor = Executors.newFixedThreadPool(20);
+            try {
+                List<Future<?>> commits = new ArrayList<>();
+                for (int i = 0; i < 20; i++) {
+                    Path file = new File(dirs[i % 2], "file" + i).toPath();
+                    String content = "content " + i;
+                    commits.add(executor.submit(() -> {
+                        AtomicFileWriter w = new AtomicFileWriter(file, StandardCharsets.UTF_8);
+                        try {
+                            w.write(content);
+                            w.commit();
+                        } finally {
+                            w.abort();
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> commit : commits) {
+                    commit.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            for (int i = 0; i < 20; i++) {
+                assertEquals("content " + i, Files.readString(new File(dirs[i % 2], "file" + i).toPath()));
+            }
+            List<LogRecord> batches = logging.getRecords().stream()
+                    .filter(r -> r.getMessage().equals("forced {0} directories together"))
+                    .collect(Collectors.toList());
+            // each of the 20 commits is in some batch, but directories are forced once per batch
+            assertThat(batches.stream().mapToInt(r -> (Integer) r.getParameters()[0]).sum(), lessThan(20));
+        } finally {
+            AtomicFileWriter.GROUP_COMMIT_WINDOW = window;
+        }
+    }
 }
@@ -0,0 +1,99 @@
+package hudson.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class CoalescingOutputStreamTest {
+
+    /**
+     * Counts calls to the underlying stream.
+     */
+    private static final class CountingStream extends OutputStream {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int writes;
+        boolean fail;
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (fail) {
+                throw new IOException("disk full");
+            }
+            writes++;
+            data.write(b, off, len);
+        }
+
+        synchronized String content() {
+            return data.toString(StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Test
+    public void firstWriteGoesThroughAndBurstsAreCoalesced() throws Exception {
+        CountingStream under = new CountingStream();
+        CoalescingOutputStream out = new CoalescingOutputStream(under, 1024, 60_000);
+        out.write("first\n".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(1, under.writes);
+        for (int i = 0; i < 100; i++) {
+            out.write('x');
+            out.flush();
+        }
+        assertEquals(1, under.writes);
+        out.close();
+        assertEquals(2, under.writes);
+        assertThat(under.content(), equalTo("first\n" + "x".repeat(100)));
+    }
+
+    @Test
+    public void fullBufferIsWritten() throws Exception {
+        CountingStream under = new CountingStream();
+        CoalescingOutputStream out = new CoalescingOutputStream(under, 10, 60_000);
+        out.write('a');
+        out.write("bcdefghij".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(1, under.writes);
+        out.write("klm".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(2, under.writes);
+        out.write("0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(4, under.writes);
+        out.close();
+        assertThat(under.content(), equalTo("abcdefghijklm0123456789ABCDEF"));
+    }
+
+    @Test
+    public void bufferIsWrittenAfterDelay() throws Exception {
+        CountingStream under = new CountingStream();
+        CoalescingOutputStream out = new CoalescingOutputStream(under, 1024, 50);
+        out.write('a');
+        out.write('b');
+        out.write('c');
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!under.content().equals("abc")) {
+            assertThat("flushed in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        out.close();
+    }
+
+    @Test
+    public void backgroundFailureIsReported() throws Exception {
+        CountingStream under = new CountingStream();
+        CoalescingOutputStream out = new CoalescingOutputStream(under, 1024, 60_000);
+        out.write('a');
+        out.write('b');
+        under.fail = true;
+        assertThrows(IOException.class, out::flushNow);
+        assertThrows(IOException.class, out::close);
+    }
+}
@@ -28,6 +28,9 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.arrayContaining;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import com.thoughtworks.xstream.converters.basic.AbstractSingleValueConverter;
 import hudson.model.Describable;
@@ -65,6 +68,22 @@ public class DescribableListTest {
         assertThat(count.get(), is(3));
     }
 
+    @Test
+    public void lookupsFollowModifications() throws Exception {
+        DescribableList<Datum, Descriptor<Datum>> list = new DescribableList<>(Saveable.NOOP);
+        assertNull(list.get(Datum.class));
+        Datum d1 = new Datum(1);
+        list.add(d1);
+        assertSame(d1, list.get(Datum.class));
+        assertSame(d1, list.get(Datum.class));
+        Datum d2 = new Datum(2);
+        list.replace(d2);
+        assertSame(d2, list.get(Datum.class));
+        list.removeAll(Datum.class);
+        assertNull(list.get(Datum.class));
+        assertTrue(list.isEmpty());
+    }
+
     private static final class Data {
 
         final DescribableList<Datum, Descriptor<Datum>> list = new DescribableList<>();
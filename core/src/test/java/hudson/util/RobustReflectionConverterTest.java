@@ -27,12 +27,15 @@ package hudson.util;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
 import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.annotations.XStreamOmitField;
 import com.thoughtworks.xstream.converters.ConversionException;
 import com.thoughtworks.xstream.converters.MarshallingContext;
 import com.thoughtworks.xstream.converters.UnmarshallingContext;
@@ -40,6 +43,7 @@ import com.thoughtworks.xstream.converters.collections.CollectionConverter;
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 import com.thoughtworks.xstream.mapper.Mapper;
+import com.thoughtworks.xstream.mapper.MapperWrapper;
 import com.thoughtworks.xstream.security.InputManipulationException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -132,6 +136,55 @@ public class RobustReflectionConverterTest {
                 "</hold>", xs.toXML(h));
     }
 
+    @Test
+    public void cachedPlans() {
+        XStream2 xs = new XStream2();
+        xs.alias("dance", Dance.class);
+        xs.aliasField("partner", Dance.class, "lead");
+        xs.processAnnotations(Dance.class);
+        for (int i = 0; i < 2; i++) { // second time through the cached plan
+            Dance d = (Dance) xs.fromXML("<dance><name>tango</name><tempo>fast</tempo><partner>Ana</partner></dance>");
+            assertEquals("tango", d.name);
+            assertEquals("Ana", d.lead);
+            assertNull(d.notes);
+        }
+
+        Dance d = new Dance();
+        d.name = "waltz";
+        d.notes = "private";
+        String xml = xs.toXML(d);
+        assertThat(xml, not(containsString("private")));
+        d = (Dance) xs.fromXML(xml);
+        assertEquals("waltz", d.name);
+        assertNull(d.notes);
+
+        // aliases and mappers are consulted on each read, not cached with the plan
+        xs.aliasField("leader", Dance.class, "lead");
+        assertEquals("Bo", ((Dance) xs.fromXML("<dance><leader>Bo</leader></dance>")).lead);
+        synchronized (xs) {
+            xs.setMapper(new MapperWrapper(xs.getMapperInjectionPoint()) {
+                @Override
+                public String realMember(Class type, String serialized) {
+                    return type == Dance.class && serialized.equals("nom") ? "name" : super.realMember(type, serialized);
+                }
+            });
+        }
+        assertEquals("rumba", ((Dance) xs.fromXML("<dance><nom>rumba</nom></dance>")).name);
+
+        // plans are rebuilt when a critical field is added
+        String broken = "<dance><name class='no.such.Type'/></dance>";
+        assertNull(((Dance) xs.fromXML(broken)).name);
+        xs.addCriticalField(Dance.class, "name");
+        assertThrows(CriticalXStreamException.class, () -> xs.fromXML(broken));
+    }
+
+    public static class Dance {
+        String name;
+        String lead;
+        @XStreamOmitField
+        String notes;
+    }
+
     public static class Hold {
         List<String> items;
     }
@@ -0,0 +1,58 @@
+package jenkins.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class DownloadsTest {
+
+    @Test
+    public void parseRange() {
+        assertArrayEquals(new long[] {0, 9}, Downloads.parseRange("bytes=0-9", 100));
+        assertArrayEquals(new long[] {90, 99}, Downloads.parseRange("bytes=90-", 100));
+        assertArrayEquals(new long[] {90, 99}, Downloads.parseRange("bytes=-10", 100));
+        assertArrayEquals(new long[] {0, 99}, Downloads.parseRange("bytes=-1000", 100));
+        assertArrayEquals(new long[] {50, 99}, Downloads.parseRange("bytes=50-1000", 100));
+        assertArrayEquals(new long[0], Downloads.parseRange("bytes=0-1,5-6", 100));
+        assertArrayEquals(new long[0], Downloads.parseRange("bytes=9-0", 100));
+        assertArrayEquals(new long[0], Downloads.parseRange("lines=1-2", 100));
+        assertThat(Downloads.parseRange("bytes=100-", 100), nullValue());
+        assertThat(Downloads.parseRange("bytes=-0", 100), nullValue());
+    }
+
+    @Test
+    public void matches() {
+        String etag = "\"abc\"";
+        assertTrue(Downloads.matches("\"abc\"", etag));
+        assertTrue(Downloads.matches("\"x\", \"abc\"", etag));
+        assertTrue(Downloads.matches("W/\"abc\"", etag));
+        assertTrue(Downloads.matches("*", etag));
+        assertFalse(Downloads.matches("\"abcd\"", etag));
+        assertFalse(Downloads.matches("abc", etag));
+        assertFalse(Downloads.matches(null, etag));
+    }
+
+    @Test
+    public void window() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Downloads.Counter counter = new Downloads.Counter(out);
+        Downloads.Window window = new Downloads.Window(counter, 3, 4, true);
+        window.write("01".getBytes(StandardCharsets.US_ASCII));
+        window.write("2345".getBytes(StandardCharsets.US_ASCII));
+        assertFalse(window.isDone());
+        window.write('6');
+        assertTrue(window.isDone());
+        assertThrows(IOException.class, () -> window.write('7'));
+        assertEquals("3456", out.toString(StandardCharsets.US_ASCII));
+        assertEquals(4, counter.getCount());
+    }
+}
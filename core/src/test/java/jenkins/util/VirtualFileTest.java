@@ -44,6 +44,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeFalse;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.ChannelRule;
 import hudson.FilePath;
 import hudson.Functions;
 import hudson.Util;
@@ -59,14 +60,18 @@ import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.OpenOption;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
 import org.apache.commons.io.FileUtils;
@@ -82,6 +87,7 @@ import org.jvnet.hudson.test.Issue;
 public class VirtualFileTest {
 
     @Rule public TemporaryFolder tmp = new TemporaryFolder();
+    @Rule public ChannelRule channels = new ChannelRule();
 
     @Issue("SECURITY-162")
     @Test public void outsideSymlinks() throws Exception {
@@ -146,6 +152,57 @@ public class VirtualFileTest {
     }
     /** Roughly analogous to {@code org.jenkinsci.plugins.compress_artifacts.ZipStorage}. */
 
+    @Test public void listWithAttributes() throws Exception {
+        File root = tmp.getRoot();
+        FilePath rootF = new FilePath(root);
+        rootF.child("top.txt").write("top", null);
+        rootF.child("sub/mid.txt").write("", null);
+        rootF.child("sub/subsub/lowest.txt").write("lowest", null);
+        for (VirtualFile vf : new VirtualFile[] {VirtualFile.forFile(root), VirtualFile.forFilePath(rootF), VirtualFile.forFilePath(new FilePath(channels.french, root.getPath()))}) {
+            List<VirtualFile.Attributes> children = new ArrayList<>(vf.listWithAttributes());
+            children.sort(Comparator.comparing(VirtualFile.Attributes::getName));
+            assertEquals("[sub, top.txt]", children.stream().map(VirtualFile.Attributes::getName).collect(Collectors.toList()).toString());
+            assertTrue(children.get(0).isDirectory());
+            assertFalse(children.get(0).isFile());
+            assertTrue(children.get(1).isFile());
+            assertEquals(3, children.get(1).length());
+            assertEquals(new File(root, "top.txt").lastModified(), children.get(1).lastModified());
+            assertTrue(children.get(1).canRead());
+
+            List<String> walked = new ArrayList<>();
+            vf.walkWithAttributes(a -> walked.add(a.getPath() + (a.isDirectory() ? "/" : ":" + a.length())));
+            walked.sort(null);
+            assertEquals("[sub/, sub/mid.txt:0, sub/subsub/, sub/subsub/lowest.txt:6, top.txt:3]", walked.toString());
+
+            assertThat(vf.child("top.txt").listWithAttributes(), empty());
+            assertThat(vf.child("nonexistent").listWithAttributes(), empty());
+        }
+    }
+
+    @Test public void walkWithAttributesRemote() throws Exception {
+        File root = tmp.getRoot();
+        FilePath rootF = new FilePath(root);
+        for (int i = 0; i < 100; i++) {
+            rootF.child("d" + i + "/f.txt").write("x".repeat(i), null);
+        }
+        VirtualFile vf = VirtualFile.forFilePath(new FilePath(channels.french, root.getPath()));
+        Map<String, Long> walked = new TreeMap<>();
+        vf.walkWithAttributes(a -> walked.put(a.getPath(), a.isDirectory() ? -1 : a.length()));
+        assertEquals(200, walked.size());
+        assertEquals(Long.valueOf(-1), walked.get("d42"));
+        assertEquals(Long.valueOf(42), walked.get("d42/f.txt"));
+
+        List<String> seen = new ArrayList<>();
+        IOException x = assertThrows(IOException.class, () -> vf.walkWithAttributes(a -> {
+            seen.add(a.getPath());
+            if (seen.size() == 3) {
+                throw new IOException("enough");
+            }
+        }));
+        assertEquals("enough", x.getMessage());
+        assertThat(seen, hasSize(3));
+    }
+
     private static final class Ram extends VirtualFile {
         private final Set<String> paths; // e.g., [/very/deep/path/here]
         private final String path; // e.g., empty string or /very or /very/deep/path/here
@@ -0,0 +1,125 @@
+package jenkins.util.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JournalTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void commitAbsentKeepsNewerValues() throws Exception {
+        File file = new File(tmp.getRoot(), "test.journal");
+        try (Journal j = new Journal(file)) {
+            j.commit(Collections.singletonMap("a", bytes("saved")), Collections.emptySet());
+            Map<String, byte[]> migrated = new LinkedHashMap<>();
+            migrated.put("a", bytes("old a"));
+            migrated.put("b", bytes("old b"));
+            assertEquals(1, j.commitAbsent(migrated));
+            assertEquals(0, j.commitAbsent(migrated));
+            assertEquals("saved", string(j.read("a")));
+            assertTrue(j.contains("b"));
+            assertFalse(j.contains("c"));
+        }
+        try (Journal j = new Journal(file)) {
+            assertEquals("saved", string(j.read("a")));
+            assertEquals("old b", string(j.read("b")));
+        }
+    }
+
+    @Test
+    public void tornRecordAtEndIsDiscarded() throws Exception {
+        File file = new File(tmp.getRoot(), "test.journal");
+        try (Journal j = new Journal(file)) {
+            j.commit(Collections.singletonMap("a", bytes("one")), Collections.emptySet());
+            j.commit(Collections.singletonMap("b", bytes("two")), Collections.emptySet());
+        }
+        long length = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length - 2);
+        }
+        try (Journal j = new Journal(file)) {
+            assertEquals("one", string(j.read("a")));
+            assertFalse(j.contains("b"));
+        }
+        long truncated = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(truncated + 100);
+        }
+        try (Journal j = new Journal(file)) {
+            assertEquals("one", string(j.read("a")));
+            j.commit(Collections.singletonMap("c", bytes("three")), Collections.emptySet());
+        }
+        try (Journal j = new Journal(file)) {
+            assertEquals("three", string(j.read("c")));
+        }
+    }
+
+    @Test
+    public void corruptRecordBeforeEndIsKept() throws Exception {
+        File file = new File(tmp.getRoot(), "test.journal");
+        try (Journal j = new Journal(file)) {
+            j.commit(Collections.singletonMap("a", bytes("one")), Collections.emptySet());
+            j.commit(Collections.singletonMap("b", bytes("two")), Collections.emptySet());
+        }
+        byte[] data = Files.readAllBytes(file.toPath());
+        data[data.length / 3] ^= 1;
+        Files.write(file.toPath(), data);
+        assertThrows(IOException.class, () -> new Journal(file));
+        assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void commitsDuringCompaction() throws Exception {
+        File file = new File(tmp.getRoot(), "test.journal");
+        try (Journal j = new Journal(file)) {
+            for (int i = 0; i < 100; i++) {
+                j.commit(Collections.singletonMap("k", bytes("v" + i)), Collections.emptySet());
+            }
+            Thread compactor = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 10; i++) {
+                        j.compact(k -> true);
+                    }
+                } catch (IOException x) {
+                    throw new UncheckedIOException(x);
+                }
+            });
+            compactor.start();
+            for (int i = 0; i < 100; i++) {
+                j.commit(Collections.singletonMap("k" + i, bytes("w" + i)), Collections.emptySet());
+            }
+            compactor.join();
+            assertEquals(101, j.size());
+        }
+        try (Journal j = new Journal(file)) {
+            assertEquals("w99", string(j.read("k99")));
+            assertEquals("v99", string(j.read("k")));
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] data) {
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,58 @@
+package jenkins.util.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import hudson.Util;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParallelDigesterTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void sameAsSequential() throws Exception {
+        File[] files = new File[50];
+        String[] expected = new String[files.length];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = tmp.newFile();
+            // some larger than the read buffer
+            Files.writeString(files[i].toPath(), String.valueOf(i).repeat(i * 1000), StandardCharsets.UTF_8);
+            expected[i] = Util.getDigestOf(Files.newInputStream(files[i].toPath()));
+        }
+        assertArrayEquals(expected, ParallelDigester.digest(files));
+    }
+
+    @Test
+    public void failure() throws Exception {
+        File missing = new File(tmp.getRoot(), "missing");
+        File[] files = {tmp.newFile(), missing, tmp.newFile()};
+        ParallelDigester.Failure x = assertThrows(ParallelDigester.Failure.class, () -> ParallelDigester.digest(files));
+        assertEquals(missing, x.getFile());
+    }
+
+    @Test
+    public void cacheNoticesModifications() throws Exception {
+        boolean cache = ParallelDigester.CACHE;
+        ParallelDigester.CACHE = true;
+        try {
+            File f = tmp.newFile();
+            Files.writeString(f.toPath(), "one", StandardCharsets.UTF_8);
+            f.setLastModified(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1));
+            assertEquals(Util.getDigestOf("one"), ParallelDigester.digest(f));
+            assertEquals(Util.getDigestOf("one"), ParallelDigester.digest(f));
+            Files.writeString(f.toPath(), "two", StandardCharsets.UTF_8);
+            assertEquals(Util.getDigestOf("two"), ParallelDigester.digest(f));
+        } finally {
+            ParallelDigester.CACHE = cache;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package hudson;
+
+import static org.junit.Assert.assertTrue;
+
+import hudson.remoting.Channel;
+import hudson.remoting.ChannelBuilder;
+import hudson.remoting.FastPipedInputStream;
+import hudson.remoting.FastPipedOutputStream;
+import hudson.util.DirScanner;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class FilePathCopyBenchmarkTest {
+    @Test
+    public void runBenchmark() throws Exception {
+        // run the minimum possible number of iterations
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .mode(Mode.AverageTime)
+                .forks(1)
+                .result("jmh-report.json")
+                .resultFormat(ResultFormatType.JSON)
+                .operationsPerInvocation(1)
+                .threads(1)
+                .warmupForks(0)
+                .warmupIterations(0)
+                .measurementBatchSize(1)
+                .measurementIterations(1)
+                .timeUnit(TimeUnit.MILLISECONDS)
+                .shouldFailOnError(true)
+                .include(FilePathCopyBenchmarkTest.class.getName() + ".*");
+        new Runner(options.build()).run();
+        assertTrue(Files.exists(Paths.get("jmh-report.json")));
+    }
+
+    /**
+     * Copies files from an agent connected through an in-memory loopback channel,
+     * half of them text and half of them random data as in already compressed formats.
+     */
+    @JmhBenchmark
+    public static class CopyBenchmark {
+        public static class StateImpl extends JmhBenchmarkState {
+            @Param({"1", "4"})
+            int streams;
+
+            ExecutorService executors;
+            Channel local;
+            Channel remote;
+            File src;
+            File dst;
+
+            @Override
+            public void setup() throws Exception {
+                executors = Executors.newCachedThreadPool();
+                FastPipedInputStream p1i = new FastPipedInputStream();
+                FastPipedInputStream p2i = new FastPipedInputStream();
+                FastPipedOutputStream p1o = new FastPipedOutputStream(p1i);
+                FastPipedOutputStream p2o = new FastPipedOutputStream(p2i);
+                Future<Channel> f1 = executors.submit(() -> new ChannelBuilder("controller", executors).withMode(Channel.Mode.BINARY).build(p1i, p2o));
+                Future<Channel> f2 = executors.submit(() -> new ChannelBuilder("agent", executors).withMode(Channel.Mode.BINARY).build(p2i, p1o));
+                local = f1.get();
+                remote = f2.get();
+
+                src = Files.createTempDirectory("src").toFile();
+                dst = Files.createTempDirectory("dst").toFile();
+                Random random = new Random(0);
+                byte[] data = new byte[1024 * 1024];
+                for (int i = 0; i < 32; i++) {
+                    if (i % 2 == 0) {
+                        random.nextBytes(data);
+                        Files.write(new File(src, "file" + i + ".zip").toPath(), data);
+                    } else {
+                        try (OutputStream out = Files.newOutputStream(new File(src, "file" + i + ".log").toPath())) {
+                            for (int j = 0; j < data.length / 32; j++) {
+                                out.write(("line " + j + " of file " + i + "\n").getBytes(StandardCharsets.UTF_8));
+                            }
+                        }
+                    }
+                }
+                FilePath.PARALLEL_TRANSFER_STREAMS = streams;
+            }
+
+            @Override
+            public void tearDown() {
+                FilePath.PARALLEL_TRANSFER_STREAMS = 1;
+                try {
+                    local.close();
+                    local.join();
+                    remote.join();
+                    Util.deleteRecursive(src);
+                    Util.deleteRecursive(dst);
+                } catch (IOException | InterruptedException x) {
+                    throw new AssertionError(x);
+                } finally {
+                    executors.shutdownNow();
+                }
+            }
+        }
+
+        @Benchmark
+        public void copyFromAgent(StateImpl state, Blackhole blackhole) throws Exception {
+            blackhole.consume(new FilePath(state.remote, state.src.getPath())
+                    .copyRecursiveTo(new DirScanner.Glob("**", null), new FilePath(state.dst), "benchmark", FilePath.TarCompression.GZIP));
+        }
+    }
+}
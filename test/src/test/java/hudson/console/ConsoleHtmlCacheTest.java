@@ -0,0 +1,109 @@
+package hudson.console;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import java.io.File;
+import java.io.StringWriter;
+import org.htmlunit.Page;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+
+public class ConsoleHtmlCacheTest {
+
+    @Rule public JenkinsRule r = new JenkinsRule();
+
+    private long oldMaxSize;
+
+    @Before
+    public void enable() {
+        oldMaxSize = ConsoleHtmlCache.MAX_SIZE;
+        ConsoleHtmlCache.MAX_SIZE = 1024 * 1024;
+    }
+
+    @After
+    public void restore() {
+        ConsoleHtmlCache.MAX_SIZE = oldMaxSize;
+    }
+
+    @Test
+    public void completedBuildIsRenderedOnce() throws Exception {
+        FreeStyleBuild b = build();
+        File dir = new File(r.jenkins.getRootDir(), "caches/console-html");
+
+        StringWriter first = new StringWriter();
+        long end = b.getLogText().writeHtmlTo(0, first);
+        assertThat(first.toString(), containsString("/root'>your home</a>"));
+        assertThat(dir.listFiles(), arrayWithSize(1));
+
+        StringWriter second = new StringWriter();
+        assertEquals(end, b.getLogText().writeHtmlTo(0, second));
+        assertEquals(first.toString(), second.toString());
+
+        // rendered within a request, links are relative to the context path, so this is a separate entry
+        JenkinsRule.WebClient wc = r.createWebClient();
+        Page miss = wc.goTo(b.getUrl() + "logText/progressiveHtml?start=0", "text/html");
+        assertThat(dir.listFiles(), arrayWithSize(2));
+        Page hit = wc.goTo(b.getUrl() + "logText/progressiveHtml?start=0", "text/html");
+        assertEquals(String.valueOf(end), hit.getWebResponse().getResponseHeaderValue("X-Text-Size"));
+        assertThat(hit.getWebResponse().getContentAsString(), containsString(r.contextPath + "/root'>your home</a>"));
+        assertEquals(miss.getWebResponse().getContentAsString().replace("\r\n", "\n"), hit.getWebResponse().getContentAsString().replace("\r\n", "\n"));
+
+        ConsoleHtmlCache.get().onChange();
+        assertThat(dir.listFiles(), emptyArray());
+    }
+
+    @Test
+    public void annotatorStateBypassesCache() throws Exception {
+        FreeStyleBuild b = build();
+        File dir = new File(r.jenkins.getRootDir(), "caches/console-html");
+        JenkinsRule.WebClient wc = r.createWebClient();
+        Page miss = wc.goTo(b.getUrl() + "logText/progressiveHtml?start=0", "text/html");
+        String state = miss.getWebResponse().getResponseHeaderValue("X-ConsoleAnnotator");
+        assertNotNull(state);
+        assertThat(dir.listFiles(), arrayWithSize(1));
+
+        wc.addRequestHeader("X-ConsoleAnnotator", state);
+        Page rendered = wc.goTo(b.getUrl() + "logText/progressiveHtml?start=0", "text/html");
+        // only a fresh rendering sends back annotator state
+        assertNotNull(rendered.getWebResponse().getResponseHeaderValue("X-ConsoleAnnotator"));
+        assertThat(rendered.getWebResponse().getContentAsString(), containsString("your home</a>"));
+        assertThat(dir.listFiles(), arrayWithSize(1));
+    }
+
+    @Test
+    public void oversizedEntriesAreNotKept() throws Exception {
+        FreeStyleBuild b = build();
+        ConsoleHtmlCache.MAX_SIZE = 10;
+        StringWriter w = new StringWriter();
+        b.getLogText().writeHtmlTo(0, w);
+        assertThat(w.toString(), containsString("your home"));
+        File[] files = new File(r.jenkins.getRootDir(), "caches/console-html").listFiles();
+        assertThat(files == null ? new File[0] : files, emptyArray());
+    }
+
+    private FreeStyleBuild build() throws Exception {
+        FreeStyleProject p = r.createFreeStyleProject();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+                listener.getLogger().println("Go back to " + HyperlinkNote.encodeTo("/root", "your home") + ".");
+                return true;
+            }
+        });
+        return r.buildAndAssertSuccess(p);
+    }
+}
@@ -0,0 +1,194 @@
+package hudson.console;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.util.OneShotEvent;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import net.sf.json.JSONObject;
+import org.htmlunit.HttpMethod;
+import org.htmlunit.WebRequest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+
+public class ConsoleTailTest {
+
+    @Rule public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void onlySameOrigin() throws Exception {
+        FreeStyleBuild b = r.buildAndAssertSuccess(r.createFreeStyleProject());
+        try (JenkinsRule.WebClient wc = r.createWebClient().withThrowExceptionOnFailingStatusCode(false)) {
+            URL jenkinsUrl = r.getURL();
+            WebRequest request = new WebRequest(new URL(jenkinsUrl, b.getUrl() + "logText/webSocket?start=0"), HttpMethod.GET);
+            assertThat(wc.getPage(request).getWebResponse().getStatusCode(), is(403)); // no Origin header
+
+            request.setAdditionalHeader("Origin", jenkinsUrl.getProtocol() + "://example.org:" + jenkinsUrl.getPort());
+            assertThat(wc.getPage(request).getWebResponse().getStatusCode(), is(403));
+
+            // HTTP 400 is WebSocket "success" (HTMLUnit doesn't support it)
+            request.setAdditionalHeader("Origin", jenkinsUrl.getProtocol() + "://" + jenkinsUrl.getHost() + ":" + jenkinsUrl.getPort());
+            assertThat(wc.getPage(request).getWebResponse().getStatusCode(), is(400));
+        }
+    }
+
+    @Test
+    public void invalidStart() throws Exception {
+        FreeStyleBuild b = r.buildAndAssertSuccess(r.createFreeStyleProject());
+        try (JenkinsRule.WebClient wc = r.createWebClient().withThrowExceptionOnFailingStatusCode(false)) {
+            // rejected before the Origin header is checked, which would otherwise give 403
+            WebRequest request = new WebRequest(new URL(r.getURL(), b.getUrl() + "logText/webSocket?start=nonsense"), HttpMethod.GET);
+            assertThat(wc.getPage(request).getWebResponse().getStatusCode(), is(400));
+        }
+    }
+
+    @Test
+    public void notOfferedWhenDisabled() throws Exception {
+        FreeStyleBuild b = r.buildAndAssertSuccess(r.createFreeStyleProject());
+        boolean old = ConsoleTail.ENABLED;
+        ConsoleTail.ENABLED = false;
+        try (JenkinsRule.WebClient wc = r.createWebClient().withThrowExceptionOnFailingStatusCode(false)) {
+            WebRequest request = new WebRequest(new URL(r.getURL(), b.getUrl() + "logText/webSocket"), HttpMethod.GET);
+            assertThat(wc.getPage(request).getWebResponse().getStatusCode(), is(404));
+        } finally {
+            ConsoleTail.ENABLED = old;
+        }
+    }
+
+    @Test
+    public void streamsToSubscribers() throws Exception {
+        OneShotEvent proceed = new OneShotEvent();
+        FreeStyleProject p = r.createFreeStyleProject();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+                listener.getLogger().println("first line");
+                proceed.block();
+                listener.getLogger().println("second line");
+                return true;
+            }
+        });
+        FreeStyleBuild b = p.scheduleBuild2(0).waitForStart();
+        r.waitForMessage("first line", b);
+
+        Subscription one = subscribe(b);
+        one.waitFor("first line");
+        // joins the tail the first one started, catching up from the beginning of the log
+        Subscription two = subscribe(b);
+        two.waitFor("first line");
+
+        proceed.signal();
+        r.assertBuildStatusSuccess(r.waitForCompletion(b));
+        for (Subscription s : new Subscription[] {one, two}) {
+            String text = s.completed.get(30, TimeUnit.SECONDS);
+            assertThat(text, containsString("first line"));
+            assertThat(text, containsString("second line"));
+            assertThat(text.indexOf("first line"), is(text.lastIndexOf("first line")));
+        }
+    }
+
+    @Test
+    public void subscribersFallingBehindAreDisconnected() throws Exception {
+        OneShotEvent proceed = new OneShotEvent();
+        FreeStyleProject p = r.createFreeStyleProject();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+                listener.getLogger().println("first line");
+                proceed.block();
+                listener.getLogger().println("second line");
+                return true;
+            }
+        });
+        FreeStyleBuild b = p.scheduleBuild2(0).waitForStart();
+        r.waitForMessage("first line", b);
+        int old = ConsoleTail.MAX_QUEUED;
+        ConsoleTail.MAX_QUEUED = 5;
+        try {
+            Subscription s = subscribe(b);
+            // caught up from the log itself, which does not count
+            s.waitFor("first line");
+            proceed.signal();
+            // more than five bytes queued at once
+            s.closed.get(30, TimeUnit.SECONDS);
+            assertFalse(s.completed.isDone());
+        } finally {
+            ConsoleTail.MAX_QUEUED = old;
+        }
+        r.assertBuildStatusSuccess(r.waitForCompletion(b));
+    }
+
+    private Subscription subscribe(FreeStyleBuild b) throws Exception {
+        URL jenkinsUrl = r.getURL();
+        Subscription s = new Subscription();
+        HttpClient.newHttpClient().newWebSocketBuilder()
+                .header("Origin", jenkinsUrl.getProtocol() + "://" + jenkinsUrl.getHost() + ":" + jenkinsUrl.getPort())
+                .buildAsync(URI.create(jenkinsUrl.toString().replaceFirst("^http", "ws") + b.getUrl() + "logText/webSocket?start=0"), s)
+                .get(30, TimeUnit.SECONDS);
+        return s;
+    }
+
+    private static final class Subscription implements WebSocket.Listener {
+        private final StringBuilder frame = new StringBuilder();
+        private final StringBuilder text = new StringBuilder();
+        final CompletableFuture<String> completed = new CompletableFuture<>();
+        final CompletableFuture<Integer> closed = new CompletableFuture<>();
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            frame.append(data);
+            if (last) {
+                JSONObject message = JSONObject.fromObject(frame.toString());
+                frame.setLength(0);
+                synchronized (this) {
+                    text.append(message.getString("text"));
+                    notifyAll();
+                }
+                if (message.optBoolean("completed")) {
+                    completed.complete(text.toString());
+                }
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            closed.complete(statusCode);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            completed.completeExceptionally(error);
+            closed.completeExceptionally(error);
+        }
+
+        synchronized void waitFor(String expected) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (!text.toString().contains(expected)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new AssertionError("Did not receive " + expected + " but " + text);
+                }
+                wait(remaining);
+            }
+        }
+    }
+}
@@ -26,6 +26,7 @@ package hudson.diagnosis;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
 import hudson.XmlFile;
 import hudson.model.FreeStyleBuild;
@@ -145,6 +146,25 @@ public class OldDataMonitorTest {
 
     }
 
+    @Test public void pagesAndSharedMessages() throws Exception {
+        OldDataMonitor odm = OldDataMonitor.get(r.jenkins);
+        FreeStyleProject p = r.createFreeStyleProject();
+        FreeStyleBuild b1 = r.buildAndAssertSuccess(p);
+        FreeStyleBuild b2 = r.buildAndAssertSuccess(p);
+        OldDataMonitor.report(b1, Set.<Throwable>of(new IllegalStateException("broken")));
+        OldDataMonitor.report(b2, Set.<Throwable>of(new IllegalStateException("broken")));
+        OldDataMonitor.report(p, "1.0");
+
+        assertEquals(2, odm.count(true));
+        assertEquals(1, odm.count(false));
+        assertEquals(Set.of(b1, b2), odm.getPage(true, 0).keySet());
+        assertEquals(1, odm.getPage(true, 1).size());
+        assertEquals(Set.of(p), odm.getPage(false, 0).keySet());
+        OldDataMonitor.VersionRange vr1 = odm.getData().get(b1);
+        OldDataMonitor.VersionRange vr2 = odm.getData().get(b2);
+        assertSame(vr1.extra, vr2.extra);
+    }
+
     public static final class BadAction extends InvisibleAction {
         private Object writeReplace() {
             throw new IllegalStateException("broken");
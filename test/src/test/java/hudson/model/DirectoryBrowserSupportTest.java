@@ -30,9 +30,11 @@ import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
@@ -68,6 +70,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -81,11 +84,15 @@ import jenkins.model.ArtifactManagerConfiguration;
 import jenkins.model.ArtifactManagerFactory;
 import jenkins.model.ArtifactManagerFactoryDescriptor;
 import jenkins.model.Jenkins;
+import jenkins.util.ArtifactDownload;
 import jenkins.util.VirtualFile;
 import org.apache.commons.io.IOUtils;
 import org.hamcrest.MatcherAssert;
+import org.htmlunit.HttpMethod;
 import org.htmlunit.Page;
 import org.htmlunit.UnexpectedPage;
+import org.htmlunit.WebRequest;
+import org.htmlunit.WebResponse;
 import org.htmlunit.html.HtmlPage;
 import org.htmlunit.util.NameValuePair;
 import org.junit.Assume;
@@ -226,6 +233,109 @@ public class DirectoryBrowserSupportTest {
         zipfile.delete();
     }
 
+    @Test
+    public void resumeZipDownload() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+                FilePath ws = build.getWorkspace();
+                ws.child("text.txt").write("Hello world! ".repeat(1000), "UTF-8");
+                ws.child("lib/library.jar").write("Hello world! ".repeat(1000), "UTF-8");
+                return true;
+            }
+        });
+        p.getPublishersList().add(new ArtifactArchiver("**"));
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+
+        try (JenkinsRule.WebClient wc = j.createWebClient().withThrowExceptionOnFailingStatusCode(false)) {
+            URL url = new URL(j.getURL(), b.getUrl() + "artifact/*zip*/archive.zip");
+            WebResponse full = wc.getPage(new WebRequest(url, HttpMethod.GET)).getWebResponse();
+            assertThat(full.getStatusCode(), equalTo(200));
+            assertThat(full.getResponseHeaderValue("Accept-Ranges"), equalTo("bytes"));
+            String etag = full.getResponseHeaderValue("ETag");
+            byte[] bytes;
+            try (InputStream is = full.getContentAsStream()) {
+                bytes = is.readAllBytes();
+            }
+            File zipfile = File.createTempFile("DirectoryBrowserSupport", "zipDownload");
+            try {
+                Files.write(zipfile.toPath(), bytes);
+                try (ZipFile readzip = new ZipFile(zipfile)) {
+                    ZipEntry text = readzip.getEntry("archive/text.txt");
+                    assertTrue(text.getCompressedSize() < text.getSize() / 10);
+                    // stored as is, apart from a few bytes of deflate framing
+                    ZipEntry jar = readzip.getEntry("archive/lib/library.jar");
+                    assertTrue(jar.getCompressedSize() >= jar.getSize());
+                }
+            } finally {
+                Files.delete(zipfile.toPath());
+            }
+
+            WebRequest resume = new WebRequest(url, HttpMethod.GET);
+            resume.setAdditionalHeader("Range", "bytes=100-");
+            resume.setAdditionalHeader("If-Range", etag);
+            WebResponse partial = wc.getPage(resume).getWebResponse();
+            assertThat(partial.getStatusCode(), equalTo(206));
+            assertThat(partial.getResponseHeaderValue("Content-Range"), equalTo("bytes 100-" + (bytes.length - 1) + "/" + bytes.length));
+            try (InputStream is = partial.getContentAsStream()) {
+                assertArrayEquals(Arrays.copyOfRange(bytes, 100, bytes.length), is.readAllBytes());
+            }
+
+            WebRequest middle = new WebRequest(url, HttpMethod.GET);
+            middle.setAdditionalHeader("Range", "bytes=10-19");
+            try (InputStream is = wc.getPage(middle).getWebResponse().getContentAsStream()) {
+                assertArrayEquals(Arrays.copyOfRange(bytes, 10, 20), is.readAllBytes());
+            }
+
+            resume.setAdditionalHeader("If-Range", "\"stale\"");
+            assertThat(wc.getPage(resume).getWebResponse().getStatusCode(), equalTo(200));
+
+            WebRequest conditional = new WebRequest(url, HttpMethod.GET);
+            conditional.setAdditionalHeader("If-None-Match", "\"other\", W/" + etag);
+            assertThat(wc.getPage(conditional).getWebResponse().getStatusCode(), equalTo(304));
+        }
+    }
+
+    @Test
+    public void conditionalAndRangeArtifactDownload() throws Exception {
+        String content = "0123456789".repeat(100);
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.setScm(new SingleFileSCM("artifact.txt", content));
+        p.getPublishersList().add(new ArtifactArchiver("artifact.txt"));
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+        long requests = ArtifactDownload.getRequests();
+        long bytes = ArtifactDownload.getBytes();
+
+        try (JenkinsRule.WebClient wc = j.createWebClient().withThrowExceptionOnFailingStatusCode(false)) {
+            URL url = new URL(j.getURL(), b.getUrl() + "artifact/artifact.txt");
+            WebResponse full = wc.getPage(new WebRequest(url, HttpMethod.GET)).getWebResponse();
+            assertThat(full.getStatusCode(), equalTo(200));
+            assertThat(full.getContentAsString(), equalTo(content));
+            assertThat(full.getResponseHeaderValue("Accept-Ranges"), equalTo("bytes"));
+            String etag = full.getResponseHeaderValue("ETag");
+            assertTrue(etag.startsWith("\""));
+
+            WebRequest conditional = new WebRequest(url, HttpMethod.GET);
+            conditional.setAdditionalHeader("If-None-Match", etag);
+            assertThat(wc.getPage(conditional).getWebResponse().getStatusCode(), equalTo(304));
+
+            WebRequest range = new WebRequest(url, HttpMethod.GET);
+            range.setAdditionalHeader("Range", "bytes=5-14");
+            WebResponse partial = wc.getPage(range).getWebResponse();
+            assertThat(partial.getStatusCode(), equalTo(206));
+            assertThat(partial.getResponseHeaderValue("Content-Range"), equalTo("bytes 5-14/1000"));
+            assertThat(partial.getContentAsString(), equalTo("5678901234"));
+
+            range.setAdditionalHeader("Range", "bytes=1000-");
+            assertThat(wc.getPage(range).getWebResponse().getStatusCode(), equalTo(416));
+        }
+        assertThat(ArtifactDownload.getHotArtifacts(10).get(b.getExternalizableId() + "/artifact.txt"), equalTo(4L));
+        assertThat(ArtifactDownload.getRequests() - requests, equalTo(4L));
+        assertThat("the whole file, then a range", ArtifactDownload.getBytes() - bytes, equalTo(1010L));
+        assertThat(ArtifactDownload.getThroughput(), greaterThan(0L));
+    }
+
     @Test
     public void zipDownloadFileLeakMx_hypothesis() throws Exception {
         // this test is meant to just ensure zipDownloadFileLeakMx hypothesis about the UI work fine
@@ -90,7 +90,7 @@ public class FingerprintCleanupThreadTest {
     @Test
     public void testGetRecurrencePeriod() {
         FingerprintCleanupThread cleanupThread = new FingerprintCleanupThread();
-        assertEquals("Wrong recurrence period.", PeriodicWork.DAY, cleanupThread.getRecurrencePeriod());
+        assertEquals("Wrong recurrence period.", 7 * PeriodicWork.DAY, cleanupThread.getRecurrencePeriod());
     }
 
     @Test
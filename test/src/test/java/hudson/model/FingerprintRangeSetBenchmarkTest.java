@@ -0,0 +1,100 @@
+package hudson.model;
+
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.Fingerprint.RangeSet;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class FingerprintRangeSetBenchmarkTest {
+    @Test
+    public void runBenchmark() throws Exception {
+        // run the minimum possible number of iterations
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .mode(Mode.AverageTime)
+                .forks(1)
+                .result("jmh-report.json")
+                .resultFormat(ResultFormatType.JSON)
+                .operationsPerInvocation(1)
+                .threads(1)
+                .warmupForks(0)
+                .warmupIterations(0)
+                .measurementBatchSize(1)
+                .measurementIterations(1)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .shouldFailOnError(true)
+                .include(FingerprintRangeSetBenchmarkTest.class.getName() + ".*");
+        new Runner(options.build()).run();
+        assertTrue(Files.exists(Paths.get("jmh-report.json")));
+    }
+
+    @JmhBenchmark
+    public static class RangeSetBenchmark {
+        @State(Scope.Thread)
+        public static class StateImpl {
+            /**
+             * Every third build of a job with many builds, as when a file is used by some of them.
+             */
+            RangeSet sparse;
+            RangeSet kept;
+            String serialized;
+
+            @Setup
+            public void setup() {
+                sparse = new RangeSet();
+                kept = new RangeSet();
+                for (int i = 0; i < 30000; i += 3) {
+                    sparse.add(i);
+                    sparse.add(i + 1);
+                    if (i % 300 == 0) {
+                        kept.add(i);
+                    }
+                }
+                serialized = RangeSet.ConverterImpl.serialize(sparse);
+            }
+        }
+
+        @Benchmark
+        public void addNewBuild(StateImpl state, Blackhole blackhole) {
+            RangeSet r = RangeSet.fromString(state.serialized, true);
+            r.add(30001);
+            blackhole.consume(r);
+        }
+
+        @Benchmark
+        public void addOldBuild(StateImpl state, Blackhole blackhole) {
+            RangeSet r = RangeSet.fromString(state.serialized, true);
+            r.add(15002);
+            blackhole.consume(r);
+        }
+
+        @Benchmark
+        public void retainAll(StateImpl state, Blackhole blackhole) {
+            RangeSet r = RangeSet.fromString(state.serialized, true);
+            blackhole.consume(r.retainAll(state.kept));
+        }
+
+        @Benchmark
+        public void serialize(StateImpl state, Blackhole blackhole) {
+            blackhole.consume(RangeSet.ConverterImpl.serialize(state.sparse));
+        }
+
+        @Benchmark
+        public void deserialize(StateImpl state, Blackhole blackhole) {
+            blackhole.consume(RangeSet.fromString(state.serialized, true));
+        }
+    }
+}
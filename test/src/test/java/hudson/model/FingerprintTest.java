@@ -40,6 +40,7 @@ import static org.junit.Assert.assertTrue;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.ExtensionList;
 import hudson.Util;
 import hudson.XmlFile;
 import hudson.security.ACL;
@@ -127,6 +128,23 @@ public class FingerprintTest {
         assertEquals(f2, facet.getFingerprint());
     }
 
+    @Test
+    public void batchSavesOnClose() throws Exception {
+        FileFingerprintStorage storage = ExtensionList.lookupSingleton(FileFingerprintStorage.class);
+        Fingerprint f = new Fingerprint(new Fingerprint.BuildPtr("foo", 13), "stuff.jar", Util.fromHexString(SOME_MD5));
+        try (Fingerprint.Batch batch = Fingerprint.batch()) {
+            f.save();
+            f.add("foo", 14);
+            try (Fingerprint.Batch nested = Fingerprint.batch()) {
+                f.add("foo", 15);
+            }
+            assertNull("not saved yet", storage.load(SOME_MD5));
+        }
+        Fingerprint loaded = storage.load(SOME_MD5);
+        assertNotNull(loaded);
+        assertEquals(f.toString(), loaded.toString());
+    }
+
     public static final class TestFacet extends FingerprintFacet {
         final String property;
 
@@ -0,0 +1,145 @@
+package hudson.util;
+
+import static org.junit.Assert.assertTrue;
+
+import hudson.XmlFile;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Items;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.Run;
+import hudson.model.StringParameterDefinition;
+import hudson.tasks.ArtifactArchiver;
+import hudson.tasks.Shell;
+import hudson.triggers.TimerTrigger;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import jenkins.util.xstream.XStreamDOM;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class RobustReflectionConverterBenchmarkTest {
+    @Test
+    public void runBenchmark() throws Exception {
+        // run the minimum possible number of iterations
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .mode(Mode.AverageTime)
+                .forks(1)
+                .result("jmh-report.json")
+                .resultFormat(ResultFormatType.JSON)
+                .operationsPerInvocation(1)
+                .threads(1)
+                .warmupForks(0)
+                .warmupIterations(0)
+                .measurementBatchSize(1)
+                .measurementIterations(1)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .shouldFailOnError(true)
+                .include(RobustReflectionConverterBenchmarkTest.class.getName() + ".*");
+        new Runner(options.build()).run();
+        assertTrue(Files.exists(Paths.get("jmh-report.json")));
+    }
+
+    @JmhBenchmark
+    public static class XmlBenchmark {
+        public static class StateImpl extends JmhBenchmarkState {
+            FreeStyleProject project;
+            FreeStyleBuild build;
+            String projectXml;
+            String buildXml;
+
+            @Override
+            public void setup() throws Exception {
+                project = getJenkins().createProject(FreeStyleProject.class, "p");
+                project.setDescription("a typical job");
+                project.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("BRANCH", "main")));
+                project.addTrigger(new TimerTrigger("H H * * *"));
+                project.getBuildersList().add(new Shell("echo hello"));
+                project.getPublishersList().add(new ArtifactArchiver("*.txt"));
+                build = project.scheduleBuild2(0).get();
+                projectXml = Items.XSTREAM2.toXML(project);
+                buildXml = Run.XSTREAM2.toXML(build);
+            }
+        }
+
+        @Benchmark
+        public void marshalProject(StateImpl state, Blackhole blackhole) {
+            blackhole.consume(Items.XSTREAM2.toXML(state.project));
+        }
+
+        @Benchmark
+        public void unmarshalProject(StateImpl state, Blackhole blackhole) {
+            blackhole.consume(Items.XSTREAM2.fromXML(state.projectXml));
+        }
+
+        @Benchmark
+        public void marshalBuild(StateImpl state, Blackhole blackhole) {
+            blackhole.consume(Run.XSTREAM2.toXML(state.build));
+        }
+
+        @Benchmark
+        public void unmarshalBuild(StateImpl state, Blackhole blackhole) {
+            blackhole.consume(Run.XSTREAM2.fromXML(state.buildXml));
+        }
+    }
+
+    /**
+     * Reads the sample configuration files from the test resources.
+     */
+    @JmhBenchmark
+    public static class ReadBenchmark {
+        public static class StateImpl extends JmhBenchmarkState {
+            List<File> configs;
+            List<File> jobConfigs;
+
+            @Override
+            public void setup() throws Exception {
+                Path resources = Paths.get(RobustReflectionConverterBenchmarkTest.class.getResource("/hudson/model").toURI());
+                try (Stream<Path> paths = Files.walk(resources)) {
+                    configs = paths.filter(p -> p.getFileName().toString().equals("config.xml")).map(Path::toFile).collect(Collectors.toList());
+                }
+                jobConfigs = configs.stream().filter(f -> f.getParentFile().getParentFile().getName().equals("jobs")).collect(Collectors.toList());
+            }
+        }
+
+        @Benchmark
+        public void parseWithSharedDriver(StateImpl state, Blackhole blackhole) throws Exception {
+            for (File f : state.configs) {
+                try (InputStream in = Files.newInputStream(f.toPath())) {
+                    blackhole.consume(XStreamDOM.from(XStream2.getSharedDriver().createReader(in)));
+                }
+            }
+        }
+
+        @Benchmark
+        public void parseWithNewDriver(StateImpl state, Blackhole blackhole) throws Exception {
+            for (File f : state.configs) {
+                try (InputStream in = Files.newInputStream(f.toPath())) {
+                    blackhole.consume(XStreamDOM.from(XStream2.getDefaultDriver().createReader(in)));
+                }
+            }
+        }
+
+        @Benchmark
+        public void readJobs(StateImpl state, Blackhole blackhole) throws Exception {
+            for (File f : state.jobConfigs) {
+                blackhole.consume(new XmlFile(Items.XSTREAM, f).read());
+            }
+        }
+    }
+}
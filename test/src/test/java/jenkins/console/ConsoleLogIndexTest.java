@@ -0,0 +1,127 @@
+package jenkins.console;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+
+public class ConsoleLogIndexTest {
+
+    @Rule public JenkinsRule r = new JenkinsRule();
+
+    @Before
+    public void enable() {
+        ConsoleLogIndex.ENABLED = true;
+    }
+
+    @After
+    public void disable() {
+        ConsoleLogIndex.ENABLED = false;
+    }
+
+    @Test
+    public void findsBuildsWhichPrintedSomething() throws Exception {
+        FreeStyleProject p = r.createFreeStyleProject();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+                listener.getLogger().println("running tests");
+                if (build.getNumber() % 2 == 0) {
+                    listener.getLogger().println("FlakyTest timed out after 30s");
+                }
+                listener.getLogger().println("done");
+                return true;
+            }
+        });
+        build(p);
+        FreeStyleBuild b2 = build(p);
+        build(p);
+        FreeStyleBuild b4 = build(p);
+
+        List<ConsoleLogIndex.Match> matches = ConsoleLogIndex.search(p, "flakytest TIMED out", 10, 10);
+        assertThat(matches.stream().map(ConsoleLogIndex.Match::getBuild).collect(Collectors.toList()), contains(4, 2));
+        ConsoleLogIndex.Match match = matches.get(0);
+        assertEquals("FlakyTest timed out after 30s", match.getLine());
+        assertEquals(b4.getLog().indexOf("FlakyTest"), match.getOffset());
+
+        assertThat(ConsoleLogIndex.search(p, "flakytest timed out", 1, 10).stream().map(ConsoleLogIndex.Match::getBuild).collect(Collectors.toList()), contains(4));
+        assertThat(ConsoleLogIndex.search(p, "out timed", 10, 10), empty());
+        assertThat(ConsoleLogIndex.search(p, "nowhere", 10, 10), empty());
+
+        b2.delete();
+        assertFalse(new File(p.getRootDir(), "logIndex/2.idx").exists());
+        assertThat(ConsoleLogIndex.search(p, "FlakyTest", 10, 10).stream().map(ConsoleLogIndex.Match::getBuild).collect(Collectors.toList()), contains(4));
+        assertThat(ConsoleLogIndex.search(p, "running", 10, 10).stream().map(ConsoleLogIndex.Match::getBuild).collect(Collectors.toList()), contains(4, 3, 1));
+    }
+
+    @Test
+    public void mergesRunsAndSkipsCorruptSegments() throws Exception {
+        int oldBuffer = ConsoleLogIndex.MAX_BUFFER;
+        int oldPostings = ConsoleLogIndex.MAX_POSTINGS;
+        ConsoleLogIndex.MAX_BUFFER = 1000; // a few lines per run
+        ConsoleLogIndex.MAX_POSTINGS = 50;
+        try {
+            FreeStyleProject p = r.createFreeStyleProject();
+            p.getBuildersList().add(new TestBuilder() {
+                @Override
+                public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+                    for (int i = 0; i < 100; i++) {
+                        listener.getLogger().println("common unique" + i + (i % 40 == 0 ? " rare" : ""));
+                    }
+                    return true;
+                }
+            });
+            FreeStyleBuild b1 = build(p);
+            build(p);
+            assertThat(ConsoleLogIndex.search(p, "unique77", 10, 10).stream().map(ConsoleLogIndex.Match::getLine).collect(Collectors.toList()),
+                    contains("common unique77", "common unique77"));
+            assertThat(ConsoleLogIndex.search(p, "rare", 1, 10).stream().map(ConsoleLogIndex.Match::getLine).collect(Collectors.toList()),
+                    contains("common unique0 rare", "common unique40 rare", "common unique80 rare"));
+            // too common for offsets, so every line is checked
+            assertEquals(100, ConsoleLogIndex.search(p, "common", 1, 1000).size());
+            assertThat(p.getRootDir().toPath().resolve("logIndex").toFile().list((dir, name) -> !name.endsWith(".idx")), emptyArray());
+
+            Files.write(new File(p.getRootDir(), "logIndex/2.idx").toPath(), new byte[] {0, 0, 0, 1, 0, 0, 0, 9, 0});
+            assertThat(ConsoleLogIndex.search(p, "unique77", 10, 10).stream().map(ConsoleLogIndex.Match::getBuild).collect(Collectors.toList()),
+                    contains(b1.getNumber()));
+        } finally {
+            ConsoleLogIndex.MAX_BUFFER = oldBuffer;
+            ConsoleLogIndex.MAX_POSTINGS = oldPostings;
+        }
+    }
+
+    @Test
+    public void searchPage() throws Exception {
+        FreeStyleProject p = r.createFreeStyleProject();
+        build(p);
+        r.createWebClient().goTo(p.getUrl() + "logSearch/?q=Finished");
+        r.createWebClient().goTo(p.getUrl() + "logSearch/search?q=Finished", "application/json");
+    }
+
+    private FreeStyleBuild build(FreeStyleProject p) throws Exception {
+        FreeStyleBuild b = r.buildAndAssertSuccess(p);
+        File segment = new File(p.getRootDir(), "logIndex/" + b.getNumber() + ".idx");
+        while (!segment.exists()) {
+            Thread.sleep(100);
+        }
+        return b;
+    }
+}
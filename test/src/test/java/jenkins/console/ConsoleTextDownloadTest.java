@@ -0,0 +1,98 @@
+package jenkins.console;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+
+import hudson.Launcher;
+import hudson.console.ConsoleNote;
+import hudson.console.HyperlinkNote;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import java.net.URL;
+import org.htmlunit.HttpMethod;
+import org.htmlunit.WebRequest;
+import org.htmlunit.WebResponse;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+
+public class ConsoleTextDownloadTest {
+
+    @Rule public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void conditionalAndRangeRequests() throws Exception {
+        FreeStyleProject p = r.createFreeStyleProject();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+                listener.getLogger().println("see " + HyperlinkNote.encodeTo("/here", "here") + " for details");
+                return true;
+            }
+        });
+        FreeStyleBuild b = r.buildAndAssertSuccess(p);
+        String raw = b.getLog();
+        String text = ConsoleNote.removeNotes(raw);
+        assertThat(raw, not(is(text)));
+
+        try (JenkinsRule.WebClient wc = r.createWebClient().withThrowExceptionOnFailingStatusCode(false)) {
+            URL url = new URL(r.getURL(), b.getUrl() + "consoleText");
+            WebResponse full = wc.getPage(new WebRequest(url, HttpMethod.GET)).getWebResponse();
+            assertThat(full.getStatusCode(), is(200));
+            assertThat(full.getContentAsString(), is(text));
+            assertThat(full.getResponseHeaderValue("Accept-Ranges"), is("bytes"));
+            String etag = full.getResponseHeaderValue("ETag");
+            assertThat(etag, notNullValue());
+            WebResponse measured = wc.getPage(new WebRequest(url, HttpMethod.GET)).getWebResponse();
+            assertThat("measured by the first download", measured.getResponseHeaderValue("Content-Length"), is(String.valueOf(text.length())));
+            assertThat(measured.getContentAsString(), is(text));
+
+            WebRequest conditional = new WebRequest(url, HttpMethod.GET);
+            conditional.setAdditionalHeader("If-None-Match", etag);
+            assertThat(wc.getPage(conditional).getWebResponse().getStatusCode(), is(304));
+
+            int start = text.indexOf("here");
+            WebRequest range = new WebRequest(url, HttpMethod.GET);
+            range.setAdditionalHeader("Range", "bytes=" + start + "-" + (start + 3));
+            WebResponse partial = wc.getPage(range).getWebResponse();
+            assertThat(partial.getStatusCode(), is(206));
+            assertThat(partial.getContentAsString(), is("here"));
+            assertThat(partial.getResponseHeaderValue("Content-Range"), is("bytes " + start + "-" + (start + 3) + "/" + text.length()));
+
+            range.setAdditionalHeader("If-Range", "\"stale\"");
+            assertThat(wc.getPage(range).getWebResponse().getStatusCode(), is(200));
+
+            WebRequest beyond = new WebRequest(url, HttpMethod.GET);
+            beyond.setAdditionalHeader("Range", "bytes=" + text.length() + "-");
+            assertThat(wc.getPage(beyond).getWebResponse().getStatusCode(), is(416));
+        }
+    }
+
+    @Test
+    public void rangeBeforeFullDownload() throws Exception {
+        FreeStyleProject p = r.createFreeStyleProject();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+                listener.getLogger().println("see " + HyperlinkNote.encodeTo("/there", "there") + " for details");
+                return true;
+            }
+        });
+        FreeStyleBuild b = r.buildAndAssertSuccess(p);
+        String text = ConsoleNote.removeNotes(b.getLog());
+
+        try (JenkinsRule.WebClient wc = r.createWebClient().withThrowExceptionOnFailingStatusCode(false)) {
+            URL url = new URL(r.getURL(), b.getUrl() + "consoleText");
+            WebRequest range = new WebRequest(url, HttpMethod.GET);
+            range.setAdditionalHeader("Range", "bytes=-9");
+            WebResponse partial = wc.getPage(range).getWebResponse();
+            assertThat(partial.getStatusCode(), is(206));
+            assertThat(partial.getContentAsString(), is(text.substring(text.length() - 9)));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package jenkins.fingerprints;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import hudson.Util;
+import hudson.model.Fingerprint;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.tasks.Fingerprinter;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class FingerprintCleanupQueueTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void cleanupAfterBuildDeletion() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        FreeStyleBuild b1 = j.buildAndAssertSuccess(p);
+        j.buildAndAssertSuccess(p);
+        String id = Util.getDigestOf("used by #1");
+        j.jenkins.getFingerprintMap().getOrCreate(b1, "x.jar", id);
+        b1.addAction(new Fingerprinter.FingerprintAction(b1, Map.of("x.jar", id)));
+        b1.save();
+        assertNotNull(Fingerprint.load(id));
+
+        b1.delete();
+        File file = new File(j.jenkins.getRootDir(), FingerprintCleanupQueue.NAME);
+        assertTrue(file.isFile());
+        FingerprintCleanupQueue.process();
+        assertNull(Fingerprint.load(id));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void cleanupAfterJobDeletion() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+        String id = Util.getDigestOf("used by a loaded build");
+        j.jenkins.getFingerprintMap().getOrCreate(b, "x.jar", id);
+        b.addAction(new Fingerprinter.FingerprintAction(b, Map.of("x.jar", id)));
+        b.save();
+
+        p.delete();
+        File file = new File(j.jenkins.getRootDir(), FingerprintCleanupQueue.NAME);
+        assertTrue(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).contains(id));
+        FingerprintCleanupQueue.process();
+        assertNull(Fingerprint.load(id));
+    }
+
+    @Test
+    public void buildsNotLoadedAreReadFromDisk() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+        String id = Util.getDigestOf("used by a build which is not loaded");
+        j.jenkins.getFingerprintMap().getOrCreate(b, "x.jar", id);
+        b.addAction(new Fingerprinter.FingerprintAction(b, Map.of("x.jar", id)));
+        b.save();
+
+        Set<String> ids = new HashSet<>();
+        FingerprintCleanupQueue.collect(new File(b.getRootDir(), "build.xml"), ids);
+        assertEquals(Set.of(id), ids);
+        assertEquals(Set.of(id), Set.copyOf(FingerprintCleanupQueue.onDeleting(List.of(), p.getBuildDir())));
+        assertEquals("not read again when loaded", Set.of(id), Set.copyOf(FingerprintCleanupQueue.onDeleting(List.of(b), p.getBuildDir())));
+    }
+}
@@ -0,0 +1,50 @@
+package jenkins.fingerprints;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import hudson.Util;
+import hudson.model.Fingerprint;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.util.StreamTaskListener;
+import java.io.File;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class JournalFingerprintStorageTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void cleanupMovesFilesIntoJournal() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject("p");
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+        String alive = Util.getDigestOf("alive");
+        String dead = Util.getDigestOf("dead");
+        new Fingerprint(b, "alive.jar", Util.fromHexString(alive));
+        new Fingerprint(null, "dead.jar", Util.fromHexString(dead));
+        File dir = new File(j.jenkins.getRootDir(), FileFingerprintStorage.FINGERPRINTS_DIR_NAME);
+        assertTrue(dir.isDirectory());
+
+        JournalFingerprintStorage storage = new JournalFingerprintStorage();
+        GlobalFingerprintConfiguration.get().setStorage(storage);
+        storage.iterateAndCleanupFingerprints(StreamTaskListener.fromStdout());
+        assertFalse(dir.exists());
+        assertTrue(new File(j.jenkins.getRootDir(), JournalFingerprintStorage.NAME).isFile());
+
+        Fingerprint loaded = storage.load(alive);
+        assertNotNull(loaded);
+        assertEquals("alive.jar", loaded.getFileName());
+        assertEquals("p", loaded.getOriginal().getName());
+        assertNull("not used by any build, so cleaned up", storage.load(dead));
+
+        Fingerprint.delete(alive);
+        assertNull(storage.load(alive));
+    }
+}
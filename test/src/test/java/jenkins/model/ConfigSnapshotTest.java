@@ -0,0 +1,64 @@
+package jenkins.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.FreeStyleProject;
+import java.io.File;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockFolder;
+
+public class ConfigSnapshotTest {
+
+    @Rule public JenkinsRule r = new JenkinsRule();
+
+    @Before
+    public void enable() {
+        ConfigSnapshot.ENABLED = true;
+    }
+
+    @After
+    public void disable() {
+        ConfigSnapshot.ENABLED = false;
+        ConfigSnapshot.discard();
+    }
+
+    @Test
+    public void snapshotIsUsedOnlyForUnchangedFiles() throws Exception {
+        MockFolder d = r.createFolder("d");
+        FreeStyleProject p = d.createProject(FreeStyleProject.class, "p");
+        FreeStyleProject q = r.createFreeStyleProject("q");
+        File pConfig = p.getConfigFile().getFile();
+        File qConfig = q.getConfigFile().getFile();
+        FreeStyleProject recent = r.createFreeStyleProject("recent");
+        File recentConfig = recent.getConfigFile().getFile();
+        // old enough to be snapshotted even with coarse modification times
+        assertTrue(pConfig.setLastModified(pConfig.lastModified() - 10_000));
+        assertTrue(qConfig.setLastModified(qConfig.lastModified() - 10_000));
+        // could still be rewritten without its modification time changing
+        assertTrue(recentConfig.setLastModified(System.currentTimeMillis() + 60_000));
+
+        ConfigSnapshot.write();
+        File snapshot = new File(r.jenkins.getRootDir(), ConfigSnapshot.NAME);
+        assertTrue(snapshot.isFile());
+        q.setDescription("changed since the snapshot");
+
+        ConfigSnapshot.load();
+        assertFalse(snapshot.exists());
+        assertArrayEquals(Files.readAllBytes(pConfig.toPath()), ConfigSnapshot.take(pConfig));
+        assertNull("taken only once", ConfigSnapshot.take(pConfig));
+        assertNull(ConfigSnapshot.take(qConfig));
+        assertNull("modified after the snapshot started", ConfigSnapshot.take(recentConfig));
+
+        r.jenkins.reload();
+        assertEquals("changed since the snapshot", r.jenkins.getItemByFullName("q", FreeStyleProject.class).getDescription());
+    }
+}
@@ -0,0 +1,160 @@
+package jenkins.model;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+import hudson.FilePath;
+import hudson.Functions;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.Failure;
+import hudson.model.FreeStyleProject;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+import hudson.tasks.ArtifactArchiver;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+import jenkins.util.VirtualFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.LoggerRule;
+import org.jvnet.hudson.test.TestExtension;
+import org.jvnet.hudson.test.TestBuilder;
+
+public class ContentAddressedArtifactManagerTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Rule
+    public LoggerRule logging = new LoggerRule().record(ContentAddressedArtifactManager.class, Level.FINE).capture(10);
+
+    @Test
+    public void storesIdenticalFilesOnce() throws Exception {
+        ArtifactManagerConfiguration.get().getArtifactManagerFactories().add(new ContentAddressedArtifactManagerFactory());
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+                FilePath ws = build.getWorkspace();
+                ws.child("same.txt").write("same", "UTF-8");
+                ws.child("dir/number.txt").write(String.valueOf(build.getNumber()), "UTF-8");
+                return true;
+            }
+        });
+        p.getPublishersList().add(new ArtifactArchiver("**"));
+        FreeStyleBuild b1 = j.buildAndAssertSuccess(p);
+        FreeStyleBuild b2 = j.buildAndAssertSuccess(p);
+        assertEquals(3, countBlobs());
+
+        VirtualFile root = b2.getArtifactManager().root();
+        assertTrue(root.isDirectory());
+        assertArrayEquals(new String[] {"dir", "same.txt"}, Stream.of(root.list()).map(VirtualFile::getName).sorted().toArray());
+        VirtualFile number = root.child("dir").child("number.txt");
+        assertTrue(number.isFile());
+        assertEquals(1, number.length());
+        try (InputStream in = number.open()) {
+            assertEquals("2", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(2, b2.getArtifacts().size());
+
+        b1.delete();
+        assertEquals(2, countBlobs());
+        VetoDeletion.veto = true;
+        try {
+            assertThrows(Failure.class, p::delete);
+        } finally {
+            VetoDeletion.veto = false;
+        }
+        assertEquals("still used by the job which failed to be deleted", 2, countBlobs());
+        p.delete();
+        assertEquals(0, countBlobs());
+        assertFalse(new File(b2.getRootDir(), ContentAddressedArtifactManager.MANIFEST).exists());
+    }
+
+    @Test
+    public void transfersFilesArchivedByOtherJobs() throws Exception {
+        ArtifactManagerConfiguration.get().getArtifactManagerFactories().add(new ContentAddressedArtifactManagerFactory());
+        FreeStyleProject p1 = createArchivingProject("p1");
+        FreeStyleProject p2 = createArchivingProject("p2");
+        j.buildAndAssertSuccess(p1);
+        j.buildAndAssertSuccess(p1);
+        assertThat(logging.getMessages(), hasItem("transferred 0 of 1 files archived by p1 #2"));
+        FreeStyleBuild b = j.buildAndAssertSuccess(p2);
+        assertThat(logging.getMessages(), hasItem("transferred 1 of 1 files archived by p2 #1"));
+        assertEquals("still stored once", 1, countBlobs());
+        try (InputStream in = b.getArtifactManager().root().child("same.txt").open()) {
+            assertEquals("same", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void failedManifestDeletionKeepsReferences() throws Exception {
+        assumeFalse(Functions.isWindows());
+        ArtifactManagerConfiguration.get().getArtifactManagerFactories().add(new ContentAddressedArtifactManagerFactory());
+        FreeStyleProject p = createArchivingProject("p");
+        FreeStyleBuild b1 = j.buildAndAssertSuccess(p);
+        FreeStyleBuild b2 = j.buildAndAssertSuccess(p);
+        File dir = b1.getRootDir();
+        assertTrue(dir.setWritable(false));
+        try {
+            assumeFalse("cannot make a directory read-only", Files.isWritable(dir.toPath()));
+            assertThrows(IOException.class, b1::deleteArtifacts);
+        } finally {
+            assertTrue(dir.setWritable(true));
+        }
+        assertTrue(new File(dir, ContentAddressedArtifactManager.MANIFEST).exists());
+        b1.deleteArtifacts();
+        assertEquals(1, countBlobs());
+        try (InputStream in = b2.getArtifactManager().root().child("same.txt").open()) {
+            assertEquals("same", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private FreeStyleProject createArchivingProject(String name) throws IOException {
+        FreeStyleProject p = j.createFreeStyleProject(name);
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+                build.getWorkspace().child("same.txt").write("same", "UTF-8");
+                return true;
+            }
+        });
+        p.getPublishersList().add(new ArtifactArchiver("same.txt"));
+        return p;
+    }
+
+    @TestExtension("storesIdenticalFilesOnce")
+    public static class VetoDeletion extends ItemListener {
+        static boolean veto;
+
+        @Override
+        public void onCheckDelete(Item item) throws Failure {
+            if (veto) {
+                throw new Failure("not now");
+            }
+        }
+    }
+
+    private long countBlobs() throws IOException {
+        Path dir = new File(j.jenkins.getRootDir(), ArtifactBlobStore.NAME).toPath();
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(f -> Files.isRegularFile(f) && !f.getParent().equals(dir) && !dir.relativize(f).startsWith("tmp")).count();
+        }
+    }
+}
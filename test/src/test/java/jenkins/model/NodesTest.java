@@ -25,7 +25,9 @@
 package jenkins.model;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.sameInstance;
@@ -36,14 +38,22 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThrows;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.BulkChange;
 import hudson.ExtensionList;
+import hudson.XmlFile;
 import hudson.model.Descriptor;
 import hudson.model.Failure;
 import hudson.model.Node;
+import hudson.model.Saveable;
 import hudson.model.Slave;
+import hudson.model.listeners.SaveableListener;
 import hudson.slaves.ComputerLauncher;
 import hudson.slaves.DumbSlave;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.Issue;
@@ -144,6 +154,58 @@ public class NodesTest {
         assertNotNull(r.jenkins.getNode("foo"));
     }
 
+    @Test
+    public void saveWritesOnlyModifiedNodes() throws Exception {
+        Slave a = r.createSlave("a", "", null);
+        r.createSlave("b", "", null);
+        r.createSlave("c", "", null);
+        Nodes nodes = r.jenkins.getNodesObject();
+        SaveListener l = ExtensionList.lookupSingleton(SaveListener.class);
+        l.files.clear();
+
+        nodes.save();
+        assertThat(l.files, empty());
+
+        a.setLabelString("linux");
+        nodes.save();
+        assertThat(l.files, contains(new File(nodes.getRootDir(), "a/config.xml")));
+        assertThat(Files.readString(new File(nodes.getRootDir(), "a/config.xml").toPath()), containsString("linux"));
+
+        // modified behind our back, so it gets rewritten
+        l.files.clear();
+        Files.writeString(new File(nodes.getRootDir(), "b/config.xml").toPath(), "<slave/>");
+        nodes.save();
+        assertThat(l.files, contains(new File(nodes.getRootDir(), "b/config.xml")));
+
+        l.files.clear();
+        try (BulkChange bc = new BulkChange(nodes)) {
+            a.setNodeDescription("first");
+            nodes.save();
+            a.setNodeDescription("second");
+            nodes.save();
+            assertThat(l.files, empty());
+            bc.commit();
+        }
+        assertThat(l.files, contains(new File(nodes.getRootDir(), "a/config.xml")));
+
+        l.files.clear();
+        a.setNodeDescription("third");
+        nodes.save(List.of(a));
+        assertThat(l.files, contains(new File(nodes.getRootDir(), "a/config.xml")));
+    }
+
+    @TestExtension("saveWritesOnlyModifiedNodes")
+    public static final class SaveListener extends SaveableListener {
+        final List<File> files = new ArrayList<>();
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof Nodes) {
+                files.add(file.getFile());
+            }
+        }
+    }
+
     private static class InvalidNode extends Slave {
         // JEP-200 whitelist changes prevent this field (and thus instances of this class) from being serialized.
         private ClassLoader cl = InvalidNode.class.getClassLoader();
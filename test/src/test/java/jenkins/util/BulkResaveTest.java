@@ -0,0 +1,94 @@
+package jenkins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class BulkResaveTest {
+
+    @Rule public JenkinsRule r = new JenkinsRule();
+
+    @After
+    public void reset() {
+        BulkResave.OPS_PER_SECOND = 0;
+    }
+
+    @Test
+    public void savesAtTheConfiguredRate() throws Exception {
+        FreeStyleProject p = r.createFreeStyleProject("p");
+        FreeStyleBuild b = r.buildAndAssertSuccess(p);
+        File config = p.getConfigFile().getFile();
+        File buildXml = new File(b.getRootDir(), "build.xml");
+        long configModified = config.lastModified();
+        long buildModified = buildXml.lastModified();
+        Thread.sleep(1000); // so that modification times differ
+
+        BulkResave.OPS_PER_SECOND = 2;
+        long start = System.nanoTime();
+        BulkResave.submit(List.of(p));
+        BulkResave.submitRuns(List.of(b.getExternalizableId(), "p#99"));
+        awaitCompletion();
+        assertTrue("three saves at two per second take at least one second", System.nanoTime() - start >= 1_000_000_000L);
+        assertEquals(3, BulkResave.getTotal());
+        assertEquals(3, BulkResave.getDone());
+        assertEquals(0, BulkResave.getFailed());
+        assertTrue(BulkResave.getBytes() > 0);
+        assertTrue(config.lastModified() > configModified);
+        assertTrue(buildXml.lastModified() > buildModified);
+        assertFalse(new File(r.jenkins.getRootDir(), BulkResave.NAME).exists());
+    }
+
+    @Test
+    public void resumesFromCheckpoint() throws Exception {
+        FreeStyleProject p = r.createFreeStyleProject("p");
+        File config = p.getConfigFile().getFile();
+        long configModified = config.lastModified();
+        Thread.sleep(1000);
+
+        File checkpoint = new File(r.jenkins.getRootDir(), BulkResave.NAME);
+        Files.writeString(checkpoint.toPath(), "item:p\nitem:missing\n", StandardCharsets.UTF_8);
+        BulkResave.resume();
+        awaitCompletion();
+        assertEquals(2, BulkResave.getDone());
+        assertTrue(config.lastModified() > configModified);
+        assertFalse(checkpoint.exists());
+    }
+
+    @Test
+    public void stopLeavesTheRestForNextStartup() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            r.createFreeStyleProject("p" + i);
+        }
+        BulkResave.OPS_PER_SECOND = 1;
+        BulkResave.submit(r.jenkins.getAllItems(FreeStyleProject.class));
+        Thread.sleep(1500);
+        BulkResave.stop();
+        Thread.sleep(500);
+        assertFalse("no workers restarted", Thread.getAllStackTraces().keySet().stream().anyMatch(t -> t.getName().startsWith("BulkResave") && t.isAlive()));
+        List<String> left = Files.readAllLines(new File(r.jenkins.getRootDir(), BulkResave.NAME).toPath(), StandardCharsets.UTF_8);
+        assertFalse(left.isEmpty());
+        assertTrue(left.size() < 5);
+
+        BulkResave.OPS_PER_SECOND = 0;
+        BulkResave.resume();
+        awaitCompletion();
+        assertFalse(new File(r.jenkins.getRootDir(), BulkResave.NAME).exists());
+    }
+
+    private static void awaitCompletion() throws InterruptedException {
+        while (BulkResave.isRunning()) {
+            Thread.sleep(100);
+        }
+    }
+}
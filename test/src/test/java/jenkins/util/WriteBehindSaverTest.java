@@ -0,0 +1,139 @@
+package jenkins.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import hudson.XmlFile;
+import hudson.model.FreeStyleProject;
+import hudson.model.Queue;
+import hudson.model.Saveable;
+import hudson.model.User;
+import hudson.model.listeners.SaveableListener;
+import hudson.util.OneShotEvent;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+
+public class WriteBehindSaverTest {
+
+    @Rule public JenkinsRule r = new JenkinsRule();
+
+    private long interval;
+
+    @Before
+    public void enable() {
+        WriteBehindSaver.ENABLED = true;
+        interval = WriteBehindSaver.INTERVAL;
+        WriteBehindSaver.INTERVAL = 60_000;
+    }
+
+    @After
+    public void disable() {
+        WriteBehindSaver.ENABLED = false;
+        WriteBehindSaver.INTERVAL = interval;
+    }
+
+    @Test
+    public void repeatedSavesAreCoalesced() throws Exception {
+        Queue queue = r.jenkins.getQueue();
+        WriteBehindSaver.flush();
+        QueueSaves saves = r.jenkins.getExtensionList(SaveableListener.class).get(QueueSaves.class);
+        saves.count = 0;
+
+        for (int i = 0; i < 10; i++) {
+            queue.save();
+        }
+        assertEquals(0, saves.count);
+        assertThat(WriteBehindSaver.getPendingCount(), greaterThanOrEqualTo(1));
+
+        WriteBehindSaver.flush();
+        assertEquals(1, saves.count);
+    }
+
+    @Test
+    public void usersAreSavedRightAway() throws Exception {
+        User alice = User.getById("alice", true);
+        alice.setFullName("Alice");
+        alice.save();
+        assertThat(new XmlFile(new File(alice.getUserFolder(), "config.xml")).asString(), containsString("Alice"));
+    }
+
+    @Test
+    public void nextBuildNumber() throws Exception {
+        FreeStyleProject p = r.createFreeStyleProject();
+        File file = new File(p.getRootDir(), "nextBuildNumber");
+        WriteBehindSaver.flush();
+        r.buildAndAssertSuccess(p);
+        r.buildAndAssertSuccess(p);
+        assertFalse(file.exists() && Files.readString(file.toPath()).trim().equals("3"));
+        WriteBehindSaver.flush();
+        assertEquals("3", Files.readString(file.toPath()).trim());
+    }
+
+    @Test
+    public void synchronousAfterShutdown() throws Exception {
+        Queue queue = r.jenkins.getQueue();
+        queue.save();
+        WriteBehindSaver.shutDown();
+        assertEquals(0, WriteBehindSaver.getPendingCount());
+        QueueSaves saves = r.jenkins.getExtensionList(SaveableListener.class).get(QueueSaves.class);
+        saves.count = 0;
+        queue.save();
+        assertEquals(0, WriteBehindSaver.getPendingCount());
+        assertEquals(1, saves.count);
+    }
+
+    @Test
+    public void cancelDuringFlush() throws Exception {
+        OneShotEvent saving = new OneShotEvent();
+        OneShotEvent proceed = new OneShotEvent();
+        AtomicInteger saves = new AtomicInteger();
+        WriteBehindSaver.defer("first", () -> {
+            saving.signal();
+            try {
+                proceed.block();
+            } catch (InterruptedException x) {
+                throw new IOException(x);
+            }
+            saves.incrementAndGet();
+        });
+        WriteBehindSaver.defer("second", saves::incrementAndGet);
+        Future<?> flush = Timer.get().submit(WriteBehindSaver::flush);
+        saving.block();
+
+        // taken by the flush but not yet saved, so skipped
+        WriteBehindSaver.cancel("second");
+        // being saved, so waits for that to complete
+        Future<?> cancel = Timer.get().submit(() -> WriteBehindSaver.cancel("first"));
+        Thread.sleep(500);
+        assertFalse(cancel.isDone());
+        proceed.signal();
+        cancel.get();
+        assertEquals(1, saves.get());
+        flush.get();
+        assertEquals(1, saves.get());
+    }
+
+    @TestExtension
+    public static final class QueueSaves extends SaveableListener {
+        int count;
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof Queue) {
+                count++;
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package jenkins.util.io;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import hudson.XmlFile;
+import hudson.model.FreeStyleProject;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class JournalConfigStorageTest {
+
+    @Rule public JenkinsRule r = new JenkinsRule();
+
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Before
+    public void enable() {
+        ConfigStorage.TYPE = JournalConfigStorage.class.getName();
+    }
+
+    @After
+    public void disable() throws Exception {
+        ConfigStorage storage = ConfigStorage.get();
+        if (storage != null) {
+            storage.close();
+        }
+        ConfigStorage.TYPE = null;
+    }
+
+    @Test
+    public void itemConfigurationRoundTrip() throws Exception {
+        FreeStyleProject p = r.createFreeStyleProject("p");
+        p.setDescription("stored");
+        File onDisk = new File(p.getRootDir(), "config.xml");
+        assertFalse(onDisk.exists());
+        assertTrue(new File(r.jenkins.getRootDir(), JournalConfigStorage.NAME).isFile());
+
+        p.renameTo("q");
+        r.jenkins.reload();
+        FreeStyleProject q = r.jenkins.getItemByFullName("q", FreeStyleProject.class);
+        assertNotNull(q);
+        assertEquals("stored", q.getDescription());
+
+        assertEquals(1, ConfigStorage.get().exportTo(r.jenkins.getRootDir()));
+        assertThat(Files.readString(new File(q.getRootDir(), "config.xml").toPath()), containsString("<description>stored</description>"));
+        assertFalse(onDisk.exists());
+    }
+
+    @Test
+    public void tornRecordIsDiscarded() throws Exception {
+        File root = tmp.getRoot();
+        new File(root, "nodes/a").mkdirs();
+        try (JournalConfigStorage storage = new JournalConfigStorage(root)) {
+            storage.commit(Collections.singletonMap("nodes/a/config.xml", "<a/>".getBytes(StandardCharsets.UTF_8)), Collections.emptySet());
+        }
+        File journal = new File(root, JournalConfigStorage.NAME);
+        long length = journal.length();
+        Files.write(journal.toPath(), new byte[] {0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+        try (JournalConfigStorage storage = new JournalConfigStorage(root)) {
+            assertEquals("<a/>", new String(storage.read("nodes/a/config.xml"), StandardCharsets.UTF_8));
+        }
+        assertEquals(length, journal.length());
+    }
+
+    @Test
+    public void interruptedImportIsRedone() throws Exception {
+        File root = tmp.getRoot();
+        new File(root, "nodes/a").mkdirs();
+        Files.writeString(new File(root, "nodes/a/config.xml").toPath(), "<a/>");
+        Files.write(new File(root, JournalConfigStorage.NAME + ".import").toPath(), new byte[] {0x4A, 0x43, 0x4A, 0x31, 0, 0, 0, 42});
+        try (JournalConfigStorage storage = new JournalConfigStorage(root)) {
+            assertEquals("<a/>", new String(storage.read("nodes/a/config.xml"), StandardCharsets.UTF_8));
+        }
+        assertFalse(new File(root, JournalConfigStorage.NAME + ".import").exists());
+    }
+
+    @Test
+    public void unusableStorageFails() throws Exception {
+        ConfigStorage.TYPE = null;
+        FreeStyleProject p = r.createFreeStyleProject("p");
+        File onDisk = new File(p.getRootDir(), "config.xml");
+        assertTrue(onDisk.isFile());
+        ConfigStorage.TYPE = JournalConfigStorage.class.getName();
+        // a directory cannot be opened as a journal
+        assertTrue(new File(r.jenkins.getRootDir(), JournalConfigStorage.NAME).mkdir());
+        assertThrows(IOException.class, ConfigStorage::get);
+        assertThrows(IOException.class, () -> p.setDescription("lost"));
+        assertThrows(UncheckedIOException.class, () -> new XmlFile(onDisk).exists());
+        assertThat(Files.readString(onDisk.toPath()), not(containsString("lost")));
+        ConfigStorage.TYPE = null;
+    }
+}